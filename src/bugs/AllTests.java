@@ -15,9 +15,24 @@ import org.junit.runners.Suite.SuiteClasses;
 @SuiteClasses(value= {TokenTest.class,
                       ParserTest.class,
                       tree.TreeTest.class,
+                      tree.ImmutableTreeTest.class,
                       TreeParserTest.class,
                       BugTest.class,
-                      InterpreterTest.class})
+                      InterpreterTest.class,
+                      CompilerTest.class,
+                      BatchRendererTest.class,
+                      SegmentedLineStoreTest.class,
+                      PrimitiveLineStoreTest.class,
+                      ViewTest.class,
+                      RasterizerTest.class,
+                      DirtyRegionTest.class,
+                      RenderSchedulerTest.class,
+                      CoalescingLineStoreTest.class,
+                      LineSinkTest.class,
+                      RecordingTest.class,
+                      TimelineTest.class,
+                      OptimizerTest.class,
+                      NodeTest.class})
 public class AllTests {
     // Empty class
 }
@@ -0,0 +1,257 @@
+package bugs;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import tree.Tree;
+
+/**
+ * Headless renderer for Bugs programs. Runs a program to completion as fast as possible, without
+ * pauses between ticks and without Swing, then draws the lines it created into an image file. The
+ * program's Bugs are compiled and all run on one Thread, so the same program always draws the same image.
+ * <p>
+ * Usage: <code>java -Djava.awt.headless=true bugs.BatchRenderer [-size WIDTHxHEIGHT] [-timeout MILLISECONDS] [-coalesce on|off] [-optimize on|off] [-recursion CALLS] [-record RECORDING] program output.png</code>
+ * <br>The image format is taken from the output file's extension (png, bmp, gif, jpg...). Lines for
+ * an svg file, or a lines file (see BinaryLineSink), are streamed to it as they are drawn, so any
+ * number of them can be written without keeping them in memory. With
+ * <code>-coalesce on</code> lines that continue one another are merged as they are drawn, which saves
+ * memory and drawing time on programs with many short moves, and gives the same image. The program is
+ * simplified by the Optimizer before it runs unless <code>-optimize off</code> is given.
+ * <code>-recursion</code> sets how many function calls a Bug may have active at once. With
+ * <code>-record</code> the run is also recorded, to be played back by Replay.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class BatchRenderer {
+	static final int DEFAULT_SIZE = 600; //width and height of the image unless -size is given
+	static final long DEFAULT_TIMEOUT = 60000; //milliseconds a program may run before it is killed
+
+	/**
+	 * Command line entry point. Exits with status 1 if the program cannot be read, parsed or rendered.
+	 * @param args - options, then the program file and the image file
+	 */
+	public static void main(String[] args){
+		System.setProperty("java.awt.headless", "true");
+		int width = DEFAULT_SIZE;
+		int height = DEFAULT_SIZE;
+		long timeout = DEFAULT_TIMEOUT;
+		boolean coalesce = false;
+		boolean optimize = true;
+		int recursionLimit = Interpreter.DEFAULT_RECURSION_LIMIT;
+		File record = null;
+		int i = 0;
+		try {
+			for (; i < args.length - 2; i += 2){
+				if (args[i].equals("-size")){
+					String[] size = args[i + 1].split("x");
+					width = Integer.parseInt(size[0]);
+					height = Integer.parseInt(size[size.length - 1]);
+				}
+				else if (args[i].equals("-timeout"))
+					timeout = Long.parseLong(args[i + 1]);
+				else if (args[i].equals("-coalesce") && args[i + 1].matches("on|off"))
+					coalesce = args[i + 1].equals("on");
+				else if (args[i].equals("-optimize") && args[i + 1].matches("on|off"))
+					optimize = args[i + 1].equals("on");
+				else if (args[i].equals("-recursion"))
+					recursionLimit = Integer.parseInt(args[i + 1]);
+				else if (args[i].equals("-record"))
+					record = new File(args[i + 1]);
+				else
+					break;
+			}
+		}
+		catch (NumberFormatException e){
+			usage("Bad value for " + args[i] + ": " + args[i + 1]);
+		}
+		if (i != args.length - 2 || width <= 0 || height <= 0 || recursionLimit < 1)
+			usage(null);
+		try {
+			Tree<Token> program = load(new File(args[i]));
+			Interpreter interpreter = new Interpreter(optimize ? Optimizer.optimize(program) : program, Interpreter.Mode.COMPILED);
+			interpreter.setRecursionLimit(recursionLimit);
+			File output = new File(args[i + 1]);
+			String name = output.getName().toLowerCase();
+			LineSink sink = null;
+			if (name.endsWith(".svg"))
+				sink = new SvgLineSink(Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8), width, height);
+			else if (name.endsWith(".lines"))
+				sink = new BinaryLineSink(new FileOutputStream(output));
+			//stream the lines to the file as they are drawn rather than keeping them
+			if (sink != null)
+				interpreter.setLineSink(sink);
+			else
+				interpreter.setLineCoalescing(coalesce);
+			Recorder recorder = record == null ? null : new Recorder(new FileOutputStream(record), interpreter.getLineSink());
+			interpreter.setRecorder(recorder);
+			try {
+				finish(interpreter, timeout);
+				warnIfKilled(interpreter, timeout);
+				if (sink == null)
+					write(render(interpreter.getLines(), width, height), output);
+			}
+			finally {
+				try {
+					if (recorder != null)
+						recorder.close();
+				}
+				finally {
+					if (sink != null)
+						sink.close();
+				}
+			}
+		}
+		catch (IOException e){
+			System.err.println("There was an error reading or writing a file.\n" + e);
+			System.exit(1);
+		}
+		catch (SyntaxException e){
+			System.err.println("There was an error parsing the file.\n" + e);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Reads and parses a Bugs program.
+	 * @param file
+	 * @return the program's AST
+	 * @throws IOException if the file cannot be read
+	 * @throws SyntaxException if the file is not a Bugs program
+	 */
+	static Tree<Token> load(File file) throws IOException {
+		//like BugsGui.load(), end the program with a newline even if the file does not
+		Parser parser = new Parser(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8) + "\n");
+		if (!parser.isProgram())
+			throw new SyntaxException("The file does not contain a Bugs program");
+		return parser.stack.pop();
+	}
+
+	/**
+	 * Runs a program with no pause between ticks until every Bug has finished. A program that is
+	 * still running after <code>timeout</code> milliseconds is killed.
+	 * @param tree - the program's AST
+	 * @param timeout - milliseconds to wait for the program, 0 to wait forever
+	 * @return the Interpreter, holding the lines drawn; still alive only if it was killed and has not yet stopped
+	 */
+	static Interpreter run(Tree<Token> tree, long timeout){
+		return run(tree, timeout, false);
+	}
+
+	/**
+	 * Runs a program with no pause between ticks until every Bug has finished, optionally merging
+	 * the lines it draws. A program that is still running after <code>timeout</code> milliseconds is killed.
+	 * @param tree - the program's AST
+	 * @param timeout - milliseconds to wait for the program, 0 to wait forever
+	 * @param coalesce - whether to merge lines that continue one another
+	 * @return the Interpreter, holding the lines drawn; still alive only if it was killed and has not yet stopped
+	 */
+	static Interpreter run(Tree<Token> tree, long timeout, boolean coalesce){
+		Interpreter interpreter = new Interpreter(tree, Interpreter.Mode.COMPILED);
+		interpreter.setLineCoalescing(coalesce);
+		finish(interpreter, timeout);
+		return interpreter;
+	}
+
+	/**
+	 * Runs a program with no pause between ticks until every Bug has finished, sending the lines it
+	 * draws to a sink instead of keeping them. A program that is still running after <code>timeout</code>
+	 * milliseconds is killed. The sink is flushed but not closed.
+	 * @param tree - the program's AST
+	 * @param timeout - milliseconds to wait for the program, 0 to wait forever
+	 * @param sink - receives the lines
+	 * @return the Interpreter; still alive only if it was killed and has not yet stopped
+	 */
+	static Interpreter stream(Tree<Token> tree, long timeout, LineSink sink){
+		Interpreter interpreter = new Interpreter(tree, Interpreter.Mode.COMPILED);
+		interpreter.setLineSink(sink);
+		finish(interpreter, timeout);
+		return interpreter;
+	}
+
+	/**
+	 * Runs an Interpreter in turbo mode and waits for it, killing it after <code>timeout</code> milliseconds.
+	 * @param interpreter - not yet started
+	 * @param timeout - milliseconds to wait for the program, 0 to wait forever
+	 */
+	private static void finish(Interpreter interpreter, long timeout){
+		interpreter.runTurbo();
+		interpreter.start();
+		try {
+			interpreter.join(timeout);
+			if (interpreter.isAlive()){
+				interpreter.kill();
+				interpreter.join(1000);
+			}
+		}
+		catch (InterruptedException e){
+			interpreter.kill();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Tells the user if a program had to be killed.
+	 * @param interpreter
+	 * @param timeout - milliseconds the program was given
+	 */
+	private static void warnIfKilled(Interpreter interpreter, long timeout){
+		if (interpreter.getRunState() == Interpreter.RunState.KILLED)
+			System.err.println("Program did not finish within " + timeout + " ms, writing what it drew so far");
+	}
+
+	/**
+	 * Draws lines into a new image. As in the View, the drawing area is 100 by 100 units,
+	 * scaled to the size of the image, on a white background.
+	 * @param lines - lines to draw, in order
+	 * @param width - in pixels
+	 * @param height - in pixels
+	 * @return image
+	 */
+	static BufferedImage render(LineStore lines, int width, int height){
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+		Rasterizer.draw(image, lines, 0, lines.size(), width / 100.0, height / 100.0);
+		Command open = lines.getOpenLine();
+		if (open != null){
+			g = image.createGraphics();
+			Rasterizer.draw(g, open, width / 100.0, height / 100.0);
+			g.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * Writes an image in the format given by the file's extension, PNG if it has none.
+	 * @param image
+	 * @param file
+	 * @throws IOException if the file cannot be written or the format is not supported
+	 */
+	static void write(BufferedImage image, File file) throws IOException {
+		String name = file.getName();
+		String format = name.lastIndexOf('.') < 0 ? "png" : name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+		if (!ImageIO.write(image, format, file))
+			throw new IOException("No writer for image format \"" + format + "\"");
+	}
+
+	/**
+	 * Prints how to use this program and exits.
+	 * @param message - what was wrong with the arguments, or null
+	 */
+	private static void usage(String message){
+		if (message != null)
+			System.err.println(message);
+		System.err.println("Usage: java bugs.BatchRenderer [-size WIDTHxHEIGHT] [-timeout MILLISECONDS] [-coalesce on|off] [-optimize on|off] [-recursion CALLS] [-record RECORDING] program image.png");
+		System.exit(1);
+	}
+}
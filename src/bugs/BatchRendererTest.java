@@ -0,0 +1,104 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * Tests for BatchRenderer class of Bugs language Interpreter.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class BatchRendererTest {
+	private static final String PROGRAM = "Bug Sally {\n" +
+			"    var i\n" +
+			"    y = 50\n" +
+			"    color red\n" +
+			"    loop {\n" +
+			"        move 1\n" +
+			"        i = i + 1\n" +
+			"        exit if i = 100\n" +
+			"    }\n" +
+			"    color none\n" +
+			"    moveto 0, 0\n" +
+			"    color blue\n" +
+			"    line 25, 0, 25, 100\n" +
+			"}\n";
+
+	@Test
+	public void testRunFinishesWithoutPausing(){
+		Parser parser = new Parser(PROGRAM);
+		assertTrue(parser.isProgram());
+		long start = System.nanoTime();
+		Interpreter interpreter = BatchRenderer.run(parser.stack.pop(), 10000);
+		assertFalse(interpreter.isAlive());
+		assertEquals(102, interpreter.getLines().size());
+		//102 ticks at the GUI's default pause time would take over 25 seconds
+		assertTrue(System.nanoTime() - start < 5000000000L);
+	}
+
+	@Test
+	public void testRunKillsProgramsThatDoNotFinish(){
+		Parser parser = new Parser("Bug Forever {\n    loop {\n        turn 1\n    }\n}\n");
+		assertTrue(parser.isProgram());
+		Interpreter interpreter = BatchRenderer.run(parser.stack.pop(), 200);
+		assertFalse(interpreter.isAlive());
+		assertEquals(Interpreter.RunState.KILLED, interpreter.getRunState());
+	}
+
+	@Test
+	public void testRender(){
+		Parser parser = new Parser(PROGRAM);
+		assertTrue(parser.isProgram());
+		BufferedImage image = BatchRenderer.render(BatchRenderer.run(parser.stack.pop(), 10000).getLines(), 200, 100);
+		assertEquals(200, image.getWidth());
+		assertEquals(100, image.getHeight());
+		//the red line goes across the middle, the blue line is at a quarter of the width
+		assertEquals(Color.RED.getRGB(), image.getRGB(150, 50));
+		assertEquals(Color.BLUE.getRGB(), image.getRGB(50, 10));
+		//the line drawn with color "none" is invisible
+		assertEquals(Color.WHITE.getRGB(), image.getRGB(100, 25));
+		assertEquals(Color.WHITE.getRGB(), image.getRGB(150, 10));
+	}
+
+	@Test
+	public void testLoadAndWrite() throws IOException {
+		File program = File.createTempFile("bugs", ".txt");
+		File output = File.createTempFile("bugs", ".png");
+		try {
+			Files.write(program.toPath(), PROGRAM.getBytes(StandardCharsets.UTF_8));
+			Interpreter interpreter = BatchRenderer.run(BatchRenderer.load(program), 10000);
+			BatchRenderer.write(BatchRenderer.render(interpreter.getLines(), 64, 32), output);
+			BufferedImage image = ImageIO.read(output);
+			assertEquals(64, image.getWidth());
+			assertEquals(32, image.getHeight());
+			assertEquals(Color.RED.getRGB(), image.getRGB(40, 16));
+		}
+		finally {
+			program.delete();
+			output.delete();
+		}
+	}
+
+	@Test(expected=SyntaxException.class)
+	public void testLoadRejectsNonPrograms() throws IOException {
+		File program = File.createTempFile("bugs", ".txt");
+		try {
+			Files.write(program.toPath(), "move 10\n".getBytes(StandardCharsets.UTF_8));
+			BatchRenderer.load(program);
+		}
+		finally {
+			program.delete();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package bugs;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * LineSink that writes each line to a binary stream as it is drawn: a four byte header, then for each
+ * line its four coordinates as doubles and its ARGB color as an int, 0 for an invisible line. Lines are
+ * kept exactly, so a drawing read back with <code>replay</code> looks the same as the one written.
+ * <p>
+ * Nothing is kept in memory but the stream's buffer. Adding takes a lock.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class BinaryLineSink implements LineSink {
+	static final int MAGIC = 0x42554753; //"BUGS" in ASCII, then the lines
+	static final int LINE_BYTES = 36; //size of a line in the stream
+	private static final int NONE = 0; //color of invisible lines; every color a Bug can use is opaque
+
+	private final DataOutputStream out;
+	private IOException error; //the first error writing, after which nothing more is written
+	private boolean closed;
+
+	/**
+	 * Constructor. Writes the header.
+	 * @param out - where to write
+	 * @throws IOException if the header cannot be written
+	 */
+	public BinaryLineSink(OutputStream out) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		this.out.writeInt(MAGIC);
+	}
+
+	@Override
+	public synchronized void add(double x1, double y1, double x2, double y2, Color color){
+		if (error != null || closed)
+			return;
+		try {
+			out.writeDouble(x1);
+			out.writeDouble(y1);
+			out.writeDouble(x2);
+			out.writeDouble(y2);
+			out.writeInt(color == null ? NONE : color.getRGB());
+		}
+		catch (IOException e){
+			error = e;
+		}
+	}
+
+	@Override
+	public synchronized void flush(){
+		if (error != null || closed)
+			return;
+		try {
+			out.flush();
+		}
+		catch (IOException e){
+			error = e;
+		}
+	}
+
+	/**
+	 * Flushes and closes the stream.
+	 * @throws IOException if any line could not be written
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			out.close();
+		}
+		catch (IOException e){
+			if (error == null)
+				error = e;
+		}
+		if (error != null)
+			throw error;
+	}
+
+	/**
+	 * Reads lines written by a BinaryLineSink and adds them, in order, to another sink.
+	 * @param in - the stream, from its header; not closed
+	 * @param sink - receives the lines
+	 * @return the number of lines read
+	 * @throws IOException if the stream cannot be read, is not from a BinaryLineSink or ends part way through a line
+	 */
+	public static long replay(InputStream in, LineSink sink) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a stream of Bugs lines");
+		byte[] line = new byte[LINE_BYTES];
+		ByteBuffer fields = ByteBuffer.wrap(line);
+		long count = 0;
+		while (true){
+			int first = data.read();
+			if (first < 0)
+				return count;
+			line[0] = (byte) first;
+			try {
+				data.readFully(line, 1, LINE_BYTES - 1);
+			}
+			catch (EOFException e){
+				throw new IOException("Stream of Bugs lines ends part way through line " + count, e);
+			}
+			int color = fields.getInt(32);
+			sink.add(fields.getDouble(0), fields.getDouble(8), fields.getDouble(16), fields.getDouble(24), color == NONE ? null : new Color(color, true));
+			count++;
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package bugs;
 import java.awt.Color;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Stack;
+import java.util.concurrent.Phaser;
 import java.lang.Math;
 
 import tree.Tree;
@@ -18,13 +20,29 @@ public class Bug extends Thread{
 	private HashMap<String, Double> variables; //this Bug's principle variables
 	private HashMap<String, Tree<Token>> functions; //this Bug's functions
 	private String bugName; //name of this Bug
-	private Stack<Boolean> loopExitStack; //Stack used to hold boolean values that will be updated by "exit if" statement in order to control breaking from nested loops.
+	//COMPLETIONS - how interpreting a statement ended, returned by interpret(Tree<Token>)
+	static final int NORMAL = 0; //go on with the next statement
+	static final int RETURNED = 1; //a "return" statement ended the block it is in
+	static final int EXITED = 2; //an "exit if" ended the innermost loop, and every block and call inside it
+	
+	private int loopDepth; //number of loops currently executing, across all active calls
+	private boolean pendingExit; //an "exit if" in a function asked the loop the function was called from to exit
 	private Interpreter interpreter; //Reference to the Interpreter manipualting this Bug
 	private Tree<Token> myTree; //This Bug's AST
 	private boolean blocked; // If true, Bug must request a work permit from Interpreter before progressing past an action statement
-	private Stack<HashMap<String, Double>> scopes; //fluid Stack of HashMaps holding variables stored during function calls
+	private Stack<HashMap<String, Double>> scopes; //Stack of HashMaps holding this Bug's variables (unit tests may push more)
+	private FrameStack frames; //parameters of the active function calls
+	private int callDepth; //number of active function calls
+	private int recursionLimit = Interpreter.DEFAULT_RECURSION_LIMIT; //most function calls that may be active at once
+	private IdentityHashMap<Tree<Token>, Call> calls; //the function each "call" tree refers to
 	private double returnValue; //this will hold the value returned by a "return" statement
-	private boolean die; //informs the Bug of a reset request - Bug should terminate as soon as possible
+	private volatile boolean die; //informs the Bug of a reset request - Bug should terminate as soon as possible
+	private Machine machine; //runs this Bug's compiled program, null if the Bug interprets its AST
+	private Node.Program program; //typed nodes this Bug runs instead of its AST, null if it interprets its AST
+	private double[] variableValues; //values of this Bug's variables while it runs typed nodes, by slot
+	private int frameBase; //index in frames of the first parameter of the function typed nodes are running
+	private Phaser tickPhaser; //Phaser this Bug arrives at for each work permit, null if not registered
+	private volatile Pose shown = new Pose(0.0, 0.0, 0.0, Color.BLACK); //how this Bug looked at the end of the last tick, which is how Views draw it
 	
 	/**
 	 * No argument constructor, initializes variables to default values.
@@ -37,10 +55,11 @@ public class Bug extends Thread{
 		color = Color.BLACK;
 		variables = new HashMap<String, Double>();
 		functions = new HashMap<String, Tree<Token>>();
-		loopExitStack = new Stack();
 		this.interpreter = interpreter;
 		scopes = new Stack<HashMap<String, Double>>();
 		scopes.push(variables);
+		frames = new FrameStack();
+		calls = new IdentityHashMap<Tree<Token>, Call>();
 		die = false;
 	}
 	/**
@@ -55,25 +74,57 @@ public class Bug extends Thread{
 		color = Color.BLACK;
 		variables = new HashMap<String, Double>();
 		functions = new HashMap<String, Tree<Token>>();
-		loopExitStack = new Stack();
 		this.interpreter = interpreter;
 		bugName = tree.getChild(0).getValue().value;
 		myTree = tree;
 		scopes = new Stack<HashMap<String, Double>>();
 		scopes.push(variables);
+		frames = new FrameStack();
+		calls = new IdentityHashMap<Tree<Token>, Call>();
 		die = false;
 	}
 	
 	@Override
 	public void run(){
 		interpreter.getWorkPermit(this);
-		interpret(myTree);
+		if (machine != null){
+			//each resume() performs exactly one action, just like interpret() does between work permits
+			while (!die && machine.resume()){
+				interpreter.completeCurrentTask(this);
+				interpreter.getWorkPermit(this);
+			}
+		}
+		else if (program != null){
+			program.run(this);
+		}
+		else{
+			interpret(myTree);
+		}
 		if (!die){
-			interpreter.completeCurrentTask(this); //this keeps the Interpreter from getting caught in unblockAll function waiting for threads to be blocked
+			interpreter.completeCurrentTask(this);
 			interpreter.terminateBug(this);
 		}
 	}
 	
+	/**
+	 * Runs this Bug's compiled program up to and including its next action. Used instead of
+	 * <code>run()</code> by the cooperative engine, which never starts this Bug's Thread.
+	 * @return false once the program has ended (or the Bug has been killed or hit an error)
+	 */
+	boolean step(){
+		if (die)
+			return false;
+		try {
+			return machine.resume();
+		}
+		catch (RuntimeException e){
+			//report the error as an uncaught exception on a Bug Thread would be reported, and stop only this Bug
+			System.err.print("Exception in Bug \"" + bugName + "\" ");
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
 	/**
 	 * Takes an AST representing components of Bugs program and evaluates it.
 	 * @param tree
@@ -132,76 +183,75 @@ public class Bug extends Thread{
 	/**
 	 * Takes an AST representing components of Bugs program and interprets it.
 	 * @param tree
+	 * @return how the statement completed: NORMAL, RETURNED or EXITED
 	 */
-	public void interpret(Tree<Token> tree){
+	public int interpret(Tree<Token> tree){
 		if (die)
-			return;
+			return NORMAL;
 		switch(tree.getValue().value){
 			case ("Bug"):
 				interpretBug(tree);
-				break;
+				return NORMAL;
 			case ("list"):
 				interpretList(tree);
-				break;
+				return NORMAL;
 			case ("var"):
 				interpretVar(tree);
-				break;
+				return NORMAL;
 			case("initially"):
 				interpretInitially(tree);
-				break;
+				return NORMAL;
 			case ("block"):
-				interpretBlock(tree);
-				break;
+				return interpretBlock(tree);
 			case ("move"):
 				interpretMove(tree);
 				interpreter.completeCurrentTask(this);
 				interpreter.getWorkPermit(this);
-				break;
+				return NORMAL;
 			case ("moveto"):
 				interpretMoveTo(tree);
 				interpreter.completeCurrentTask(this);
 				interpreter.getWorkPermit(this);
-				break;
+				return NORMAL;
 			case ("turn"):
 				interpretTurn(tree);
 				interpreter.completeCurrentTask(this);
 				interpreter.getWorkPermit(this);
-				break;
+				return NORMAL;
 			case ("turnto"):
 				interpretTurnto(tree);
 				interpreter.completeCurrentTask(this);
 				interpreter.getWorkPermit(this);
-				break;
+				return NORMAL;
 			case ("return"):
 				interpretReturn(tree);
-				break;
+				return RETURNED;
 			case ("line"):
 				interpretLine(tree);
 				interpreter.completeCurrentTask(this);
 				interpreter.getWorkPermit(this);
-				break;
+				return NORMAL;
 			case ("assign"):
 				interpretAssign(tree);
-				break;
+				return NORMAL;
 			case ("loop"):
 				interpretLoop(tree);
-				break;
+				return NORMAL;
 			case ("exit"):
-				interpretExit(tree);
-				break;
+				return interpretExit(tree);
 			case ("switch"):
-				interpretSwitch(tree);
-				break;
+				return interpretSwitch(tree);
 			case ("color"):
 				interpretColor(tree);	
-				break;
+				return NORMAL;
 			case ("function"):
 				interpretFunction(tree);
-				break;
+				return NORMAL;
 			case ("call"):
 				evaluateCall(tree);
-				break;
+				return NORMAL;
 		}
+		return NORMAL;
 	}
 	
 	/**
@@ -210,10 +260,11 @@ public class Bug extends Thread{
 	 * @param tree
 	 */
 	private double evaluateLeaf(Tree<Token> tree){
-		if (isNumber(tree))
-			return Double.valueOf(tree.getValue().value);
+		Token token = tree.getValue();
+		if (token.type == Token.Type.NUMBER)
+			return token.number;
 		else
-			return fetch(tree.getValue().value);
+			return fetch(token.value);
 	}
 	
 	/**
@@ -344,8 +395,9 @@ public class Bug extends Thread{
 	 */
 	private double evaluateCase(Tree<Token> tree){
 		double result = evaluate(tree.getChild(0));
-		if (result > 0.001 || result < -0.001)
-			interpret(tree.getChild(1));
+		//an exit from the case's block has to reach the loop through the enclosing block, like one from a call
+		if ((result > 0.001 || result < -0.001) && interpret(tree.getChild(1)) == EXITED)
+			pendingExit = true;
 		return result;
 	}
 	
@@ -361,39 +413,150 @@ public class Bug extends Thread{
 		else if ((tree.getChild(0).getValue().value).equals("direction"))
 			return direction(tree.getChild(1).getChild(0).getValue().value);
 		
-		HashMap<String, Double> funcVars = new HashMap<String, Double>();
-		Tree<Token> function;
-		//find the function corresponding to this call
-		if (functions.containsKey(tree.getChild(0).getValue().value))
-			function = functions.get(tree.getChild(0).getValue().value);
-		else if (interpreter.getAllbugsFunctions().containsKey(tree.getChild(0).getValue().value))
-			function = interpreter.getAllbugsFunctions().get(tree.getChild(0).getValue().value);
-		else
-			throw new RuntimeException("Function not defined!");
-		//make sure num arguments ==  num variables
-		if (tree.getChild(1).getNumberOfChildren() != function.getChild(1).getNumberOfChildren())
-			throw new RuntimeException("Function call does not match number of arguments in function!");
-		//assign the arguments to the parameters and store them in the new HashMap
-		//if someone tries to assign 
-		for (int i = 0; i < tree.getChild(1).getNumberOfChildren(); i++){
-			String param = function.getChild(1).getChild(i).getValue().value;
-			if (param.equals("x") || param.equalsIgnoreCase("y") || param.equals("angle"))
-				throw new RuntimeException("Trying to declare local var " + param + " in function " + function.getChild(0).getValue().value);
-			funcVars.put(param, evaluate(tree.getChild(1).getChild(i)));
-		}
-		//put new HashMap for variables in scopes. not added earlier because during recursion we want values to be
-		//updated with values from previous functions
-		scopes.push(funcVars);
+		Call call = calls.get(tree);
+		if (call == null){
+			call = resolveCall(tree);
+			calls.put(tree, call);
+		}
+		if (call.params == null)
+			throw new RuntimeException(call.error);
+		//evaluate the arguments in the caller's scope, then make them the function's parameters
+		//(arguments before a parameter that cannot be declared are evaluated, as they always were)
+		int base = frames.size();
+		for (int i = 0; i < call.params.length; i++){
+			if (i == call.badParameter)
+				throw new RuntimeException(call.error);
+			frames.push(evaluate(tree.getChild(1).getChild(i)));
+		}
+		beginCall(base, call.params);
 		//interpret the block of the function
-		interpret(function.getChild(2));
-		//remove last hashmap from this function before it goes out of scope
-		scopes.pop();
+		int completion;
+		try {
+			completion = interpret(call.function.getChild(2));
+		}
+		finally {
+			callDepth--;
+			frames.pop(base);
+		}
+		return endCall(completion);
+	}
+	
+	/**
+	 * Calls a function, as <code>evaluateCall(Tree&ltToken&gt)</code> does. Used by typed nodes.
+	 * @param call
+	 * @return the function's return value
+	 */
+	double call(Node.Call call){
+		if (call.function < 0)
+			throw new RuntimeException(call.error);
+		Node.Function function = call.functions[call.function];
+		int base = frames.size();
+		for (int i = 0; i < call.args.length; i++){
+			if (i == call.badParameter)
+				throw new RuntimeException(call.error);
+			frames.push(call.args[i].evaluate(this));
+		}
+		beginCall(base, function.params);
+		int callerBase = frameBase;
+		frameBase = base;
+		int completion;
+		try {
+			completion = function.body.execute(this);
+		}
+		finally {
+			frameBase = callerBase;
+			callDepth--;
+			frames.pop(base);
+		}
+		return endCall(completion);
+	}
+	
+	/**
+	 * Makes the arguments pushed for a call the function's parameters, unless that would go past the recursion limit.
+	 * The caller must decrease <code>callDepth</code> and pop the frames once the function's block has run.
+	 * @param base - <code>frames.size()</code> before the first argument was pushed
+	 * @param params - names of the function's parameters
+	 */
+	private void beginCall(int base, String[] params){
+		frames.bind(base, params);
+		if (callDepth >= recursionLimit){
+			frames.pop(base);
+			throw new RuntimeException("Recursion is too deep: more than " + recursionLimit + " calls are active");
+		}
+		callDepth++;
+	}
+	
+	/**
+	 * Finishes a call whose function's block has run.
+	 * @param completion - how the block completed
+	 * @return the function's return value
+	 */
+	private double endCall(int completion){
+		//an exit ends the function too, then the statement that called it hands it on to the loop
+		if (completion == EXITED)
+			pendingExit = true;
 		//get the value from return statement (if any) then reset the variable to 0.0 for the next call, return that value
 		double tempReturnValue = returnValue;
 		returnValue = 0.0;
 		return tempReturnValue;
 	}
 	
+	/**
+	 * Finds the function a "call" tree refers to and checks that it can be called with the arguments given,
+	 * as <code>evaluateCall(Tree&ltToken&gt)</code> once did on every call: the Bug's own functions take
+	 * priority over Allbugs functions, and parameters named x, y or angle cannot be declared.
+	 * @param tree - "call" tree
+	 * @return the call, holding the error to report if it cannot be made
+	 */
+	private Call resolveCall(Tree<Token> tree){
+		String name = tree.getChild(0).getValue().value;
+		Tree<Token> function = functions.get(name);
+		if (function == null)
+			function = interpreter.getAllbugsFunctions().get(name);
+		if (function == null)
+			return new Call(null, null, -1, "Function not defined!");
+		Tree<Token> params = function.getChild(1);
+		if (tree.getChild(1).getNumberOfChildren() != params.getNumberOfChildren())
+			return new Call(function, null, -1, "Function call does not match number of arguments in function!");
+		String[] names = new String[params.getNumberOfChildren()];
+		for (int i = 0; i < names.length; i++){
+			names[i] = params.getChild(i).getValue().value;
+			if (names[i].equals("x") || names[i].equalsIgnoreCase("y") || names[i].equals("angle"))
+				return new Call(function, names, i, "Trying to declare local var " + names[i] + " in function " + name);
+		}
+		return new Call(function, names, -1, null);
+	}
+	
+	/**
+	 * Resolves every call to a function in a tree, so that running the program never looks a function up by name.
+	 * @param tree
+	 */
+	private void resolveCalls(Tree<Token> tree){
+		if (tree.getValue().value.equals("call") && !tree.getChild(0).getValue().value.equals("distance")
+				&& !tree.getChild(0).getValue().value.equals("direction"))
+			calls.put(tree, resolveCall(tree));
+		for (int i = 0; i < tree.getNumberOfChildren(); i++){
+			resolveCalls(tree.getChild(i));
+		}
+	}
+	
+	/**
+	 * A call to a function, resolved before the program runs.
+	 */
+	private static final class Call {
+		final Tree<Token> function; //"function" tree called, null if there is none
+		final String[] params; //names of the function's parameters, null if the call cannot be made
+		final int badParameter; //index of the first parameter that cannot be declared, -1 if there is none
+		final String error; //message to report if the call cannot be made, or at badParameter
+		
+		Call(Tree<Token> function, String[] params, int badParameter, String error){
+			this.function = function;
+			this.params = params;
+			this.badParameter = badParameter;
+			this.error = error;
+		}
+	}
+	
 	/**
 	 * Helper method for <code>evaluate(Tree&ltToken&gt)</code>.
 	 * Attempts to evaluate a "." tree representing dot notation to access another Bug's variables. 
@@ -401,16 +564,26 @@ public class Bug extends Thread{
 	 * @return value - value of the requested Bug's variable.
 	 */
 	private double evaluateDot(Tree<Token> tree){
+		return fetchDot(tree.getChild(0).getValue().value, tree.getChild(1).getValue().value);
+	}
+	
+	/**
+	 * Returns the value of a variable belonging to another Bug.
+	 * @param name - name of the requested Bug
+	 * @param variable - name of the requested variable
+	 * @return value - value of the requested Bug's variable.
+	 */
+	double fetchDot(String name, String variable){
 		//find the requested bug
-		Bug requestedBug = findOtherBugFromName(tree.getChild(0).getValue().value);
+		Bug requestedBug = findOtherBugFromName(name);
 		//if Bug not found throw RuntimeException
 		if (requestedBug == null){
-			throw new RuntimeException("The requested Bug \"" + tree.getChild(0).getValue().value +
-					"\" was not found. Could not access desired bug variable \"" + tree.getChild(1).getValue().value +
+			throw new RuntimeException("The requested Bug \"" + name +
+					"\" was not found. Could not access desired bug variable \"" + variable +
 					"\".");
 		}
 		//find the variable that we want from the requestedBug and throw RuntimeException if it is not found
-		switch (tree.getChild(1).getValue().value){
+		switch (variable){
 			case ("x"):
 				return requestedBug.x;
 			case ("y"):
@@ -418,12 +591,22 @@ public class Bug extends Thread{
 			case ("angle"):
 				return requestedBug.angle;
 			default:
-				if (requestedBug.scopes.get(0).get(tree.getChild(1).getValue().value) == null){
-					throw new RuntimeException("The requested variable \"" + tree.getChild(1).getValue().value +
+				//a compiled Bug keeps its variables in the Machine, and a typed one in slots, rather than in scopes
+				Double value;
+				if (requestedBug.machine != null)
+					value = requestedBug.machine.getVariable(variable);
+				else if (requestedBug.program != null){
+					int slot = requestedBug.program.variableSlot(variable);
+					value = slot < 0 ? null : requestedBug.variableValues[slot];
+				}
+				else
+					value = requestedBug.scopes.get(0).get(variable);
+				if (value == null){
+					throw new RuntimeException("The requested variable \"" + variable +
 							"\" in Bug " + requestedBug.getBugName() + "\" was not found");
 				}
 				else{
-					return requestedBug.scopes.get(0).get(tree.getChild(1).getValue().value);
+					return value;
 				}
 		}
 	}
@@ -437,6 +620,11 @@ public class Bug extends Thread{
 		bugName = tree.getChild(0).getValue().value;
 		interpret(tree.getChild(1));//var declarations
 		interpret(tree.getChild(4));//this Bug's functions
+		//every function is now known, so calls are resolved once rather than on each call
+		resolveCalls(tree);
+		for (Tree<Token> function : interpreter.getAllbugsFunctions().values()){
+			resolveCalls(function);
+		}
 		interpret(tree.getChild(2));//initialization block
 		interpret(tree.getChild(3));//main program
 	}
@@ -481,26 +669,19 @@ public class Bug extends Thread{
 	 * Helper method for <code>interpret(Tree&ltToken&gt)</code>.
 	 * Attempts to interpret "block" tree.
 	 * @param tree
+	 * @return NORMAL, or EXITED if an "exit if" ended the block
 	 */
-	private void interpretBlock(Tree<Token> tree){
+	private int interpretBlock(Tree<Token> tree){
 		for (int i = 0; i < tree.getNumberOfChildren(); i++){
-			//need to return in a fashion similar to Java - Bugs return statements are commands, commands only
-			//occur within blocks - we can handle this by checking to see if the child is a command - if so,
-			//we will execute it and then break the loop to cease executing the block. otherwise execute normally
-			if (tree.getChild(i).getValue().value.equals("return")){
-				interpret(tree.getChild(i));
-				break;
-			}
-			
-			interpret(tree.getChild(i));
-			//if you encounter an "exit-if" statement and it updates 
-			//the stack-top to true get out of the block
-			//(outer if protects against NullPointerExceptions) if stack is empty, it has not been updated by "exit"
-			if (!loopExitStack.empty()){
-				if (loopExitStack.peek() == true)
-					break;
-			}
+			int completion = interpret(tree.getChild(i));
+			//an exit from a function called by the statement ends the block just like an exit in it
+			if (completion == EXITED || pendingExit)
+				return EXITED;
+			//a Bugs return statement only ends the block it is in
+			if (completion == RETURNED)
+				return NORMAL;
 		}
+		return NORMAL;
 	}
 	
 	/**
@@ -512,7 +693,7 @@ public class Bug extends Thread{
 		double radians = angle * (Math.PI/180);
 		double newY = y - (evaluate(tree.getChild(0)) * Math.sin(radians));
 		double newX = x + (evaluate(tree.getChild(0)) * Math.cos(radians));
-		interpreter.getLines().add(new Command(x, y, newX, newY, color));
+		interpreter.getLineSink().add(x, y, newX, newY, color);
 		x = newX;
 		y = newY;
 	}
@@ -525,7 +706,7 @@ public class Bug extends Thread{
 	private void interpretMoveTo(Tree<Token> tree){
 		double newX = evaluate(tree.getChild(0));
 		double newY = evaluate(tree.getChild(1));
-		interpreter.getLines().add(new Command(x, y, newX, newY, color));
+		interpreter.getLineSink().add(x, y, newX, newY, color);
 		x = newX;
 		y = newY;
 	}
@@ -570,7 +751,7 @@ public class Bug extends Thread{
 	 * @param tree
 	 */
 	private void interpretLine(Tree<Token> tree){
-		interpreter.getLines().add(new Command(evaluate(tree.getChild(0)), evaluate(tree.getChild(1)), evaluate(tree.getChild(2)), evaluate(tree.getChild(3)), color));
+		interpreter.getLineSink().add(evaluate(tree.getChild(0)), evaluate(tree.getChild(1)), evaluate(tree.getChild(2)), evaluate(tree.getChild(3)), color);
 	}
 	
 	/**
@@ -595,47 +776,43 @@ public class Bug extends Thread{
 	 * @param tree
 	 */
 	private void interpretLoop(Tree<Token> tree){
-		//each loop puts on its own value of false
-		loopExitStack.push(false);
-		while(true){
-			interpret(tree.getChild(0));
-			//after interpreting each child, if stack-top is true
-			//remove it and break the loop
-			if (loopExitStack.peek() == true){
-				loopExitStack.pop();
+		loopDepth++;
+		//a killed Bug skips every statement, so the loop itself has to notice
+		while(!die){
+			//the exit, whether from the body or from a function it called, is used up by this loop
+			if (interpret(tree.getChild(0)) == EXITED){
+				pendingExit = false;
 				break;
 			}
 		}
+		loopDepth--;
 	}
 	
 	/**
 	 * Helper method for <code>interpret(Tree&ltToken&gt)</code>.
 	 * Attempts to interpret "exit" tree.
 	 * @param tree
+	 * @return EXITED if the condition is true inside a loop, otherwise NORMAL (outside any loop there is nothing to exit)
 	 */
-	private void interpretExit(Tree<Token> tree){
-		//if exit if expression is true, remove the "false" added in the start
-		//of the loop and replace it will "true
-		//(inner if statement protects against NullPointerExceptions from misplaced exit if statements)
-		if (isTrue(evaluate(tree.getChild(0)))){
-			if (!loopExitStack.empty()){
-				loopExitStack.pop();
-				loopExitStack.push(true);
-			}
-		}
+	private int interpretExit(Tree<Token> tree){
+		if (isTrue(evaluate(tree.getChild(0))) && loopDepth > 0)
+			return EXITED;
+		return NORMAL;
 	}
 	
 	/**
 	 * Helper method for <code>interpret(Tree&ltToken&gt)</code>.
 	 * Attempts to interpret "switch" tree.
 	 * @param tree
+	 * @return how the block of the chosen case completed, NORMAL if no case was chosen
 	 */
-	private void interpretSwitch(Tree<Token> tree){
+	private int interpretSwitch(Tree<Token> tree){
 		for (int i = 0; i < tree.getNumberOfChildren(); i++){
-			double result = evaluate(tree.getChild(i));
-			if (result > 0.001 || result < -0.001)
-				break;
+			Tree<Token> caseTree = tree.getChild(i);
+			if (isTrue(evaluate(caseTree.getChild(0))))
+				return interpret(caseTree.getChild(1));
 		}
+		return NORMAL;
 	}
 	
 	/**
@@ -644,39 +821,48 @@ public class Bug extends Thread{
 	 * @param tree
 	 */
 	private void interpretColor(Tree<Token> tree){
-		String newColor = tree.getChild(0).getValue().value;
+		color = toColor(tree.getChild(0).getValue().value);
+	}
+	
+	/**
+	 * Returns the Color named in a "color" statement.
+	 * @param newColor - name of the color
+	 * @return the Color, null for "none"
+	 * @throws RuntimeException if the name is not a valid color.
+	 */
+	static Color toColor(String newColor){
 		if (newColor.equalsIgnoreCase("black"))
-			color = Color.BLACK;
+			return Color.BLACK;
 		else if (newColor.equalsIgnoreCase("blue"))
-			color = Color.BLUE;
+			return Color.BLUE;
 		else if (newColor.equalsIgnoreCase("cyan"))
-			color = Color.CYAN;
+			return Color.CYAN;
 		else if (newColor.equalsIgnoreCase("darkGray"))
-			color = Color.DARK_GRAY;
+			return Color.DARK_GRAY;
 		else if (newColor.equalsIgnoreCase("gray"))
-			color = Color.GRAY;
+			return Color.GRAY;
 		else if (newColor.equalsIgnoreCase("green"))
-			color = Color.GREEN;
+			return Color.GREEN;
 		else if (newColor.equalsIgnoreCase("lightGray"))
-			color = Color.LIGHT_GRAY;
+			return Color.LIGHT_GRAY;
 		else if (newColor.equalsIgnoreCase("magenta"))
-			color = Color.MAGENTA;
+			return Color.MAGENTA;
 		else if (newColor.equalsIgnoreCase("orange"))
-			color = Color.ORANGE;
+			return Color.ORANGE;
 		else if (newColor.equalsIgnoreCase("pink"))
-			color = Color.PINK;
+			return Color.PINK;
 		else if (newColor.equalsIgnoreCase("red"))
-			color = Color.RED;
+			return Color.RED;
 		else if (newColor.equalsIgnoreCase("white"))
-			color = Color.WHITE;
+			return Color.WHITE;
 		else if (newColor.equalsIgnoreCase("yellow"))
-			color = Color.YELLOW;
+			return Color.YELLOW;
 		else if (newColor.equalsIgnoreCase("brown"))
-			color = new Color(153, 76, 0);
+			return new Color(153, 76, 0);
 		else if (newColor.equalsIgnoreCase("purple"))
-			color = new Color(153, 51, 255);
+			return new Color(153, 51, 255);
 		else if (newColor.equalsIgnoreCase("none"))
-			color = null;
+			return null;
 		else
 			throw new RuntimeException("Not a valid color.");
 	}
@@ -688,6 +874,278 @@ public class Bug extends Thread{
 	 */
 	private void interpretFunction(Tree<Token> tree){
 		functions.put(tree.getChild(0).getValue().value, tree);
+		//calls resolved before may now refer to this function
+		calls.clear();
+	}
+	
+	/**
+	 * Moves this Bug <code>distance</code> units in the direction it is facing, drawing a line.
+	 * Used by compiled code (see <code>interpretMove(Tree&ltToken&gt)</code>).
+	 * @param distance
+	 */
+	void moveBy(double distance){
+		double radians = angle * (Math.PI/180);
+		double newY = y - (distance * Math.sin(radians));
+		double newX = x + (distance * Math.cos(radians));
+		interpreter.getLineSink().add(x, y, newX, newY, color);
+		x = newX;
+		y = newY;
+	}
+	
+	/**
+	 * Moves this Bug to the given position, drawing a line.
+	 * Used by compiled code (see <code>interpretMoveTo(Tree&ltToken&gt)</code>).
+	 * @param newX
+	 * @param newY
+	 */
+	void moveTo(double newX, double newY){
+		interpreter.getLineSink().add(x, y, newX, newY, color);
+		x = newX;
+		y = newY;
+	}
+	
+	/**
+	 * Turns this Bug by <code>degrees</code>.
+	 * Used by compiled code (see <code>interpretTurn(Tree&ltToken&gt)</code>).
+	 * @param degrees
+	 */
+	void turnBy(double degrees){
+		if (angle + degrees > 360.0)
+			angle = (angle + degrees) % 360.0;
+		else
+			angle += degrees;
+	}
+	
+	/**
+	 * Turns this Bug to face <code>degrees</code>.
+	 * Used by compiled code (see <code>interpretTurnto(Tree&ltToken&gt)</code>).
+	 * @param degrees
+	 */
+	void turnTo(double degrees){
+		if (degrees > 360.0)
+			angle = degrees % 360.0;
+		else
+			angle = degrees;
+	}
+	
+	/**
+	 * Draws a line in this Bug's color without moving the Bug.
+	 * Used by compiled code (see <code>interpretLine(Tree&ltToken&gt)</code>).
+	 */
+	void drawLine(double x1, double y1, double x2, double y2){
+		interpreter.getLineSink().add(x1, y1, x2, y2, color);
+	}
+	
+	/**
+	 * Sets this Bug's color. Used by compiled code.
+	 * @param color - new color, null for "none"
+	 */
+	void setColor(Color color){
+		this.color = color;
+	}
+	
+	/**
+	 * Returns this Bug's x, y or angle. Used by compiled code.
+	 * @param variable - Bytecode.X, Bytecode.Y or Bytecode.ANGLE
+	 * @return value
+	 * @throws RuntimeException if the value is NaN, as <code>fetch(String)</code> does
+	 */
+	double fetchBuiltin(int variable){
+		double value;
+		String name;
+		switch (variable){
+			case Bytecode.X:
+				value = x;
+				name = "x";
+				break;
+			case Bytecode.Y:
+				value = y;
+				name = "y";
+				break;
+			default:
+				value = angle;
+				name = "angle";
+		}
+		if (Double.isNaN(value))
+			throw new RuntimeException("Error: variable \"" + name + "\" has value: NaN.");
+		return value;
+	}
+	
+	/**
+	 * Sets this Bug's x, y or angle. Used by compiled code.
+	 * @param variable - Bytecode.X, Bytecode.Y or Bytecode.ANGLE
+	 * @param value
+	 */
+	void storeBuiltin(int variable, double value){
+		switch (variable){
+			case Bytecode.X:
+				x = value;
+				break;
+			case Bytecode.Y:
+				y = value;
+				break;
+			default:
+				angle = value;
+		}
+	}
+	
+	/**
+	 * Gives this Bug typed nodes, which it will run instead of interpreting its AST.
+	 * @param program
+	 */
+	void setProgram(Node.Program program){
+		this.program = program;
+		//every variable starts at 0.0, as its declaration would set it
+		variableValues = new double[program.variables.length];
+	}
+	
+	/**
+	 * Returns a parameter of the function being run. Used by typed nodes.
+	 * @param slot - position among the function's parameters
+	 * @return value
+	 */
+	double fetchLocal(int slot){
+		return frames.get(frameBase + slot);
+	}
+	
+	/**
+	 * Changes a parameter of the function being run. Used by typed nodes.
+	 * @param slot - position among the function's parameters
+	 * @param value
+	 */
+	void storeLocal(int slot, double value){
+		frames.set(frameBase + slot, value);
+	}
+	
+	/**
+	 * Returns one of this Bug's variables. Used by typed nodes.
+	 * @param slot - position in the program's variables
+	 * @return value
+	 */
+	double fetchVariable(int slot){
+		return variableValues[slot];
+	}
+	
+	/**
+	 * Changes one of this Bug's variables. Used by typed nodes.
+	 * @param slot - position in the program's variables
+	 * @param value
+	 */
+	void storeVariable(int slot, double value){
+		variableValues[slot] = value;
+	}
+	
+	/**
+	 * Returns an Allbugs variable. Used by typed nodes, which share the slots compiled Bugs use.
+	 * @param slot - position in <code>Interpreter.getAllbugsValues()</code>
+	 * @return value
+	 */
+	double fetchAllbugs(int slot){
+		return interpreter.getAllbugsValues()[slot];
+	}
+	
+	/**
+	 * Changes an Allbugs variable. Used by typed nodes.
+	 * @param slot - position in <code>Interpreter.getAllbugsValues()</code>
+	 * @param value
+	 */
+	void storeAllbugs(int slot, double value){
+		interpreter.getAllbugsValues()[slot] = value;
+	}
+	
+	/**
+	 * Finds the most recent parameter of an active call with a name. Used by typed nodes.
+	 * @param name
+	 * @return index of the parameter, -1 if no active call has it
+	 */
+	int findParameter(String name){
+		return frames.find(name);
+	}
+	
+	/**
+	 * Returns a parameter of an active call. Used by typed nodes.
+	 * @param index - returned by <code>findParameter(String)</code>
+	 * @return value
+	 */
+	double fetchParameter(int index){
+		return frames.get(index);
+	}
+	
+	/**
+	 * Changes a parameter of an active call. Used by typed nodes.
+	 * @param index - returned by <code>findParameter(String)</code>
+	 * @param value
+	 */
+	void storeParameter(int index, double value){
+		frames.set(index, value);
+	}
+	
+	/**
+	 * Ends an action: waits until the Interpreter allows this Bug to go on. Used by typed nodes.
+	 */
+	void completeAction(){
+		interpreter.completeCurrentTask(this);
+		interpreter.getWorkPermit(this);
+	}
+	
+	/**
+	 * Sets the value the current function call will return. Used by typed nodes.
+	 * @param value
+	 */
+	void setReturnValue(double value){
+		returnValue = value;
+	}
+	
+	/**
+	 * Starts a loop. Used by typed nodes.
+	 */
+	void enterLoop(){
+		loopDepth++;
+	}
+	
+	/**
+	 * Ends the innermost loop, using up any exit a function asked it for. Used by typed nodes.
+	 */
+	void leaveLoop(){
+		loopDepth--;
+		pendingExit = false;
+	}
+	
+	/**
+	 * Checks whether a loop is executing, so an "exit if" has something to exit. Used by typed nodes.
+	 * @return true if one is
+	 */
+	boolean isInLoop(){
+		return loopDepth > 0;
+	}
+	
+	/**
+	 * Checks whether an "exit if" in a function asked the loop the function was called from to exit.
+	 * Used by typed nodes.
+	 * @return true if it did
+	 */
+	boolean hasPendingExit(){
+		return pendingExit;
+	}
+	
+	/**
+	 * Gives this Bug a compiled program, which it will run instead of interpreting its AST.
+	 * @param bytecode
+	 */
+	void setBytecode(Bytecode bytecode){
+		machine = new Machine(this, bytecode, interpreter.getAllbugsValues());
+		machine.setRecursionLimit(recursionLimit);
+	}
+	
+	/**
+	 * Sets how many function calls may be active at once. A call that would go past it is a runtime error.
+	 * An interpreted Bug keeps its calls on its Thread's stack, which may overflow first.
+	 * @param calls
+	 */
+	void setRecursionLimit(int calls){
+		recursionLimit = calls;
+		if (machine != null)
+			machine.setRecursionLimit(calls);
 	}
 	
 	/**
@@ -708,6 +1166,11 @@ public class Bug extends Thread{
 				angle = value;
 				break;
 			default:
+				int parameter = frames.find(key);
+				if (parameter >= 0){
+					frames.set(parameter, value);
+					return;
+				}
 				for (int i = scopes.size() - 1; i >= 0; i--){
 					if (scopes.get(i).containsKey(key)){
 						scopes.get(i).put(key, value);
@@ -747,6 +1210,9 @@ public class Bug extends Thread{
 			}
 			else {return this.angle;}
 		default:
+			int parameter = frames.find(variable);
+			if (parameter >= 0)
+				return frames.get(parameter);
 			for (int i = scopes.size() - 1; i >= 0; i--){
 				if (scopes.get(i).containsKey(variable)){
 					return scopes.get(i).get(variable);
@@ -784,6 +1250,86 @@ public class Bug extends Thread{
 		return y;
 	}
 	
+	/**
+	 * Called by the Interpreter at the end of each tick. If this Bug has moved, turned or changed color
+	 * since the last tick, it is shown in its new pose, and both the old and the new position need repainting.
+	 * @param region - where to add the positions
+	 */
+	void addChangesTo(DirtyRegion region){
+		Pose old = shown;
+		if (x != old.x || y != old.y || angle != old.angle || color != old.color){
+			region.addBug(old.x, old.y);
+			region.addBug(x, y);
+			shown = new Pose(x, y, angle, color);
+		}
+	}
+	
+	/**
+	 * Called by the Interpreter when this Bug ends and will no longer be drawn.
+	 * @param region - where to add the position it was last shown at
+	 */
+	void addRemovalTo(DirtyRegion region){
+		Pose old = shown;
+		region.addBug(old.x, old.y);
+	}
+	
+	/**
+	 * Returns how this Bug looked at the end of the last tick. A View draws Bugs as they were at the end
+	 * of a tick, never halfway through one, so it knows from the DirtyRegion where it needs to repaint.
+	 * @return pose
+	 */
+	Pose getShownPose(){
+		return shown;
+	}
+	
+	/**
+	 * Position, orientation and color of a Bug at some moment. Immutable, so it can be read while the Bug carries on.
+	 */
+	static final class Pose {
+		final double x, y, angle;
+		final Color color;
+		
+		Pose(double x, double y, double angle, Color color){
+			this.x = x;
+			this.y = y;
+			this.angle = angle;
+			this.color = color;
+		}
+	}
+	
+	/**
+	 * Copies everything about this compiled Bug that running it changes, between two calls to <code>step()</code>.
+	 * @return state
+	 */
+	State save(){
+		return new State(new Pose(x, y, angle, color), machine.save());
+	}
+
+	/**
+	 * Puts this compiled Bug back in a state it was saved in. It is shown in that pose at the end of the next tick.
+	 * @param state - returned by <code>save()</code> on this Bug
+	 */
+	void restore(State state){
+		x = state.pose.x;
+		y = state.pose.y;
+		angle = state.pose.angle;
+		color = state.pose.color;
+		machine.restore(state.machine);
+	}
+
+	/**
+	 * State of a compiled Bug at some moment: its pose and the state of its Machine.
+	 */
+	static final class State {
+		private final Pose pose;
+		private final Machine.State machine;
+
+		private State(Pose pose, Machine.State machine){
+			this.pose = pose;
+			this.machine = machine;
+		}
+	}
+
 	/**
 	 * Sets the name of this bug to the provided <code>name</code>.
 	 * @param name
@@ -876,15 +1422,8 @@ public class Bug extends Thread{
 	 * @param tree
 	 * @return isNumber
 	 */
-    private static boolean isNumber(Tree<Token> tree){
-    	boolean isNumber = true;
-    	String currentVal = tree.getValue().value;
-        char chars[] = currentVal.toCharArray();
-        for (char c : chars){
-        	if (!Character.isDigit(c) && !(c == '.'))
-        		isNumber = false;
-        }
-        return isNumber;
+    static boolean isNumber(Tree<Token> tree){
+    	return tree.getValue().type == Token.Type.NUMBER;
     }
     
     /**
@@ -923,6 +1462,22 @@ public class Bug extends Thread{
     	return angle;
     }
     
+    /**
+     * Sets the Phaser this Bug arrives at to get each work permit. Used by TickBarrier.
+     * @param phaser
+     */
+    void setTickPhaser(Phaser phaser){
+    	tickPhaser = phaser;
+    }
+    
+    /**
+     * Returns the Phaser this Bug arrives at to get each work permit.
+     * @return tickPhaser, null if this Bug is not registered with a TickBarrier
+     */
+    Phaser getTickPhaser(){
+    	return tickPhaser;
+    }
+    
     /**
      * Sets this Bug's die variable to true to inform it of a reset request.
      */
@@ -930,6 +1485,14 @@ public class Bug extends Thread{
     	die = true;
     }
     
+    /**
+     * Returns true if this Bug has been asked to terminate.
+     * @return die
+     */
+    boolean isKilled(){
+    	return die;
+    }
+    
 //METHODS FOR UNIT TESTING  
 	/**
 	 * Returns the tree representing the function found under the key provided by the user
@@ -958,22 +1521,19 @@ public class Bug extends Thread{
     }
 	
     /**
-	 * Getter method for loopExitStack (for unit testing only) (package visibility for unit testing)
-	 * @return loopExitStack
+	 * Getter method for loopDepth (for unit testing only) (package visibility for unit testing)
+	 * @return number of loops currently executing
 	 */
-	Stack<Boolean> getLoopExitStack(){
-		return loopExitStack;
+	int getLoopDepth(){
+		return loopDepth;
 	}
 	
 	/**
-	 * Setter method for loopExitStack (for unit testing only). (package visibility for unit testing)
-	 * Pushes the provided value on the top of this loopExitStack.
+	 * Setter method for loopDepth (for unit testing only). (package visibility for unit testing)
+	 * @param depth - number of loops to pretend are executing
 	 */
-	void pushLoopExitStack(boolean value){
-		if (value == true)
-			loopExitStack.push(true);
-		else 
-			loopExitStack.push(false);
+	void setLoopDepth(int depth){
+		loopDepth = depth;
 	}
 	
     /**
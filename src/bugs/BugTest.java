@@ -79,7 +79,7 @@ public class BugTest {
     }
     
 //BUG CLASS TEST METHODS
-//*for proper use, all getWorkPermit/completeCurrentTask/terminateBug lines need to commented out
+//*testBug is never registered with a TickBarrier, so work permits are granted without a running Interpreter
     
 //EVALUATE test methods
 	@Test
@@ -290,6 +290,30 @@ public class BugTest {
         tree = parser.stack.pop();
         assertEquals("Not equal", 10.0, testBug.evaluate(tree), 0.001);
 	}
+	@Test
+	public void testRecursionLimit(){
+		parser = new Parser("define down using n{\nswitch {\ncase n > 0\nreturn down(n - 1) + 1\n}\n}\n");
+		assertTrue(parser.isFunctionDefinition());
+		testBug.interpret(parser.stack.pop());
+		testBug.setRecursionLimit(10);
+		parser = new Parser("down(9)");
+		assertTrue(parser.isFunctionCall());
+		assertEquals("Not equal", 9.0, testBug.evaluate(parser.stack.pop()), 0.001);
+		parser = new Parser("down(10)");
+		assertTrue(parser.isFunctionCall());
+		Tree<Token> tree = parser.stack.pop();
+		try {
+			testBug.evaluate(tree);
+			fail("Recursion is deeper than the limit");
+		}
+		catch (RuntimeException e){
+			assertTrue(e.getMessage().startsWith("Recursion is too deep"));
+		}
+		//the calls that were active when the error happened are gone
+		parser = new Parser("down(9)");
+		assertTrue(parser.isFunctionCall());
+		assertEquals("Not equal", 9.0, testBug.evaluate(parser.stack.pop()), 0.001);
+	}
 	@Test public void testEvaluateDot(){
 		Bug testBug2 = new Bug();
 		testBug2.setBugName("testBug2");
@@ -694,11 +718,23 @@ public class BugTest {
 		parser = new Parser("exit if 3 <= 3\n");
         assertTrue(parser.isExitIfStatement());
         Tree<Token> tree = parser.stack.pop();
-        assertTrue(testBug.getLoopExitStack().empty());
-        testBug.pushLoopExitStack(false); //simulate a loop adding a false value
-        assertFalse(testBug.getLoopExitStack().empty());
-        testBug.interpret(tree);
-        assertEquals(true, testBug.getLoopExitStack().pop());
+        assertEquals(0, testBug.getLoopDepth());
+        //outside any loop there is nothing to exit
+        assertEquals(Bug.NORMAL, testBug.interpret(tree));
+        testBug.setLoopDepth(1); //simulate a loop
+        assertEquals(Bug.EXITED, testBug.interpret(tree));
+        
+        //the exit ends every block inside the loop, not just its own
+        parser = new Parser("switch {\ncase 1\nexit if 1\nmove 5\n}\n");
+        assertTrue(parser.isSwitchStatement());
+        assertEquals(Bug.EXITED, testBug.interpret(parser.stack.pop()));
+        assertEquals("Not equal", 0.0, testBug.fetch("x"), 0.001);
+        
+        //a return only ends its own block
+        parser = new Parser("switch {\ncase 1\nreturn 2\nmove 5\n}\n");
+        assertTrue(parser.isSwitchStatement());
+        assertEquals(Bug.NORMAL, testBug.interpret(parser.stack.pop()));
+        assertEquals("Not equal", 0.0, testBug.fetch("x"), 0.001);
 	}
 	@Test
 	public void testInterpretLoop(){
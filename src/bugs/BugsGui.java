@@ -22,8 +22,6 @@ import javax.swing.SwingConstants;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
-import tree.Tree;
-
 
 /**
  * GUI for Bugs language Interpreter.
@@ -33,10 +31,13 @@ import tree.Tree;
  */
 public class BugsGui extends JFrame {
     private static final long serialVersionUID = 1L;
+    private static final int SNAPSHOT_INTERVAL = 50; //ticks between the snapshots Back and Reset move the program with
     JPanel display;
     JSlider speedControl;
+    JButton backButton;
     JButton stepButton;
     JButton runButton;
+    JButton turboButton;
     JButton pauseButton;
     JButton resetButton;
     Interpreter interpreter;
@@ -102,8 +103,10 @@ public class BugsGui extends JFrame {
         
         addSpeedLabel(controlPanel);       
         addSpeedControl(controlPanel);
+        addBackButton(controlPanel);
         addStepButton(controlPanel);
         addRunButton(controlPanel);
+        addTurboButton(controlPanel);
         addPauseButton(controlPanel);
         addResetButton(controlPanel);
         
@@ -154,6 +157,20 @@ public class BugsGui extends JFrame {
     	return speedSetting;
     }
     
+    /**
+     * Adds back button to GUI.
+     */
+    private void addBackButton(JPanel controlPanel) {
+        backButton = new JButton("Back");
+        backButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                stepBackAnimation();
+            }
+        });
+        controlPanel.add(backButton);
+    }
+    
     /**
      * Adds step button to GUI.
      */
@@ -182,6 +199,20 @@ public class BugsGui extends JFrame {
         controlPanel.add(runButton);
     }
 
+    /**
+     * Adds turbo button to GUI.
+     */
+    private void addTurboButton(JPanel controlPanel) {
+        turboButton = new JButton("Turbo");
+        turboButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                turboAnimation();
+            }
+        });
+        controlPanel.add(turboButton);
+    }
+
     /**
      * Adds pause button to GUI.
      */
@@ -214,12 +245,26 @@ public class BugsGui extends JFrame {
      * Initializes buttons on GUI.
      */
     private void initializeButtons() {
+        backButton.setEnabled(false);
         stepButton.setEnabled(false);
         runButton.setEnabled(false);
+        turboButton.setEnabled(false);
         pauseButton.setEnabled(false);
         resetButton.setEnabled(false);
     }
     
+    /**
+     * Responds to back button. The program pauses at the end of the tick before the one it is at.
+     */
+    protected void stepBackAnimation() {
+    	interpreter.stepBack();
+        stepButton.setEnabled(true);
+        runButton.setEnabled(true);
+        turboButton.setEnabled(true);
+        pauseButton.setEnabled(false);
+        resetButton.setEnabled(true);
+    }
+    
     /**
      * Responds to step button.
      */
@@ -227,6 +272,7 @@ public class BugsGui extends JFrame {
     	interpreter.giveOneTimePermission();
         stepButton.setEnabled(true);
         runButton.setEnabled(true);
+        turboButton.setEnabled(true);
         pauseButton.setEnabled(false);
         resetButton.setEnabled(true);
     }
@@ -238,11 +284,24 @@ public class BugsGui extends JFrame {
     	interpreter.setPermissionToGrant(true);
         stepButton.setEnabled(true);
         runButton.setEnabled(false);
+        turboButton.setEnabled(true);
         pauseButton.setEnabled(true);
         resetButton.setEnabled(true);
     	
     }
     
+    /**
+     * Responds to turbo button. The program runs as fast as it can and the View shows it at its frame rate.
+     */
+    protected void turboAnimation() {
+    	interpreter.runTurbo();
+        stepButton.setEnabled(true);
+        runButton.setEnabled(true);
+        turboButton.setEnabled(false);
+        pauseButton.setEnabled(true);
+        resetButton.setEnabled(true);
+    }
+    
     /**
      * Responds to pause button.
      */
@@ -250,6 +309,7 @@ public class BugsGui extends JFrame {
     	interpreter.setPermissionToGrant(false);
         stepButton.setEnabled(true);
         runButton.setEnabled(true);
+        turboButton.setEnabled(true);
         pauseButton.setEnabled(false);
         resetButton.setEnabled(true);
     }
@@ -258,14 +318,12 @@ public class BugsGui extends JFrame {
      * Responds to reset button.
      */
     protected void resetAnimation() {
-    	Tree<Token> programTree = interpreter.getLastProgramTree();
-    	interpreter.kill();
     	speedControl.setValue(90);
-    	interpreter = new Interpreter(programTree);
-    	view.addInterpreter(interpreter);
-    	interpreter.start();
+    	//the program is moved back to its start rather than loaded again
+    	interpreter.seek(0);
         stepButton.setEnabled(true);
         runButton.setEnabled(true);
+        turboButton.setEnabled(true);
         pauseButton.setEnabled(false);
         resetButton.setEnabled(false);
     }
@@ -296,12 +354,18 @@ public class BugsGui extends JFrame {
 				JOptionPane.showMessageDialog(this, "There was an error parsing the file.");
 			}
 			else{
-				//Create a new Interpreter and provide with the AST created by the Parser
-				interpreter = new Interpreter(parser.stack.pop());
+				//stop the previous program, whose Thread would otherwise wait to be moved back
+				if (interpreter != null)
+					interpreter.kill();
+				//Create a new Interpreter and provide with the AST created by the Parser, optimized and compiled so it can be moved back
+				interpreter = new Interpreter(Optimizer.optimize(parser.stack.pop()), Interpreter.Mode.COMPILED);
+				interpreter.setSnapshotInterval(SNAPSHOT_INTERVAL);
 				//adds the Interpreter to the View for drawing
 				view.addInterpreter(interpreter);
+				backButton.setEnabled(true);
 				stepButton.setEnabled(true);
 		        runButton.setEnabled(true);
+		        turboButton.setEnabled(true);
 		        interpreter.start();
 			}
 				
@@ -0,0 +1,173 @@
+package bugs;
+
+import java.awt.Color;
+
+/**
+ * Compiled form of a single Bug produced by the <code>Compiler</code>. Holds a flat instruction
+ * array together with the constant, name, color and function tables its operands index into.
+ * Executed by a <code>Machine</code>.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class Bytecode {
+	//OPCODES - operands (if any) follow the opcode in the instruction array
+	static final int PUSH = 0; //const - push constants[const]
+	static final int LOAD_LOCAL = 1; //slot - push parameter slot of the current function call
+	static final int STORE_LOCAL = 2; //slot - pop value into parameter slot of the current function call
+	static final int LOAD_VAR = 3; //slot - push Bug variable slot
+	static final int STORE_VAR = 4; //slot - pop value into Bug variable slot
+	static final int LOAD_GLOBAL = 5; //slot - push Allbugs variable slot
+	static final int STORE_GLOBAL = 6; //slot - pop value into Allbugs variable slot
+	static final int LOAD_BUILTIN = 7; //X, Y or ANGLE - push the Bug's position or heading
+	static final int STORE_BUILTIN = 8; //X, Y or ANGLE - pop value into the Bug's position or heading
+	static final int LOAD_DYNAMIC = 9; //name, scope, slot - push parameter names[name] of the most recent call
+	                                   //defining it, otherwise the variable given by scope and slot
+	static final int STORE_DYNAMIC = 10; //name, scope, slot - as LOAD_DYNAMIC, but pop value into the variable
+	static final int LOAD_DOT = 11; //bug, name - push variable names[name] of the Bug named names[bug]
+	static final int ADD = 12;
+	static final int SUB = 13;
+	static final int MUL = 14;
+	static final int DIV = 15;
+	static final int NEG = 16;
+	static final int LT = 17;
+	static final int LE = 18;
+	static final int EQ = 19;
+	static final int NE = 20;
+	static final int GT = 21;
+	static final int GE = 22;
+	static final int POP = 23;
+	static final int JUMP = 24; //address
+	static final int JUMP_FALSE = 25; //address - pop value, jump if it is not "true-ish"
+	static final int JUMP_TRUE = 26; //address - pop value, jump if it is "true-ish"
+	static final int MOVE = 27; //actions - each one completes a work permit
+	static final int MOVETO = 28;
+	static final int TURN = 29;
+	static final int TURNTO = 30;
+	static final int LINE = 31;
+	static final int COLOR = 32; //color - set color to colors[color]
+	static final int CALL = 33; //function - call functions[function], arguments are on the stack
+	static final int RET = 34; //return from function, pushing the return value
+	static final int SET_RETURN = 35; //pop value into the return value register
+	static final int DISTANCE = 36; //bug - push distance to the Bug named names[bug]
+	static final int DIRECTION = 37; //bug - push direction to the Bug named names[bug]
+	static final int ENTER_LOOP = 38;
+	static final int LEAVE_LOOP = 39;
+	static final int EXIT = 40; //address - pop value, if "true-ish" and inside a loop flag a pending exit and jump
+	static final int CHECK_EXIT_LOOP = 41; //address - if an exit is pending, clear it and jump
+	static final int CHECK_EXIT_RETURN = 42; //address - if an exit is pending, jump (leaving it pending)
+	static final int TRAP = 43; //message - throw a RuntimeException with message names[message]
+	static final int HALT = 44;
+	static final int END_INLINE = 45; //count - end an inlined call: pop its count arguments and push the return value, like RET
+	static final int TAIL_CALL = 46; //function - call functions[function] in place of the current call, which it returns for
+
+	//operands of LOAD_BUILTIN and STORE_BUILTIN
+	static final int X = 0;
+	static final int Y = 1;
+	static final int ANGLE = 2;
+
+	//scope operands of LOAD_DYNAMIC and STORE_DYNAMIC, used when no active call defines the parameter
+	static final int SCOPE_BUG = 0;
+	static final int SCOPE_ALLBUGS = 1;
+	static final int SCOPE_NONE = 2; //variable is not defined anywhere else
+
+	/** Mnemonics for each opcode, used by <code>toString()</code>. */
+	private static final String[] MNEMONICS = { "PUSH", "LOAD_LOCAL", "STORE_LOCAL", "LOAD_VAR", "STORE_VAR",
+		"LOAD_GLOBAL", "STORE_GLOBAL", "LOAD_BUILTIN", "STORE_BUILTIN", "LOAD_DYNAMIC", "STORE_DYNAMIC", "LOAD_DOT",
+		"ADD", "SUB", "MUL", "DIV", "NEG", "LT", "LE", "EQ", "NE", "GT", "GE", "POP",
+		"JUMP", "JUMP_FALSE", "JUMP_TRUE", "MOVE", "MOVETO", "TURN", "TURNTO", "LINE", "COLOR",
+		"CALL", "RET", "SET_RETURN", "DISTANCE", "DIRECTION", "ENTER_LOOP", "LEAVE_LOOP", "EXIT",
+		"CHECK_EXIT_LOOP", "CHECK_EXIT_RETURN", "TRAP", "HALT", "END_INLINE", "TAIL_CALL" };
+
+	/** Number of operands that follow each opcode. */
+	private static final int[] OPERANDS = { 1, 1, 1, 1, 1,
+		1, 1, 1, 1, 3, 3, 2,
+		0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+		1, 1, 1, 0, 0, 0, 0, 0, 1,
+		1, 0, 0, 1, 1, 0, 0, 1,
+		1, 1, 1, 0, 1, 1 };
+
+	final int[] code; //instructions and their operands
+	final double[] constants; //numeric literals
+	final String[] names; //variable names, Bug names and error messages
+	final Color[] colors; //colors used by "color" statements
+	final Function[] functions; //functions called by this Bug
+	final String[] variables; //names of the Bug's variables, in slot order
+	final int maxStack; //operand stack needed by the main program (not counting calls)
+
+	/**
+	 * Constructor. Used only by the <code>Compiler</code>.
+	 */
+	Bytecode(int[] code, double[] constants, String[] names, Color[] colors, Function[] functions,
+			String[] variables, int maxStack){
+		this.code = code;
+		this.constants = constants;
+		this.names = names;
+		this.colors = colors;
+		this.functions = functions;
+		this.variables = variables;
+		this.maxStack = maxStack;
+	}
+
+	/**
+	 * A compiled Bugs function: its entry point in the instruction array and its parameters.
+	 * The arguments of a call stay on the operand stack, where they become the parameter slots.
+	 */
+	static class Function {
+		final String name;
+		final String[] params;
+		int entry; //set once the body has been emitted
+		int maxStack; //operand stack needed by the body (not counting further calls)
+		int[] slots; //parameter slot for each entry in the name table, -1 if not a parameter
+
+		Function(String name, String[] params){
+			this.name = name;
+			this.params = params;
+		}
+	}
+
+	/**
+	 * Returns the number of operands that follow the given opcode.
+	 * @param opcode
+	 * @return number of operands
+	 */
+	static int operandCount(int opcode){
+		return OPERANDS[opcode];
+	}
+
+	/**
+	 * Returns the slot of one of the Bug's variables.
+	 * @param name
+	 * @return slot, or -1 if the Bug has no such variable
+	 */
+	int variableSlot(String name){
+		for (int i = variables.length - 1; i >= 0; i--){
+			if (variables[i].equals(name))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Disassembles the instructions, one per line.
+	 * @return String listing of this Bytecode.
+	 */
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		int pc = 0;
+		while (pc < code.length){
+			for (Function function : functions){
+				if (function.entry == pc)
+					sb.append(function.name).append(":\n");
+			}
+			int opcode = code[pc];
+			sb.append(pc).append("\t").append(MNEMONICS[opcode]);
+			for (int i = 1; i <= OPERANDS[opcode]; i++){
+				sb.append(" ").append(code[pc + i]);
+			}
+			sb.append("\n");
+			pc += 1 + OPERANDS[opcode];
+		}
+		return sb.toString();
+	}
+}
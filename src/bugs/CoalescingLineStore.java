@@ -0,0 +1,139 @@
+package bugs;
+
+import java.awt.Color;
+
+/**
+ * LineStore that merges each line into the one before it when the two are the same color and
+ * continue each other along the same horizontal or vertical line, in the same direction: a Bug that
+ * moves a step at a time in a loop stores one line rather than thousands. It keeps its lines in
+ * another LineStore.
+ * <p>
+ * The last line may still grow, so it is held back as the <i>open line</i> until a line that cannot be
+ * merged into it arrives, or until <code>flush()</code>. <code>size()</code> and <code>get(int)</code>
+ * only cover the lines before it; readers that show a drawing as it is made draw the open line last.
+ * <p>
+ * Merging never changes what is drawn: only lines that are next to each other in drawing order are
+ * merged, so lines drawn over one another still overlap in the same order, and a horizontal or vertical
+ * line is drawn with exactly the pixels of the pieces it was made from, with or without antialiasing.
+ * Diagonal pieces are rounded to pixels separately, so merging them could move pixels; they are never merged.
+ * <p>
+ * Appending takes a lock.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class CoalescingLineStore extends LineStore {
+	private final LineStore lines; //lines that can no longer grow
+	private boolean open; //whether there is an open line
+	private double x1, y1, x2, y2; //the open line
+	private Color color; //color of the open line
+
+	/**
+	 * Constructor.
+	 * @param lines - empty store to keep the lines in
+	 */
+	public CoalescingLineStore(LineStore lines){
+		this.lines = lines;
+	}
+
+	@Override
+	public synchronized void add(double x1, double y1, double x2, double y2, Color color){
+		if (open && continues(x1, y1, x2, y2, color)){
+			this.x2 = x2;
+			this.y2 = y2;
+			return;
+		}
+		flush();
+		this.x1 = x1;
+		this.y1 = y1;
+		this.x2 = x2;
+		this.y2 = y2;
+		this.color = color;
+		open = true;
+	}
+
+	/**
+	 * Checks whether a line can be merged into the open line.
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @param color
+	 * @return true if the line starts where the open line ends and goes on in the same direction, horizontally or vertically
+	 */
+	private boolean continues(double x1, double y1, double x2, double y2, Color color){
+		if (x1 != this.x2 || y1 != this.y2 || (color == null ? this.color != null : !color.equals(this.color)))
+			return false;
+		if (y1 == y2 && this.y1 == this.y2)
+			return Math.signum(x2 - x1) == Math.signum(this.x2 - this.x1) && x1 != x2;
+		if (x1 == x2 && this.x1 == this.x2)
+			return Math.signum(y2 - y1) == Math.signum(this.y2 - this.y1) && y1 != y2;
+		return false;
+	}
+
+	/**
+	 * Stores the open line, which will no longer grow.
+	 */
+	@Override
+	public synchronized void flush(){
+		if (open){
+			lines.add(x1, y1, x2, y2, color);
+			open = false;
+		}
+	}
+
+	@Override
+	public synchronized Command getOpenLine(){
+		return open ? new Command(x1, y1, x2, y2, color, lines.size()) : null;
+	}
+
+	/**
+	 * Copies lines before the open line, which the copy does not have.
+	 */
+	@Override
+	public LineStore copy(int size){
+		return new CoalescingLineStore(lines.copy(size));
+	}
+
+	/**
+	 * Returns the store the lines are kept in.
+	 * @return lines
+	 */
+	public LineStore getLines(){
+		return lines;
+	}
+
+	@Override
+	public int size(){
+		return lines.size();
+	}
+
+	@Override
+	public Command get(int index){
+		return lines.get(index);
+	}
+
+	@Override
+	public double getX1(int index){
+		return lines.getX1(index);
+	}
+
+	@Override
+	public double getY1(int index){
+		return lines.getY1(index);
+	}
+
+	@Override
+	public double getX2(int index){
+		return lines.getX2(index);
+	}
+
+	@Override
+	public double getY2(int index){
+		return lines.getY2(index);
+	}
+
+	@Override
+	public Color getColor(int index){
+		return lines.getColor(index);
+	}
+}
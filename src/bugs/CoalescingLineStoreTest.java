@@ -0,0 +1,177 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for CoalescingLineStore class of Bugs language Interpreter.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class CoalescingLineStoreTest {
+
+	@Test
+	public void testMergesLinesThatContinueEachOther(){
+		CoalescingLineStore lines = new CoalescingLineStore(new PrimitiveLineStore());
+		for (int i = 0; i < 10; i++){
+			lines.add(i, 50, i + 1, 50, Color.RED);
+		}
+		assertEquals(0, lines.size());
+		assertLine(0, 50, 10, 50, Color.RED, lines.getOpenLine());
+		//a vertical line ends the horizontal one
+		lines.add(10, 50, 10, 40, Color.RED);
+		lines.add(10, 40, 10, 30, Color.RED);
+		assertEquals(1, lines.size());
+		assertLine(0, 50, 10, 50, Color.RED, lines.get(0));
+		assertLine(10, 50, 10, 30, Color.RED, lines.getOpenLine());
+		lines.flush();
+		assertEquals(2, lines.size());
+		assertNull(lines.getOpenLine());
+		assertLine(10, 50, 10, 30, Color.RED, lines.get(1));
+	}
+
+	@Test
+	public void testKeepsLinesThatDoNotContinueEachOther(){
+		CoalescingLineStore lines = new CoalescingLineStore(new SegmentedLineStore());
+		lines.add(0, 0, 10, 0, Color.RED);
+		lines.add(10, 0, 20, 0, Color.BLUE); //another color
+		lines.add(20, 0, 15, 0, Color.BLUE); //turns back
+		lines.add(16, 0, 10, 0, Color.BLUE); //does not start where the last line ended
+		lines.add(10, 0, 20, 10, Color.BLUE); //diagonal
+		lines.add(20, 10, 30, 20, Color.BLUE); //diagonal, in the same direction
+		lines.add(30, 20, 30, 20, Color.BLUE); //goes nowhere
+		lines.add(30, 20, 30, 25, null);
+		lines.add(30, 25, 30, 30, null); //invisible lines are merged too
+		lines.flush();
+		assertEquals(8, lines.size());
+		assertLine(10, 0, 20, 0, Color.BLUE, lines.get(1));
+		assertLine(30, 20, 30, 30, null, lines.get(7));
+	}
+
+	@Test
+	public void testMergedLinesDrawTheSamePixels(){
+		//a walk of short moves in every direction, many of them horizontal or vertical, in runs of a color
+		Random random = new Random(16);
+		LineStore plain = new PrimitiveLineStore();
+		CoalescingLineStore merged = new CoalescingLineStore(new PrimitiveLineStore());
+		double x = 50, y = 50;
+		Color color = Color.RED;
+		Color[] colors = {Color.RED, Color.BLUE, Color.GREEN, Color.BLACK};
+		for (int i = 0; i < 5000; i++){
+			if (random.nextInt(20) == 0)
+				color = colors[random.nextInt(colors.length)];
+			int angle = random.nextInt(3) == 0 ? random.nextInt(360) : 90 * random.nextInt(4);
+			int steps = 1 + random.nextInt(10);
+			for (int j = 0; j < steps; j++){
+				double length = random.nextDouble() * 3;
+				double newX = angle % 180 == 90 ? x : x + length * Math.cos(Math.toRadians(angle));
+				double newY = angle % 180 == 0 ? y : y - length * Math.sin(Math.toRadians(angle));
+				newX = Math.max(-2, Math.min(102, newX));
+				newY = Math.max(-2, Math.min(102, newY));
+				plain.add(x, y, newX, newY, color);
+				merged.add(x, y, newX, newY, color);
+				x = newX;
+				y = newY;
+			}
+		}
+		merged.flush();
+		assertTrue(merged.size() < plain.size() / 2);
+		for (int size : new int[] {100, 333, 600}){
+			for (boolean antialias : new boolean[] {false, true}){
+				TestImages.assertSameImage(draw(plain, size, antialias), draw(merged, size, antialias));
+			}
+		}
+	}
+
+	@Test
+	public void testProgramDrawsTheSameWithAndWithoutMerging(){
+		String program = "Bug Sally {\n" +
+				"    var i, n\n" +
+				"    x = 10\n" +
+				"    y = 10\n" +
+				"    color red\n" +
+				"    loop {\n" +
+				"        move 0.7\n" +
+				"        i = i + 1\n" +
+				"        n = n + 1\n" +
+				"        switch {\n" +
+				"            case i = 50\n" +
+				"                turn 90\n" +
+				"            case i = 100\n" +
+				"                color blue\n" +
+				"                turn 45\n" +
+				"            case i = 150\n" +
+				"                i = 0\n" +
+				"                turn 45\n" +
+				"        }\n" +
+				"        exit if n = 600\n" +
+				"    }\n" +
+				"}\n" +
+				"Bug Fred {\n" +
+				"    color green\n" +
+				"    line 0, 30, 100, 30\n" +
+				"}\n";
+		Parser parser = new Parser(program);
+		assertTrue(parser.isProgram());
+		Interpreter plain = BatchRenderer.run(parser.stack.pop(), 10000, false);
+		parser = new Parser(program);
+		assertTrue(parser.isProgram());
+		Interpreter merged = BatchRenderer.run(parser.stack.pop(), 10000, true);
+		assertTrue(merged.getLines().size() < plain.getLines().size());
+		assertNull(merged.getLines().getOpenLine());
+		TestImages.assertSameImage(BatchRenderer.render(plain.getLines(), 300, 300), BatchRenderer.render(merged.getLines(), 300, 300));
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testCoalescingCannotChangeOnceRun(){
+		Parser parser = new Parser("Bug Sally {\n    move 1\n}\n");
+		assertTrue(parser.isProgram());
+		Interpreter interpreter = BatchRenderer.run(parser.stack.pop(), 10000, false);
+		interpreter.setLineCoalescing(true);
+	}
+
+	//HELPER methods
+	/**
+	 * Checks a line's ends and color.
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @param color
+	 * @param line
+	 */
+	private void assertLine(double x1, double y1, double x2, double y2, Color color, Command line){
+		assertEquals(x1, line.getX1(), 0);
+		assertEquals(y1, line.getY1(), 0);
+		assertEquals(x2, line.getX2(), 0);
+		assertEquals(y2, line.getY2(), 0);
+		assertEquals(color, line.getColor());
+	}
+
+	/**
+	 * Draws lines on a white square.
+	 * @param lines
+	 * @param size - width and height in pixels
+	 * @param antialias
+	 * @return image
+	 */
+	private BufferedImage draw(LineStore lines, int size, boolean antialias){
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, size, size);
+		if (antialias)
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		Rasterizer.draw(g, lines, 0, lines.size(), size / 100.0, size / 100.0);
+		g.dispose();
+		return image;
+	}
+}
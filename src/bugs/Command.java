@@ -4,6 +4,7 @@ import java.awt.Color;
 
 /**
  * Holds coordinates and color of a single line that has been created and should be drawn on the View.
+ * A LineStore that keeps its lines in primitive arrays creates Commands only as views of them.
  * @author Ryan Smith
  * @version March 2015
  *
@@ -30,6 +31,24 @@ public class Command {
 		idCounter++;
 	}
 	
+	/**
+	 * Constructor for a view of a line held by a LineStore. The ID is given rather than taken from the counter.
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @param color
+	 * @param id - index of the line in its LineStore
+	 */
+	Command(double x1, double y1, double x2, double y2, Color color, int id){
+		this.x1 = x1;
+		this.y1 = y1;
+		this.x2 = x2;
+		this.y2 = y2;
+		this.color = color;
+		this.id = id;
+	}
+	
 	/**
 	 * Getter method for x1 coordinate of this line.
 	 * @return x1
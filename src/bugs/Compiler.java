@@ -0,0 +1,934 @@
+package bugs;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import tree.Tree;
+
+/**
+ * Compiler for Bugs language Interpreter. Lowers the AST of a single Bug (together with any Allbugs
+ * functions it calls) into a <code>Bytecode</code> instruction array that a <code>Machine</code> can
+ * execute without walking the tree or comparing Strings.
+ * <p>
+ * The generated code behaves like <code>Bug.interpret(Tree&ltToken&gt)</code>: a "return" statement
+ * only leaves the block it appears in, an "exit if" inside a function called from a loop exits that loop,
+ * and run time errors (undefined functions, wrong number of arguments...) are only raised if the
+ * offending statement is actually reached. Unlike the tree walker, every operand is evaluated exactly once.
+ * <p>
+ * Every variable reference is resolved while compiling. Bug variables and Allbugs variables live in
+ * <code>double[]</code> slots and function parameters in slots of the caller's operand stack, so running
+ * code never looks a variable up by name. Bugs uses dynamic scoping, so a name that is not a parameter
+ * of the current function but is a parameter of some other function has to be searched for in the active
+ * calls; this is still done by comparing slot tables, with the static slot as the fallback.
+ * <p>
+ * Small functions that call no others are inlined: their body is emitted where they are called, reading
+ * the arguments where the caller left them on the operand stack, so no call frame is set up. Only functions
+ * that use no other function's parameters are inlined, since those are found by searching the active calls.
+ * <p>
+ * A call whose value its caller returns, with nothing left to do, becomes a TAIL_CALL that reuses the
+ * caller's frame, unless some function may look up one of the caller's parameters while it is gone.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class Compiler {
+	private Tree<Token> bugTree; //AST of the Bug being compiled
+	private HashMap<String, Tree<Token>> bugFunctions; //functions defined by the Bug
+	private HashMap<String, Tree<Token>> allbugsFunctions; //functions defined in Allbugs code
+	private HashMap<String, Integer> allbugsSlots; //slots of the Allbugs variables
+	private HashMap<String, Integer> variableSlots; //slots of the Bug's variables
+	private HashSet<String> parameterNames; //every name used as a parameter by any function this Bug could call
+	private static final int MAX_INLINE_NODES = 32; //functions whose body has more AST nodes are never inlined
+	
+	private String[] currentParams; //parameters of the function being compiled (or inlined), null in the main program
+	private int localBase; //operand stack index, relative to the frame pointer, of the first of currentParams
+	private int unitBase; //operand stack index, relative to the frame pointer, of the bottom of the unit's own operands
+	private HashMap<String, Boolean> inlinable; //whether each function seen so far is inlined
+	private int[] code; //instructions emitted so far
+	private int size; //number of ints used in code
+	private ArrayList<Double> constants;
+	private HashMap<Double, Integer> constantIndex;
+	private ArrayList<String> names;
+	private HashMap<String, Integer> nameIndex;
+	private ArrayList<Color> colors;
+	private ArrayList<Bytecode.Function> functions;
+	private HashMap<String, Integer> functionIndex;
+	private LinkedList<Integer> uncompiledFunctions; //functions that have been called but not yet emitted
+	private int depth; //operand stack depth at the current instruction
+	private int maxDepth; //deepest operand stack seen in the current unit
+
+	/**
+	 * Constructor.
+	 * @param bugTree - AST representing a Bug definition
+	 * @param allbugsFunctions - functions defined in the program's Allbugs code
+	 * @param allbugsVariables - names of the program's Allbugs variables, in slot order
+	 */
+	public Compiler(Tree<Token> bugTree, HashMap<String, Tree<Token>> allbugsFunctions, String[] allbugsVariables){
+		this.bugTree = bugTree;
+		this.allbugsFunctions = allbugsFunctions;
+		bugFunctions = new HashMap<String, Tree<Token>>();
+		Tree<Token> functionList = bugTree.getChild(4);
+		for (int i = 0; i < functionList.getNumberOfChildren(); i++){
+			Tree<Token> function = functionList.getChild(i);
+			bugFunctions.put(function.getChild(0).getValue().value, function);
+		}
+		allbugsSlots = new HashMap<String, Integer>();
+		for (int i = 0; i < allbugsVariables.length; i++){
+			allbugsSlots.put(allbugsVariables[i], i);
+		}
+		parameterNames = new HashSet<String>();
+		addParameterNames(bugFunctions);
+		addParameterNames(allbugsFunctions);
+	}
+
+	/**
+	 * Compiles the Bug given to the constructor.
+	 * @return Bytecode for the Bug
+	 */
+	public Bytecode compile(){
+		code = new int[64];
+		size = 0;
+		constants = new ArrayList<Double>();
+		constantIndex = new HashMap<Double, Integer>();
+		names = new ArrayList<String>();
+		nameIndex = new HashMap<String, Integer>();
+		colors = new ArrayList<Color>();
+		functions = new ArrayList<Bytecode.Function>();
+		functionIndex = new HashMap<String, Integer>();
+		uncompiledFunctions = new LinkedList<Integer>();
+		inlinable = new HashMap<String, Boolean>();
+
+		//Bug variables are given slots up front, so they are already defined (as 0.0) when the code starts
+		variableSlots = new HashMap<String, Integer>();
+		ArrayList<String> variables = new ArrayList<String>();
+		Tree<Token> varList = bugTree.getChild(1);
+		for (int i = 0; i < varList.getNumberOfChildren(); i++){
+			Tree<Token> var = varList.getChild(i);
+			for (int j = 0; j < var.getNumberOfChildren(); j++){
+				String variable = var.getChild(j).getValue().value;
+				if (!variableSlots.containsKey(variable)){
+					variableSlots.put(variable, variables.size());
+					variables.add(variable);
+				}
+			}
+		}
+
+		//main program: initialization block, then the Bug's commands
+		depth = 0;
+		maxDepth = 0;
+		currentParams = null;
+		unitBase = 0;
+		Tree<Token> initially = bugTree.getChild(2);
+		if (initially.getNumberOfChildren() > 0){
+			compileBlock(initially.getChild(0), null, null);
+		}
+		compileBlock(bugTree.getChild(3), null, null);
+		emit(Bytecode.HALT);
+		int mainStack = maxDepth;
+
+		//every function reached from the main program (and from those functions)
+		while (!uncompiledFunctions.isEmpty()){
+			compileFunction(uncompiledFunctions.removeFirst());
+		}
+		markTailCalls();
+
+		//slot tables used to search the active calls for dynamically scoped parameters
+		for (Bytecode.Function function : functions){
+			function.slots = new int[names.size()];
+			for (int i = 0; i < function.slots.length; i++){
+				function.slots[i] = parameterSlot(function.params, names.get(i));
+			}
+		}
+
+		int[] finalCode = new int[size];
+		System.arraycopy(code, 0, finalCode, 0, size);
+		double[] finalConstants = new double[constants.size()];
+		for (int i = 0; i < finalConstants.length; i++){
+			finalConstants[i] = constants.get(i);
+		}
+		return new Bytecode(finalCode, finalConstants, names.toArray(new String[names.size()]),
+				colors.toArray(new Color[colors.size()]),
+				functions.toArray(new Bytecode.Function[functions.size()]),
+				variables.toArray(new String[variables.size()]), mainStack);
+	}
+
+	/**
+	 * Emits the body of a function, ending with a RET instruction.
+	 * @param index - index of the function in <code>functions</code>
+	 */
+	private void compileFunction(int index){
+		Bytecode.Function function = functions.get(index);
+		Tree<Token> tree = findFunction(function.name);
+		depth = 0;
+		maxDepth = 0;
+		currentParams = function.params;
+		localBase = 0;
+		unitBase = function.params.length;
+		function.entry = size;
+		Label end = new Label();
+		compileBlock(tree.getChild(2), null, end);
+		bind(end);
+		emit(Bytecode.RET);
+		function.maxStack = maxDepth;
+	}
+
+	/**
+	 * Turns each CALL that is followed only by returning its value into a TAIL_CALL. The caller's
+	 * parameters are dropped by a tail call, so a function whose parameters are looked up by name
+	 * (with LOAD_DYNAMIC or STORE_DYNAMIC) anywhere in the code keeps making ordinary calls.
+	 */
+	private void markTailCalls(){
+		HashSet<String> dynamicNames = new HashSet<String>();
+		for (int pc = 0; pc < size; pc += 1 + Bytecode.operandCount(code[pc])){
+			if (code[pc] == Bytecode.LOAD_DYNAMIC || code[pc] == Bytecode.STORE_DYNAMIC)
+				dynamicNames.add(names.get(code[pc + 1]));
+		}
+		//functions are compiled one after another, in index order
+		for (int f = 0; f < functions.size(); f++){
+			Bytecode.Function function = functions.get(f);
+			boolean keepsFrame = false;
+			for (String param : function.params){
+				keepsFrame |= dynamicNames.contains(param);
+			}
+			if (keepsFrame)
+				continue;
+			int end = f + 1 < functions.size() ? functions.get(f + 1).entry : size;
+			for (int pc = function.entry; pc < end; pc += 1 + Bytecode.operandCount(code[pc])){
+				if (code[pc] == Bytecode.CALL && onlyReturns(pc + 2))
+					code[pc] = Bytecode.TAIL_CALL;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the code at an address does nothing but return the value on top of the operand stack.
+	 * @param pc - address
+	 * @return true if every path from pc sets the return value and reaches a RET, with no other effect
+	 */
+	private boolean onlyReturns(int pc){
+		if (code[pc] != Bytecode.SET_RETURN)
+			return false;
+		pc++;
+		while (true){
+			switch (code[pc]){
+				case Bytecode.JUMP:
+					//a backward jump repeats a loop
+					if (code[pc + 1] <= pc)
+						return false;
+					pc = code[pc + 1];
+					break;
+				case Bytecode.CHECK_EXIT_RETURN:
+					//jumps to the end of the function, just before its RET, or goes on
+					pc += 2;
+					break;
+				case Bytecode.RET:
+					return true;
+				default:
+					return false;
+			}
+		}
+	}
+
+	/**
+	 * Emits a "block" tree. A "return" statement jumps to the end of the block, like
+	 * <code>Bug.interpretBlock(Tree&ltToken&gt)</code> breaking out of its loop.
+	 * @param tree - "block" tree
+	 * @param loopExit - where an "exit if" should jump, null if not inside a loop in this unit
+	 * @param unitEnd - end of the enclosing function, null in the main program
+	 */
+	private void compileBlock(Tree<Token> tree, Label loopExit, Label unitEnd){
+		Label end = new Label();
+		for (int i = 0; i < tree.getNumberOfChildren(); i++){
+			Tree<Token> statement = tree.getChild(i);
+			if (statement.getValue().value.equals("return")){
+				compileExpression(statement.getChild(0));
+				emit(Bytecode.SET_RETURN);
+				//rest of the block is never executed
+				if (i < tree.getNumberOfChildren() - 1)
+					emitJump(Bytecode.JUMP, end);
+				break;
+			}
+			compileStatement(statement, loopExit, unitEnd);
+			//an "exit if" in a function called by this statement may have requested an exit
+			if (containsCall(statement))
+				emitCheckExit(loopExit, unitEnd);
+		}
+		bind(end);
+	}
+
+	/**
+	 * Emits a single command found in a block.
+	 * @param tree
+	 * @param loopExit - where an "exit if" should jump, null if not inside a loop in this unit
+	 * @param unitEnd - end of the enclosing function, null in the main program
+	 */
+	private void compileStatement(Tree<Token> tree, Label loopExit, Label unitEnd){
+		switch(tree.getValue().value){
+			case ("move"):
+				compileExpression(tree.getChild(0));
+				emit(Bytecode.MOVE);
+				break;
+			case ("moveto"):
+				compileExpression(tree.getChild(0));
+				compileExpression(tree.getChild(1));
+				emit(Bytecode.MOVETO);
+				break;
+			case ("turn"):
+				compileExpression(tree.getChild(0));
+				emit(Bytecode.TURN);
+				break;
+			case ("turnto"):
+				compileExpression(tree.getChild(0));
+				emit(Bytecode.TURNTO);
+				break;
+			case ("line"):
+				for (int i = 0; i < 4; i++){
+					compileExpression(tree.getChild(i));
+				}
+				emit(Bytecode.LINE);
+				break;
+			case ("assign"):
+				compileExpression(tree.getChild(1));
+				emitStore(tree.getChild(0).getValue().value);
+				break;
+			case ("loop"):
+				compileLoop(tree, unitEnd);
+				break;
+			case ("exit"):
+				compileExpression(tree.getChild(0));
+				if (loopExit != null)
+					emitJump(Bytecode.JUMP_TRUE, loopExit);
+				else if (unitEnd != null)
+					emitJump(Bytecode.EXIT, unitEnd);
+				else //not inside any loop, nothing to exit
+					emit(Bytecode.POP);
+				break;
+			case ("switch"):
+				compileSwitch(tree, loopExit, unitEnd);
+				break;
+			case ("color"):
+				compileColor(tree);
+				break;
+			case ("call"):
+				compileCall(tree);
+				emit(Bytecode.POP);
+				break;
+			case ("block"):
+				compileBlock(tree, loopExit, unitEnd);
+				break;
+		}
+	}
+
+	/**
+	 * Emits a "loop" tree. The loop body runs until an "exit if" jumps to the LEAVE_LOOP instruction.
+	 * @param tree
+	 * @param unitEnd - end of the enclosing function, null in the main program
+	 */
+	private void compileLoop(Tree<Token> tree, Label unitEnd){
+		Label exit = new Label();
+		emit(Bytecode.ENTER_LOOP);
+		int top = size;
+		compileBlock(tree.getChild(0), exit, unitEnd);
+		//a "return" in the body skips the per-statement checks, so check again before looping
+		if (containsCall(tree.getChild(0)))
+			emitCheckExit(exit, unitEnd);
+		emit(Bytecode.JUMP, top);
+		bind(exit);
+		emit(Bytecode.LEAVE_LOOP);
+	}
+
+	/**
+	 * Emits a "switch" tree. Each case is tested in order and only the first true case is executed.
+	 * @param tree
+	 * @param loopExit
+	 * @param unitEnd
+	 */
+	private void compileSwitch(Tree<Token> tree, Label loopExit, Label unitEnd){
+		Label end = new Label();
+		for (int i = 0; i < tree.getNumberOfChildren(); i++){
+			Tree<Token> caseTree = tree.getChild(i);
+			Label next = new Label();
+			compileExpression(caseTree.getChild(0));
+			emitJump(Bytecode.JUMP_FALSE, next);
+			compileBlock(caseTree.getChild(1), loopExit, unitEnd);
+			if (i < tree.getNumberOfChildren() - 1)
+				emitJump(Bytecode.JUMP, end);
+			bind(next);
+		}
+		bind(end);
+	}
+
+	/**
+	 * Emits a "color" tree.
+	 * @param tree
+	 */
+	private void compileColor(Tree<Token> tree){
+		Color color;
+		try {
+			color = Bug.toColor(tree.getChild(0).getValue().value);
+		}
+		catch (RuntimeException e){
+			emit(Bytecode.TRAP, name(e.getMessage()));
+			return;
+		}
+		int index = colors.indexOf(color);
+		if (index < 0){
+			index = colors.size();
+			colors.add(color);
+		}
+		emit(Bytecode.COLOR, index);
+	}
+
+	/**
+	 * Emits code leaving the value of an expression on the operand stack.
+	 * @param tree
+	 */
+	private void compileExpression(Tree<Token> tree){
+		if (tree.getNumberOfChildren() == 0){
+			if (Bug.isNumber(tree))
+				emit(Bytecode.PUSH, constant(tree.getValue().number));
+			else
+				emitLoad(tree.getValue().value);
+			return;
+		}
+		switch(tree.getValue().value){
+			case ("+"):
+				compileExpression(tree.getChild(0));
+				if (tree.getNumberOfChildren() > 1){
+					compileExpression(tree.getChild(1));
+					emit(Bytecode.ADD);
+				}
+				break;
+			case ("-"):
+				compileExpression(tree.getChild(0));
+				if (tree.getNumberOfChildren() > 1){
+					compileExpression(tree.getChild(1));
+					emit(Bytecode.SUB);
+				}
+				else
+					emit(Bytecode.NEG);
+				break;
+			case ("*"):
+				compileBinary(tree, Bytecode.MUL);
+				break;
+			case ("/"):
+				compileBinary(tree, Bytecode.DIV);
+				break;
+			case ("<"):
+				compileBinary(tree, Bytecode.LT);
+				break;
+			case ("<="):
+				compileBinary(tree, Bytecode.LE);
+				break;
+			case ("="):
+				compileBinary(tree, Bytecode.EQ);
+				break;
+			case ("!="):
+				compileBinary(tree, Bytecode.NE);
+				break;
+			case (">"):
+				compileBinary(tree, Bytecode.GT);
+				break;
+			case (">="):
+				compileBinary(tree, Bytecode.GE);
+				break;
+			case ("call"):
+				compileCall(tree);
+				break;
+			case ("."):
+				emit(Bytecode.LOAD_DOT, name(tree.getChild(0).getValue().value), name(tree.getChild(1).getValue().value));
+				break;
+			default:
+				emit(Bytecode.PUSH, constant(0.0));
+		}
+	}
+
+	/**
+	 * Emits both operands of a binary operator followed by the operator.
+	 * @param tree
+	 * @param opcode
+	 */
+	private void compileBinary(Tree<Token> tree, int opcode){
+		compileExpression(tree.getChild(0));
+		compileExpression(tree.getChild(1));
+		emit(opcode);
+	}
+
+	/**
+	 * Emits a "call" tree, leaving the function's return value on the operand stack. Problems that
+	 * <code>Bug.evaluateCall(Tree&ltToken&gt)</code> would report are compiled into TRAP instructions.
+	 * @param tree
+	 */
+	private void compileCall(Tree<Token> tree){
+		String functionName = tree.getChild(0).getValue().value;
+		Tree<Token> args = tree.getChild(1);
+		//the 2 special functions take the name of a Bug
+		if (functionName.equals("distance") || functionName.equals("direction")){
+			if (args.getNumberOfChildren() == 0){
+				emitTrap("Function " + functionName + " requires the name of a Bug.");
+				return;
+			}
+			int bug = name(args.getChild(0).getValue().value);
+			emit(functionName.equals("distance") ? Bytecode.DISTANCE : Bytecode.DIRECTION, bug);
+			return;
+		}
+		Tree<Token> function = findFunction(functionName);
+		if (function == null){
+			emitTrap("Function not defined!");
+			return;
+		}
+		Tree<Token> params = function.getChild(1);
+		if (args.getNumberOfChildren() != params.getNumberOfChildren()){
+			emitTrap("Function call does not match number of arguments in function!");
+			return;
+		}
+		for (int i = 0; i < args.getNumberOfChildren(); i++){
+			String param = params.getChild(i).getValue().value;
+			if (param.equals("x") || param.equalsIgnoreCase("y") || param.equals("angle")){
+				emitTrap("Trying to declare local var " + param + " in function " + functionName);
+				depth -= i;
+				return;
+			}
+			compileExpression(args.getChild(i));
+		}
+		if (isInlinable(functionName, function))
+			compileInline(function);
+		else
+			emit(Bytecode.CALL, function(functionName, params));
+	}
+
+	/**
+	 * Emits the body of a function in place of a call to it. The arguments are on the operand stack.
+	 * @param function - "function" tree, for which <code>isInlinable</code> is true
+	 */
+	private void compileInline(Tree<Token> function){
+		String[] params = parameters(function);
+		String[] callerParams = currentParams;
+		int callerLocalBase = localBase;
+		currentParams = params;
+		localBase = unitBase + depth - params.length;
+		//an "exit if" in the body leaves it as it would leave the function, with the exit still pending
+		Label end = new Label();
+		compileBlock(function.getChild(2), null, end);
+		bind(end);
+		currentParams = callerParams;
+		localBase = callerLocalBase;
+		emit(Bytecode.END_INLINE, params.length);
+	}
+
+	/**
+	 * Decides whether calls to a function are inlined: its body must be small, call no function (so it
+	 * cannot be recursive either), and use no parameter of another function, which only searching the
+	 * active calls could find.
+	 * @param name
+	 * @param function - "function" tree
+	 * @return true if calls to it are inlined
+	 */
+	private boolean isInlinable(String name, Tree<Token> function){
+		Boolean known = inlinable.get(name);
+		if (known != null)
+			return known;
+		String[] params = parameters(function);
+		Tree<Token> body = function.getChild(2);
+		boolean inline = nodeCount(body) <= MAX_INLINE_NODES && !containsCall(body) && !usesOtherParameters(body, params);
+		inlinable.put(name, inline);
+		return inline;
+	}
+
+	/**
+	 * Checks whether a tree uses a name that is a parameter of some function, other than the given ones.
+	 * @param tree
+	 * @param params
+	 * @return true if it does
+	 */
+	private boolean usesOtherParameters(Tree<Token> tree, String[] params){
+		if (tree.getNumberOfChildren() == 0)
+			return parameterNames.contains(tree.getValue().value) && parameterSlot(params, tree.getValue().value) < 0;
+		for (int i = 0; i < tree.getNumberOfChildren(); i++){
+			if (usesOtherParameters(tree.getChild(i), params))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the nodes of a tree.
+	 * @param tree
+	 * @return number of nodes
+	 */
+	private static int nodeCount(Tree<Token> tree){
+		int count = 1;
+		for (int i = 0; i < tree.getNumberOfChildren(); i++){
+			count += nodeCount(tree.getChild(i));
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the names of a function's parameters.
+	 * @param function - "function" tree
+	 * @return names
+	 */
+	private static String[] parameters(Tree<Token> function){
+		Tree<Token> params = function.getChild(1);
+		String[] names = new String[params.getNumberOfChildren()];
+		for (int i = 0; i < names.length; i++){
+			names[i] = params.getChild(i).getValue().value;
+		}
+		return names;
+	}
+
+	/**
+	 * Emits the instruction pushing the value of a variable, resolved the way
+	 * <code>Bug.fetch(String)</code> would find it.
+	 * @param variable
+	 */
+	private void emitLoad(String variable){
+		int builtin = builtin(variable);
+		if (builtin >= 0){
+			emit(Bytecode.LOAD_BUILTIN, builtin);
+			return;
+		}
+		int local = currentParams == null ? -1 : parameterSlot(currentParams, variable);
+		if (local >= 0){
+			emit(Bytecode.LOAD_LOCAL, localBase + local);
+			return;
+		}
+		if (currentParams != null && parameterNames.contains(variable)){
+			emit(Bytecode.LOAD_DYNAMIC, name(variable), staticScope(variable), staticSlot(variable));
+			return;
+		}
+		switch (staticScope(variable)){
+			case Bytecode.SCOPE_BUG:
+				emit(Bytecode.LOAD_VAR, staticSlot(variable));
+				break;
+			case Bytecode.SCOPE_ALLBUGS:
+				emit(Bytecode.LOAD_GLOBAL, staticSlot(variable));
+				break;
+			default:
+				emitTrap("Variable \"" + variable + "\" could not be found");
+		}
+	}
+
+	/**
+	 * Emits the instruction popping a value into a variable, resolved the way
+	 * <code>Bug.store(String, Double)</code> would find it.
+	 * @param variable
+	 */
+	private void emitStore(String variable){
+		int builtin = builtin(variable);
+		if (builtin >= 0){
+			emit(Bytecode.STORE_BUILTIN, builtin);
+			return;
+		}
+		int local = currentParams == null ? -1 : parameterSlot(currentParams, variable);
+		if (local >= 0){
+			emit(Bytecode.STORE_LOCAL, localBase + local);
+			return;
+		}
+		if (currentParams != null && parameterNames.contains(variable)){
+			emit(Bytecode.STORE_DYNAMIC, name(variable), staticScope(variable), staticSlot(variable));
+			return;
+		}
+		switch (staticScope(variable)){
+			case Bytecode.SCOPE_BUG:
+				emit(Bytecode.STORE_VAR, staticSlot(variable));
+				break;
+			case Bytecode.SCOPE_ALLBUGS:
+				emit(Bytecode.STORE_GLOBAL, staticSlot(variable));
+				break;
+			default:
+				emit(Bytecode.TRAP, name("Variable \"" + variable + "\" could not be found"));
+				depth--;
+		}
+	}
+
+	/**
+	 * Finds where a variable lives when no function parameter hides it.
+	 * @param variable
+	 * @return SCOPE_BUG, SCOPE_ALLBUGS or SCOPE_NONE
+	 */
+	private int staticScope(String variable){
+		if (variableSlots.containsKey(variable))
+			return Bytecode.SCOPE_BUG;
+		if (allbugsSlots.containsKey(variable))
+			return Bytecode.SCOPE_ALLBUGS;
+		return Bytecode.SCOPE_NONE;
+	}
+
+	/**
+	 * Slot of a variable in the scope given by <code>staticScope(String)</code>.
+	 * @param variable
+	 * @return slot, 0 if the variable is not defined
+	 */
+	private int staticSlot(String variable){
+		if (variableSlots.containsKey(variable))
+			return variableSlots.get(variable);
+		if (allbugsSlots.containsKey(variable))
+			return allbugsSlots.get(variable);
+		return 0;
+	}
+
+	/**
+	 * Determines whether a name refers to one of the variables every Bug has.
+	 * @param variable
+	 * @return X, Y or ANGLE, or -1 for any other name
+	 */
+	private static int builtin(String variable){
+		switch (variable){
+			case ("x"):
+				return Bytecode.X;
+			case ("y"):
+				return Bytecode.Y;
+			case ("angle"):
+				return Bytecode.ANGLE;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Finds the slot of a parameter. If a name is repeated the last one wins, as it does when
+	 * <code>Bug.evaluateCall(Tree&ltToken&gt)</code> fills its HashMap.
+	 * @param params
+	 * @param name
+	 * @return slot, or -1 if not a parameter
+	 */
+	private static int parameterSlot(String[] params, String name){
+		for (int i = params.length - 1; i >= 0; i--){
+			if (params[i].equals(name))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Records the parameter names of a group of functions.
+	 * @param functions
+	 */
+	private void addParameterNames(HashMap<String, Tree<Token>> functions){
+		for (Tree<Token> function : functions.values()){
+			Tree<Token> params = function.getChild(1);
+			for (int i = 0; i < params.getNumberOfChildren(); i++){
+				parameterNames.add(params.getChild(i).getValue().value);
+			}
+		}
+	}
+
+	/**
+	 * Emits a TRAP standing in for an expression, so the operand stack is accounted for as if
+	 * a value had been pushed.
+	 * @param message
+	 */
+	private void emitTrap(String message){
+		emit(Bytecode.TRAP, name(message));
+		depth++;
+		maxDepth = Math.max(maxDepth, depth);
+	}
+
+	/**
+	 * Emits a check for an exit requested by a function called from a loop.
+	 * @param loopExit - innermost loop in this unit, or null
+	 * @param unitEnd - end of the enclosing function, or null
+	 */
+	private void emitCheckExit(Label loopExit, Label unitEnd){
+		if (loopExit != null)
+			emitJump(Bytecode.CHECK_EXIT_LOOP, loopExit);
+		else if (unitEnd != null)
+			emitJump(Bytecode.CHECK_EXIT_RETURN, unitEnd);
+		//in the main program outside of any loop an exit can never be pending
+	}
+
+	/**
+	 * Finds the function a call refers to: the Bug's own functions take priority over Allbugs functions.
+	 * @param name
+	 * @return "function" tree, or null if not defined
+	 */
+	private Tree<Token> findFunction(String name){
+		if (bugFunctions.containsKey(name))
+			return bugFunctions.get(name);
+		return allbugsFunctions.get(name);
+	}
+
+	/**
+	 * Returns the index of the named function, scheduling its body to be compiled the first time it is seen.
+	 * @param name
+	 * @param params - "var" tree holding the function's parameters
+	 * @return index into the function table
+	 */
+	private int function(String name, Tree<Token> params){
+		Integer index = functionIndex.get(name);
+		if (index == null){
+			String[] paramNames = new String[params.getNumberOfChildren()];
+			for (int i = 0; i < paramNames.length; i++){
+				paramNames[i] = params.getChild(i).getValue().value;
+			}
+			index = functions.size();
+			functions.add(new Bytecode.Function(name, paramNames));
+			functionIndex.put(name, index);
+			uncompiledFunctions.add(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the index of a numeric constant, adding it to the table if necessary.
+	 * @param value
+	 * @return index into the constant table
+	 */
+	private int constant(double value){
+		Integer index = constantIndex.get(value);
+		if (index == null){
+			index = constants.size();
+			constants.add(value);
+			constantIndex.put(value, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the index of a name, adding it to the table if necessary.
+	 * @param value
+	 * @return index into the name table
+	 */
+	private int name(String value){
+		Integer index = nameIndex.get(value);
+		if (index == null){
+			index = names.size();
+			names.add(value);
+			nameIndex.put(value, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Determines whether a tree contains a function call (other than distance or direction, which
+	 * cannot run any Bugs code).
+	 * @param tree
+	 * @return true if a call was found
+	 */
+	static boolean containsCall(Tree<Token> tree){
+		if (tree.getValue().value.equals("call") && tree.getNumberOfChildren() == 2){
+			String name = tree.getChild(0).getValue().value;
+			if (!name.equals("distance") && !name.equals("direction"))
+				return true;
+		}
+		for (int i = 0; i < tree.getNumberOfChildren(); i++){
+			if (containsCall(tree.getChild(i)))
+				return true;
+		}
+		return false;
+	}
+
+//EMITTING INSTRUCTIONS
+	/**
+	 * Appends an instruction and keeps track of the operand stack depth.
+	 * @param opcode
+	 * @param operands
+	 */
+	private void emit(int opcode, int... operands){
+		ensureCapacity(1 + operands.length);
+		code[size++] = opcode;
+		for (int operand : operands){
+			code[size++] = operand;
+		}
+		depth += stackEffect(opcode, operands);
+		maxDepth = Math.max(maxDepth, depth);
+	}
+
+	/**
+	 * Appends a jump to a label, which may not have been bound yet.
+	 * @param opcode
+	 * @param label
+	 */
+	private void emitJump(int opcode, Label label){
+		emit(opcode, label.address);
+		if (label.address < 0)
+			label.uses.add(size - 1);
+	}
+
+	/**
+	 * Binds a label to the current position, patching any jumps already made to it.
+	 * @param label
+	 */
+	private void bind(Label label){
+		label.address = size;
+		for (int use : label.uses){
+			code[use] = size;
+		}
+		label.uses.clear();
+	}
+
+	private void ensureCapacity(int extra){
+		if (size + extra > code.length){
+			int[] bigger = new int[Math.max(code.length * 2, size + extra)];
+			System.arraycopy(code, 0, bigger, 0, size);
+			code = bigger;
+		}
+	}
+
+	/**
+	 * Change in operand stack depth caused by an instruction.
+	 * @param opcode
+	 * @param operands
+	 * @return change in depth
+	 */
+	private int stackEffect(int opcode, int[] operands){
+		switch(opcode){
+			case Bytecode.PUSH:
+			case Bytecode.LOAD_LOCAL:
+			case Bytecode.LOAD_VAR:
+			case Bytecode.LOAD_GLOBAL:
+			case Bytecode.LOAD_BUILTIN:
+			case Bytecode.LOAD_DYNAMIC:
+			case Bytecode.LOAD_DOT:
+			case Bytecode.DISTANCE:
+			case Bytecode.DIRECTION:
+				return 1;
+			case Bytecode.STORE_LOCAL:
+			case Bytecode.STORE_VAR:
+			case Bytecode.STORE_GLOBAL:
+			case Bytecode.STORE_BUILTIN:
+			case Bytecode.STORE_DYNAMIC:
+			case Bytecode.ADD:
+			case Bytecode.SUB:
+			case Bytecode.MUL:
+			case Bytecode.DIV:
+			case Bytecode.LT:
+			case Bytecode.LE:
+			case Bytecode.EQ:
+			case Bytecode.NE:
+			case Bytecode.GT:
+			case Bytecode.GE:
+			case Bytecode.POP:
+			case Bytecode.JUMP_FALSE:
+			case Bytecode.JUMP_TRUE:
+			case Bytecode.MOVE:
+			case Bytecode.TURN:
+			case Bytecode.TURNTO:
+			case Bytecode.SET_RETURN:
+			case Bytecode.EXIT:
+				return -1;
+			case Bytecode.MOVETO:
+				return -2;
+			case Bytecode.LINE:
+				return -4;
+			case Bytecode.CALL:
+				return 1 - functions.get(operands[0]).params.length;
+			case Bytecode.END_INLINE:
+				return 1 - operands[0];
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * A position in the code that jumps can refer to before it is known.
+	 */
+	private static class Label {
+		int address = -1;
+		ArrayList<Integer> uses = new ArrayList<Integer>();
+	}
+}
@@ -0,0 +1,434 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import tree.Tree;
+
+/**
+ * Tests for Compiler class of Bugs language Interpreter. Each program is run once with the tree
+ * walking Interpreter and once compiled, and both runs must draw exactly the same lines.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class CompilerTest {
+
+	@Test
+	public void testRecursion(){
+		assertSameDrawing("Bug TestRecursion {\n" +
+				"    x = 0\n" +
+				"    y = 50\n" +
+				"    color black\n" +
+				"    do drawJaggedLine(100, 0)\n" +
+				"    define drawJaggedLine using dist, dir {\n" +
+				"        turnto dir\n" +
+				"        switch {\n" +
+				"            case dist < 2\n" +
+				"                move dist\n" +
+				"            case dist >= 2\n" +
+				"                do drawJaggedLine(dist / 3, dir)\n" +
+				"                do drawJaggedLine(dist / 3, dir + 60)\n" +
+				"                do drawJaggedLine(dist / 3, dir - 60)\n" +
+				"                do drawJaggedLine(dist / 3, dir)\n" +
+				"        }\n" +
+				"        return 0\n" +
+				"    }\n" +
+				"}\n");
+	}
+	@Test
+	public void testFunctionReturnValues(){
+		assertSameDrawing("Bug TestFunction {\n" +
+				"    var size\n" +
+				"    size = 20\n" +
+				"    x= 0\n" +
+				"    y = 0\n" +
+				"    color blue\n" +
+				"    do drawSquare(size)\n" +
+				"    x = 40\n" +
+				"    y = 40\n" +
+				"    size = drawSquare(size)\n" +
+				"    x = 30\n" +
+				"    y = 30\n" +
+				"    size = drawSquare(size)\n" +
+				"    define drawSquare using size {\n" +
+				"         move size\n" +
+				"         turn -90\n" +
+				"         move size\n" +
+				"         turn -90\n" +
+				"         return size + 20\n" +
+				"    }\n" +
+				"}\n");
+	}
+	@Test
+	public void testColors(){
+		assertSameDrawing("Bug TestColors {\n" +
+				"    y = 0\n" +
+				"    line 1, 0, 1, 100\n" +
+				"    color darkGray\n" +
+				"    y = y + 7\n" +
+				"    line 0, y, 100, y\n" +
+				"    color brown\n" +
+				"    y = y + 7\n" +
+				"    line 0, y, 100, y\n" +
+				"    color none\n" +
+				"    y = y + 7\n" +
+				"    line 0, y, 100, y\n" +
+				"    color purple\n" +
+				"    line 99, 0, 99, 100\n" +
+				"}\n");
+	}
+	@Test
+	public void testNestedLoops(){
+		assertSameDrawing("Bug DoubleLoop {\n" +
+				"    var count, moveAmount\n" +
+				"    var loopCount\n" +
+				"    x = 40\n" +
+				"    y = 25\n" +
+				"    moveAmount = 20\n" +
+				"    loop {\n" +
+				"        count = 0\n" +
+				"        color blue\n" +
+				"        loop {\n" +
+				"            count = count + 1\n" +
+				"            move moveAmount\n" +
+				"            turn -45\n" +
+				"            exit if count >= 8\n" +
+				"        }\n" +
+				"         loopCount = loopCount + 1\n" +
+				"         exit if loopCount = 3\n" +
+				"         turn -60\n" +
+				"         color green\n" +
+				"         move 5\n" +
+				"         moveAmount = moveAmount - 5\n" +
+				"     }\n" +
+				"}\n");
+	}
+	@Test
+	public void testSwitch(){
+		assertSameDrawing("Bug TestSwitch {\n" +
+				"    x = 50\n" +
+				"    y = 0\n" +
+				"    switch {\n" +
+				"        case x > y\n" +
+				"            color blue\n" +
+				"        case x < y\n" +
+				"            color red\n" +
+				"    }\n" +
+				"    moveto 100, 50\n" +
+				"    switch {\n" +
+				"    }\n" +
+				"    switch {\n" +
+				"        case x != y\n" +
+				"            color green\n" +
+				"            exit if 1\n" +
+				"            moveto 0, 0\n" +
+				"        case x <= y\n" +
+				"            color red\n" +
+				"    }\n" +
+				"    moveto 50, 100\n" +
+				"}\n");
+	}
+	@Test
+	public void testReturnOnlyLeavesItsBlock(){
+		//a "return" inside a switch sets the return value but the function carries on
+		assertSameDrawing("Bug Returns {\n" +
+				"    var i\n" +
+				"    initially {\n" +
+				"        x = 10\n" +
+				"        return 3\n" +
+				"        x = 90\n" +
+				"    }\n" +
+				"    i = pick(2)\n" +
+				"    line i, i, -i + 50, 2 * i\n" +
+				"    i = pick(-1)\n" +
+				"    moveto i + 40, 40 / 3\n" +
+				"    i = noReturn()\n" +
+				"    moveto i, i\n" +
+				"    define pick using v {\n" +
+				"        switch {\n" +
+				"            case v > 0\n" +
+				"                return v * 10\n" +
+				"            case v <= 0\n" +
+				"                return 5\n" +
+				"        }\n" +
+				"        i = v\n" +
+				"        moveto i, 3\n" +
+				"    }\n" +
+				"    define noReturn {\n" +
+				"        move 1\n" +
+				"    }\n" +
+				"}\n");
+	}
+	@Test
+	public void testExitFromFunction(){
+		//an "exit if" in a function exits the loop the function was called from
+		assertSameDrawing("Allbugs {\n" +
+				"    var total\n" +
+				"    define step using n {\n" +
+				"        move n\n" +
+				"        total = total + n\n" +
+				"        exit if total > 30\n" +
+				"        turn 5\n" +
+				"    }\n" +
+				"    define outer using n {\n" +
+				"        do step(n)\n" +
+				"        turn 1\n" +
+				"    }\n" +
+				"}\n" +
+				"Bug Walker {\n" +
+				"    initially {\n" +
+				"        x = 10\n" +
+				"        y = 10\n" +
+				"        color green\n" +
+				"    }\n" +
+				"    loop {\n" +
+				"        do outer(3)\n" +
+				"        turn 15\n" +
+				"    }\n" +
+				"    exit if 1\n" +
+				"    total = 0\n" +
+				"    loop {\n" +
+				"        switch {\n" +
+				"            case 1\n" +
+				"                do step(4)\n" +
+				"        }\n" +
+				"        color red\n" +
+				"    }\n" +
+				"    moveto total, total\n" +
+				"}\n");
+	}
+	@Test
+	public void testActionsInsideExpressions(){
+		//the Allbugs function moves the Bug while an expression is being evaluated
+		assertSameDrawing("Allbugs {\n" +
+				"    var abc\n" +
+				"    define forward using n {\n" +
+				"        move n\n" +
+				"        return -n\n" +
+				"    }\n" +
+				"}\n" +
+				"Bug Sally {\n" +
+				"    var a\n" +
+				"    a = 7\n" +
+				"    a = 3 * (2 + forward(a)) / 4\n" +
+				"    turnto a\n" +
+				"    moveto abc - 1, -(a + 2)\n" +
+				"    line 1, 2, forward(2), forward(1)\n" +
+				"}\n");
+	}
+	@Test
+	public void testSeveralBugs(){
+		assertSameDrawing("Allbugs {\n" +
+				"    var size\n" +
+				"    define square using n {\n" +
+				"        move n\n" +
+				"        turn 90\n" +
+				"        move n\n" +
+				"        turn 90\n" +
+				"        move n\n" +
+				"        turn 90\n" +
+				"        move n\n" +
+				"    }\n" +
+				"}\n" +
+				"Bug Sally {\n" +
+				"    color red\n" +
+				"    do square(10)\n" +
+				"}\n" +
+				"Bug Fred {\n" +
+				"    x = 50\n" +
+				"    color blue\n" +
+				"    do square(20)\n" +
+				"    turn 45\n" +
+				"    do square(5)\n" +
+				"}\n");
+	}
+	@Test
+	public void testDynamicScoping(){
+		//functions see (and can change) the parameters of the functions that called them
+		assertSameDrawing("Allbugs {\n" +
+				"    var n, shared\n" +
+				"    define grow {\n" +
+				"        n = n + 1\n" +
+				"        shared = shared + n\n" +
+				"        move n\n" +
+				"    }\n" +
+				"}\n" +
+				"Bug Sally {\n" +
+				"    var n, size\n" +
+				"    n = 100\n" +
+				"    do grow()\n" +
+				"    do outer(3, 4)\n" +
+				"    moveto n, shared\n" +
+				"    do twice(size, 7)\n" +
+				"    define outer using n, size {\n" +
+				"        do grow()\n" +
+				"        do inner(size)\n" +
+				"        line n, size, 0, 0\n" +
+				"    }\n" +
+				"    define inner using n {\n" +
+				"        do grow()\n" +
+				"        size = size * 2\n" +
+				"        line n, size, shared, 0\n" +
+				"    }\n" +
+				"    define twice using size, size {\n" +
+				"        move size\n" +
+				"    }\n" +
+				"}\n");
+	}
+	@Test
+	public void testDotNotation(){
+		assertSameDrawing("Bug Sally {\n" +
+				"    var a\n" +
+				"    a = 5\n" +
+				"    move 1\n" +
+				"    move 1\n" +
+				"    a = Fred.b\n" +
+				"    moveto Fred.b, a\n" +
+				"}\n" +
+				"Bug Fred {\n" +
+				"    var b\n" +
+				"    b = 12\n" +
+				"    move 1\n" +
+				"    moveto Sally.a, Sally.angle\n" +
+				"    move 1\n" +
+				"    move 1\n" +
+				"}\n");
+	}
+	@Test
+	public void testErrorsOnlyWhenReached(){
+		//undefined variables and functions must not stop the program from compiling
+		Parser parser = new Parser("Bug Careful {\n" +
+				"    switch {\n" +
+				"        case 0\n" +
+				"            a = undefined(b)\n" +
+				"            color move\n" +
+				"    }\n" +
+				"    move 10\n" +
+				"}\n");
+		assertTrue(parser.isProgram());
+		Tree<Token> tree = parser.stack.pop();
+		Bytecode bytecode = new Compiler(tree.getChild(1).getChild(0), new Interpreter().getAllbugsFunctions(), new String[0]).compile();
+		assertTrue(bytecode.toString().contains("TRAP"));
+		assertEquals(1, TestPrograms.drawnLines(tree, Interpreter.Mode.COMPILED).size());
+	}
+	@Test
+	public void testInlinedFunctions(){
+		//small functions that call no others are compiled into their callers instead of being called
+		String program = "Bug Sally {\n" +
+				"    var i, total\n" +
+				"    loop {\n" +
+				"        i = i + 1\n" +
+				"        total = total + half(i) * 2 + half(half(i))\n" +
+				"        do step(i, 5)\n" +
+				"        exit if i > 50\n" +
+				"    }\n" +
+				"    do step(3, 4)\n" +
+				"    line total, i, half(total), 0\n" +
+				"    do spiral(6)\n" +
+				"    define half using n {\n" +
+				"        switch {\n" +
+				"            case n < 0\n" +
+				"                return 0\n" +
+				"        }\n" +
+				"        return n / 2\n" +
+				"    }\n" +
+				"    define step using n, limit {\n" +
+				"        move n\n" +
+				"        turn limit * 10\n" +
+				"        exit if n >= limit * 5\n" +
+				"        limit = limit + 1\n" +
+				"        move limit\n" +
+				"    }\n" +
+				"    define spiral using n {\n" +
+				"        switch {\n" +
+				"            case n > 0\n" +
+				"                do step(n, half(n))\n" +
+				"                do spiral(n - 1)\n" +
+				"        }\n" +
+				"    }\n" +
+				"}\n";
+		assertSameDrawing(program);
+		Parser parser = new Parser(program);
+		assertTrue(parser.isProgram());
+		Bytecode bytecode = new Compiler(parser.stack.pop().getChild(1).getChild(0), new Interpreter().getAllbugsFunctions(), new String[0]).compile();
+		//only the recursive function is left to call
+		assertEquals(1, bytecode.functions.length);
+		assertEquals("spiral", bytecode.functions[0].name);
+	}
+	@Test
+	public void testTailCalls(){
+		//a function returning a call to itself runs in a single frame, however often it recurses
+		String walker = "Bug Walker {\n" +
+				"    var steps\n" +
+				"    steps = walk(%d, 0)\n" +
+				"    line 0, 0, steps, 0\n" +
+				"    define walk using n, total {\n" +
+				"        switch {\n" +
+				"            case n < 1\n" +
+				"                return total\n" +
+				"            case n >= 1\n" +
+				"                return walk(n - 1, total + 1)\n" +
+				"        }\n" +
+				"    }\n" +
+				"}\n";
+		assertSameDrawing(String.format(walker, 50));
+		Tree<Token> tree = TestPrograms.parse(String.format(walker, 1000000));
+		assertTrue(compile(tree).toString().contains("TAIL_CALL"));
+		assertEquals(Collections.singletonList("0.0, 0.0, 1000000.0, 0.0 java.awt.Color[r=0,g=0,b=0]"),
+				TestPrograms.drawnLines(tree, Interpreter.Mode.COMPILED));
+		//a function that looks up its caller's parameter needs the caller's frame to stay
+		String scoped = "Bug Scoped {\n" +
+				"    var r\n" +
+				"    r = outer(3)\n" +
+				"    line r, 0, 0, 0\n" +
+				"    define outer using depth {\n" +
+				"        return peek()\n" +
+				"    }\n" +
+				"    define peek {\n" +
+				"        move 1\n" +
+				"        return depth * 10\n" +
+				"    }\n" +
+				"}\n";
+		assertSameDrawing(scoped);
+		assertFalse(compile(TestPrograms.parse(scoped)).toString().contains("TAIL_CALL"));
+	}
+	@Test
+	public void testRecursionLimit(){
+		//the call past the limit is an error, which stops the Bug after the lines already drawn
+		Tree<Token> tree = TestPrograms.parse("Bug Deep {\n" +
+				"    do down(500)\n" +
+				"    move 1\n" +
+				"    define down using n {\n" +
+				"        switch {\n" +
+				"            case n > 0\n" +
+				"                move 1\n" +
+				"                do down(n - 1)\n" +
+				"        }\n" +
+				"    }\n" +
+				"}\n");
+		//compiled calls are not on the Java stack, which an interpreted Bug would overflow
+		assertEquals(501, TestPrograms.drawnLines(tree, Interpreter.Mode.COMPILED).size());
+		assertEquals(100, TestPrograms.drawnLines(tree, Interpreter.Mode.COMPILED, 100).size());
+	}
+
+	//HELPER methods
+	/**
+	 * Compiles the first Bug of a program.
+	 * @param tree - AST of a program without Allbugs functions
+	 * @return compiled Bug
+	 */
+	private Bytecode compile(Tree<Token> tree){
+		return new Compiler(tree.getChild(1).getChild(0), new Interpreter().getAllbugsFunctions(), new String[0]).compile();
+	}
+	/**
+	 * Runs the program interpreted and compiled and compares the lines drawn.
+	 * @param program
+	 */
+	private void assertSameDrawing(String program){
+		TestPrograms.assertSameDrawing(program, Interpreter.Mode.INTERPRETED, Interpreter.Mode.COMPILED);
+	}
+}
@@ -0,0 +1,124 @@
+package bugs;
+
+import java.awt.Rectangle;
+
+/**
+ * The part of the drawing area that has changed since a View last looked, in the 100 by 100 unit
+ * coordinates Bugs use. The Interpreter adds the bounds of each tick's new lines and the positions
+ * each Bug moved from and to; the View takes the region once per frame and repaints only that part
+ * of itself. Bugs are drawn a fixed number of pixels in size, so their positions are kept apart
+ * from the lines and grown by that many pixels once the View's scale is known.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+class DirtyRegion {
+	private double lineLeft, lineTop, lineRight, lineBottom; //bounds of the lines added
+	private double bugLeft, bugTop, bugRight, bugBottom; //bounds of the positions Bugs were shown at
+	private boolean hasLines, hasBugs; //whether there are any lines or Bugs in the bounds above
+	private boolean everything; //whether something changed that has no useful bounds
+
+	/**
+	 * Adds the bounds of a new line.
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 */
+	synchronized void addLine(double x1, double y1, double x2, double y2){
+		double left = Math.min(x1, x2);
+		double right = Math.max(x1, x2);
+		double top = Math.min(y1, y2);
+		double bottom = Math.max(y1, y2);
+		if (Double.isNaN(left + right + top + bottom)){
+			everything = true;
+			return;
+		}
+		if (!hasLines){
+			lineLeft = left;
+			lineTop = top;
+			lineRight = right;
+			lineBottom = bottom;
+			hasLines = true;
+		}
+		else {
+			lineLeft = Math.min(lineLeft, left);
+			lineTop = Math.min(lineTop, top);
+			lineRight = Math.max(lineRight, right);
+			lineBottom = Math.max(lineBottom, bottom);
+		}
+	}
+
+	/**
+	 * Adds a position at which a Bug was, or now is, drawn.
+	 * @param x
+	 * @param y
+	 */
+	synchronized void addBug(double x, double y){
+		if (Double.isNaN(x + y) || Double.isInfinite(x + y)){
+			everything = true;
+			return;
+		}
+		if (!hasBugs){
+			bugLeft = bugRight = x;
+			bugTop = bugBottom = y;
+			hasBugs = true;
+		}
+		else {
+			bugLeft = Math.min(bugLeft, x);
+			bugTop = Math.min(bugTop, y);
+			bugRight = Math.max(bugRight, x);
+			bugBottom = Math.max(bugBottom, y);
+		}
+	}
+
+	/**
+	 * Finds the pixels that need repainting, and empties this region.
+	 * @param scaleX - pixels per unit across
+	 * @param scaleY - pixels per unit down
+	 * @param lineMargin - pixels a line may touch outside its bounds
+	 * @param bugMargin - pixels a Bug is drawn around its position
+	 * @return the pixels, which may extend past the View; null if nothing has changed
+	 */
+	synchronized Rectangle take(double scaleX, double scaleY, int lineMargin, int bugMargin){
+		Rectangle pixels = null;
+		if (everything)
+			pixels = new Rectangle(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		else {
+			if (hasLines)
+				pixels = union(pixels, toPixels(lineLeft * scaleX, lineTop * scaleY, lineRight * scaleX, lineBottom * scaleY, lineMargin));
+			if (hasBugs)
+				pixels = union(pixels, toPixels(bugLeft * scaleX, bugTop * scaleY, bugRight * scaleX, bugBottom * scaleY, bugMargin));
+		}
+		hasLines = hasBugs = everything = false;
+		return pixels;
+	}
+
+	/**
+	 * Converts bounds in pixels to whole pixels, grown by a margin. Bounds far outside any View are
+	 * limited, so the Rectangle cannot overflow.
+	 * @param left
+	 * @param top
+	 * @param right
+	 * @param bottom
+	 * @param margin
+	 * @return rectangle
+	 */
+	private static Rectangle toPixels(double left, double top, double right, double bottom, int margin){
+		final double limit = 1 << 28;
+		int x1 = (int) Math.floor(Math.max(-limit, left) - margin);
+		int y1 = (int) Math.floor(Math.max(-limit, top) - margin);
+		int x2 = (int) Math.ceil(Math.min(limit, right) + margin);
+		int y2 = (int) Math.ceil(Math.min(limit, bottom) + margin);
+		return new Rectangle(x1, y1, Math.max(0, x2 - x1), Math.max(0, y2 - y1));
+	}
+
+	/**
+	 * Unites two rectangles.
+	 * @param a - may be null
+	 * @param b
+	 * @return a and b
+	 */
+	private static Rectangle union(Rectangle a, Rectangle b){
+		return a == null ? b : a.union(b);
+	}
+}
@@ -0,0 +1,91 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+
+import org.junit.Test;
+
+/**
+ * Tests for DirtyRegion class of Bugs language Interpreter.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class DirtyRegionTest {
+
+	@Test
+	public void testEmpty(){
+		assertNull(new DirtyRegion().take(6, 6, 2, 14));
+	}
+
+	@Test
+	public void testLinesAndBugs(){
+		DirtyRegion region = new DirtyRegion();
+		region.addLine(10, 20, 30, 15);
+		region.addLine(5, 25, 6, 26);
+		assertEquals(new Rectangle(8, 28, 54, 26), region.take(2, 2, 2, 14));
+		//taking the region empties it
+		assertNull(region.take(2, 2, 2, 14));
+		region.addBug(50, 50);
+		region.addBug(60, 40);
+		assertEquals(new Rectangle(36, 66, 38, 48), region.take(1, 2, 2, 14));
+		region.addLine(0, 0, 1, 1);
+		region.addBug(10, 10);
+		assertEquals(new Rectangle(-4, -4, 28, 28), region.take(1, 1, 2, 14));
+	}
+
+	@Test
+	public void testUnboundedChanges(){
+		DirtyRegion region = new DirtyRegion();
+		region.addLine(0, Double.NaN, 1, 1);
+		assertTrue(region.take(6, 6, 2, 14).contains(new Rectangle(-1000, -1000, 100000, 100000)));
+		region.addLine(0, 0, 1e300, 1);
+		Rectangle pixels = region.take(6, 6, 2, 14);
+		assertTrue(pixels.contains(new Rectangle(0, 0, 100000, 1)));
+		assertTrue(pixels.width > 0);
+	}
+
+	@Test
+	public void testInterpreterRecordsEachTick(){
+		Parser parser = new Parser("Bug A {\n" +
+				"    x = 10\n" +
+				"    y = 10\n" +
+				"    move 10\n" +
+				"    turn 90\n" +
+				"    turn 0\n" +
+				"    color none\n" +
+				"    moveto 90, 90\n" +
+				"}\n" +
+				"Bug B {\n" +
+				"    turn 0\n" +
+				"}\n");
+		assertTrue(parser.isProgram());
+		Interpreter interpreter = new Interpreter(parser.stack.pop(), Interpreter.Mode.COMPILED);
+		Bug a = interpreter.getBugs().get(0);
+		Bug b = interpreter.getBugs().get(1);
+		DirtyRegion region = interpreter.getDirtyRegion();
+		interpreter.endTick();
+		assertNull(region.take(1, 1, 0, 0));
+		//A moves from 0, 0 to 10, 10 and then draws a line to 20, 10
+		a.step();
+		b.step();
+		interpreter.endTick();
+		assertEquals(new Rectangle(0, 0, 20, 10), region.take(1, 1, 0, 0));
+		//A turns where it is
+		a.step();
+		interpreter.endTick();
+		assertEquals(new Rectangle(20, 10, 0, 0), region.take(1, 1, 0, 0));
+		//nothing changes
+		a.step();
+		interpreter.endTick();
+		assertNull(region.take(1, 1, 0, 0));
+		//the invisible line is not repainted, but B, which has ended, is
+		a.step();
+		assertFalse(b.step());
+		interpreter.terminateBug(b);
+		interpreter.endTick();
+		assertEquals(new Rectangle(0, 0, 90, 90), region.take(1, 1, 0, 0));
+	}
+}
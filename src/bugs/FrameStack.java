@@ -0,0 +1,89 @@
+package bugs;
+
+import java.util.Arrays;
+
+/**
+ * Parameters of the active function calls of an interpreted Bug, kept in two arrays that are reused
+ * from call to call rather than in a new HashMap per call. The parameters of each call follow those of
+ * the call before it, so a name is looked up from the most recent parameter back, which is how Bugs
+ * scopes variables dynamically: a function sees the parameters of the functions that called it.
+ * <p>
+ * A caller pushes each argument as soon as it is evaluated. Until <code>bind</code> gives them their
+ * names the arguments cannot be found, so the other arguments are still evaluated in the caller's scope.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+class FrameStack {
+	private String[] names = new String[16]; //name of each parameter, null for an argument not yet bound
+	private double[] values = new double[16]; //value of each parameter
+	private int size; //number of entries in use
+
+	/**
+	 * Returns the number of entries in use, which is where the next call's arguments will start.
+	 * @return size
+	 */
+	int size(){
+		return size;
+	}
+
+	/**
+	 * Pushes the value of an argument, which no name finds until it is bound.
+	 * @param value
+	 */
+	void push(double value){
+		if (size == values.length){
+			names = Arrays.copyOf(names, 2 * size);
+			values = Arrays.copyOf(values, 2 * size);
+		}
+		names[size] = null;
+		values[size++] = value;
+	}
+
+	/**
+	 * Gives the arguments of a call the names of the function's parameters, starting the call.
+	 * @param base - <code>size()</code> before the first argument was pushed
+	 * @param params - names of the parameters, one for each argument
+	 */
+	void bind(int base, String[] params){
+		System.arraycopy(params, 0, names, base, params.length);
+	}
+
+	/**
+	 * Ends a call, dropping its parameters.
+	 * @param base - <code>size()</code> before the call's first argument was pushed
+	 */
+	void pop(int base){
+		size = base;
+	}
+
+	/**
+	 * Finds the most recent parameter with a name. If a function repeats a name, the last one wins.
+	 * @param name
+	 * @return index of the parameter, -1 if no active call has it
+	 */
+	int find(String name){
+		for (int i = size - 1; i >= 0; i--){
+			if (name.equals(names[i]))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value of a parameter.
+	 * @param index - returned by <code>find</code>
+	 * @return value
+	 */
+	double get(int index){
+		return values[index];
+	}
+
+	/**
+	 * Changes the value of a parameter.
+	 * @param index - returned by <code>find</code>
+	 * @param value
+	 */
+	void set(int index, double value){
+		values[index] = value;
+	}
+}
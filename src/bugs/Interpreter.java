@@ -2,11 +2,14 @@ package bugs;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Set;
 import java.util.Stack;
 import java.util.Vector;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import tree.Tree;
 
@@ -20,15 +23,104 @@ import tree.Tree;
  */
 public class Interpreter  extends Thread{
 	
+	/**
+	 * How the Bugs of a program are executed.
+	 */
+	public static enum Mode {
+		/** Each Bug walks its AST. Kept as the reference implementation for testing. */
+		INTERPRETED,
+		/** Each Bug is compiled to Bytecode and run by a Machine. */
+		COMPILED,
+		/** Each Bug runs typed nodes converted from its AST, which dispatch by virtual calls rather than by name. */
+		TYPED
+	}
+	
+	/**
+	 * What the Controller has asked an Interpreter to do.
+	 */
+	public static enum RunState {
+		/** Run a tick every pause time. */
+		RUNNING,
+		/** Run no ticks; the Interpreter's Thread waits without using any CPU. */
+		PAUSED,
+		/** Run a single tick as soon as possible, then become PAUSED. */
+		STEPPING,
+		/** Run ticks back to back, ignoring the pause time. A View only sees the state at its frame rate. */
+		TURBO,
+		/** Stop every Bug and end. Final. */
+		KILLED
+	}
+	
+	/**
+	 * How the Bugs of a program are scheduled.
+	 */
+	public static enum Engine {
+		/** Each Bug runs in its own Thread and waits on a TickBarrier for work permits. */
+		THREADS,
+		/** This Interpreter's Thread steps every Bug in turn, one action per Bug per tick. Bugs must be compiled. */
+		COOPERATIVE,
+		/** Each Bug runs on a virtual thread and waits on a TickBarrier for work permits. Needs Java 21 or later. */
+		VIRTUAL_THREADS
+	}
+	
 	private Tree<Token> programTree; //most recently loaded program Tree
 	private Vector<Bug> bugs; //Bugs currently being managed by this Interpreter
 	private HashMap<String, Double> allbugsVariables; //Allbugs variables from the current program
+	private String[] allbugsSlotNames; //names of the Allbugs variables, in the order compiled and typed Bugs use
+	private double[] allbugsValues; //values of the Allbugs variables while compiled or typed Bugs are running
 	private HashMap<String, Tree<Token>> allbugsFunctions; //Allbugs functions from the current program
-	private Vector<Command> lines; //all Commands that have been drawn by the Bugs in the current program
-	private boolean permissionToGrant; //whether or not the Interpreter is currently allowed to hand out work permits
-	private boolean oneTimePermission; //signal that permission to issue work permits is for a single step only
+	/** Most function calls a Bug may have active at once, unless <code>setRecursionLimit</code> is used. */
+	public static final int DEFAULT_RECURSION_LIMIT = 100000;
+	private static final int MAX_SNAPSHOTS = 128; //when there are more, every other one is dropped and the interval doubled
+	
+	private volatile LineStore lines; //all Commands that have been drawn by the Bugs in the current program, replaced when the timeline is moved
+	private LineSink sink; //where Bugs send their lines instead of to lines, null to keep them in lines
+	private RunState runState; //whether the Interpreter may hand out work permits, changed only by the Controller and awaitTick()
 	private int pauseTime; //the amount of time the Interpreter should pause between issuing each set of work permits
-	private boolean die; //if flagged this Thread should notify all Bugs it's managin and attempt to terminate as soon as possible
+	private long lastTickTime; //System.nanoTime() at which the previous tick started
+	private Mode mode; //how the Bugs managed by this Interpreter execute their programs
+	private Engine engine; //how the Bugs managed by this Interpreter are scheduled
+	private TickBarrier barrier; //hands out work permits to Bug threads (unused by the cooperative engine)
+	private ThreadFactory bugThreads; //creates the virtual threads Bugs run on, null for the other engines
+	private DirtyRegion dirtyRegion = new DirtyRegion(); //what has changed since the View last repainted
+	private int linesAtTickEnd; //number of lines there were at the end of the last tick
+	private Command openAtTickEnd; //the line the store was holding back at the end of the last tick
+	private volatile Runnable tickListener; //told at the end of each tick, null if nothing is listening
+	private Recorder recorder; //records each tick, null if the run is not being recorded
+	private volatile int tick; //number of ticks that have ended
+	private int snapshotInterval; //ticks between snapshots, 0 if none are taken
+	private final ArrayList<Snapshot> snapshots = new ArrayList<Snapshot>(); //taken so far, in tick order
+	private final Object timeline = new Object(); //held while a cooperative tick runs or the timeline is moved
+	private LineStore history; //a store that was replaced when the timeline was moved, if it has more lines than the current one
+	private volatile int seeks; //number of times the timeline has been moved
+	private int seeksAtPermit; //value of seeks when awaitTick() last allowed a tick
+	private final Scene scene = new Scene(){ //what a View shows of this Interpreter
+		@Override
+		LineStore getLines(){
+			return lines;
+		}
+
+		@Override
+		Bug.Pose[] getPoses(){
+			synchronized (bugs){
+				Bug.Pose[] poses = new Bug.Pose[bugs.size()];
+				for (int i = 0; i < poses.length; i++){
+					poses[i] = bugs.get(i).getShownPose();
+				}
+				return poses;
+			}
+		}
+
+		@Override
+		DirtyRegion getDirtyRegion(){
+			return dirtyRegion;
+		}
+
+		@Override
+		void setTickListener(Runnable listener){
+			tickListener = listener;
+		}
+	};
 	
 	/**
 	 * No argument constructor. Used only for unit testing
@@ -38,35 +130,90 @@ public class Interpreter  extends Thread{
 		bugs = new Vector<Bug>();
 		allbugsVariables = new HashMap<String, Double>();
 		allbugsFunctions = new HashMap<String, Tree<Token>>();
-		lines = new Vector<Command>();
-		permissionToGrant = false;
-		oneTimePermission = false;
+		lines = new SegmentedLineStore();
+		runState = RunState.PAUSED;
 		pauseTime = 100;
-		die = false;
+		mode = Mode.INTERPRETED;
+		engine = Engine.THREADS;
+		barrier = new TickBarrier();
+		allbugsSlotNames = new String[0];
+		allbugsValues = new double[0];
 	}
 	
 	/**
-	 * Default constructor.
+	 * Default constructor. Each Bug interprets its AST on its own Thread.
 	 * @param tree - the AST to be interpreted.
 	 */
 	public Interpreter(Tree<Token> tree){
+		this(tree, Mode.INTERPRETED);
+	}
+	
+	/**
+	 * Constructor. Compiled Bugs use the cooperative engine, interpreted Bugs each get a Thread.
+	 * @param tree - the AST to be interpreted.
+	 * @param mode - whether the Bugs should be compiled or should interpret their ASTs.
+	 */
+	public Interpreter(Tree<Token> tree, Mode mode){
+		this(tree, mode, mode == Mode.COMPILED ? Engine.COOPERATIVE : Engine.THREADS);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param tree - the AST to be interpreted.
+	 * @param mode - whether the Bugs should be compiled or should interpret their ASTs.
+	 * @param engine - how the Bugs should be scheduled.
+	 * @throws IllegalArgumentException if the cooperative engine is asked to run interpreted Bugs
+	 * @throws UnsupportedOperationException if virtual threads are asked for but this Java runtime has none
+	 */
+	public Interpreter(Tree<Token> tree, Mode mode, Engine engine){
+		this(tree, mode, engine, engine == Engine.VIRTUAL_THREADS ? virtualThreadFactory() : null);
+	}
+	
+	/**
+	 * Constructor. The factory the virtual thread engine starts Bugs with can be replaced, so
+	 * the engine can be unit tested on Java versions without virtual threads.
+	 * @param tree - the AST to be interpreted.
+	 * @param mode - whether the Bugs should be compiled or should interpret their ASTs.
+	 * @param engine - how the Bugs should be scheduled.
+	 * @param bugThreads - creates the threads Bugs run on with the virtual thread engine
+	 */
+	Interpreter(Tree<Token> tree, Mode mode, Engine engine, ThreadFactory bugThreads){
+		//an interpreted Bug keeps its place in the program on its Thread's stack, so it cannot be stepped
+		if (engine == Engine.COOPERATIVE && mode != Mode.COMPILED)
+			throw new IllegalArgumentException("The cooperative engine can only run compiled Bugs");
+		if (engine == Engine.VIRTUAL_THREADS){
+			this.bugThreads = bugThreads;
+			if (bugThreads == null)
+				throw new UnsupportedOperationException("Virtual threads are not available in this Java runtime");
+		}
+		barrier = new TickBarrier();
 		//initialize data structures
 		programTree = tree;
 		bugs = new Vector<Bug>();
 		allbugsVariables = new HashMap<String, Double>();
 		allbugsFunctions = new HashMap<String, Tree<Token>>();
-		lines = new Vector<Command>();
-		permissionToGrant = false;
-		oneTimePermission = false;
+		//a single Thread appends all the lines of a cooperative program, so the compact store's lock is never contended
+		lines = engine == Engine.COOPERATIVE ? new PrimitiveLineStore() : new SegmentedLineStore();
+		runState = RunState.PAUSED;
 		pauseTime = 250;
-		die = false;
+		this.mode = mode;
+		this.engine = engine;
 		//attempt to interpret any Allbugs code present
 		interpret(tree.getChild(0));
-		//create a Bug for each in the program and store in "bugs" - set blocked to true for every Bug
+		//compiled and typed Bugs share the Allbugs variables through slots rather than the HashMap
+		allbugsSlotNames = allbugsVariables.keySet().toArray(new String[allbugsVariables.size()]);
+		allbugsValues = new double[allbugsSlotNames.length];
+		for (int i = 0; i < allbugsSlotNames.length; i++){
+			allbugsValues[i] = allbugsVariables.get(allbugsSlotNames[i]);
+		}
+		//create a Bug for each in the program and store in "bugs"
 		Tree<Token> bugList = tree.getChild(1);
 		for (int i = 0; i < bugList.getNumberOfChildren(); i++){
 			Bug newBug = new Bug(bugList.getChild(i), this);
-			newBug.setBlocked(true);
+			if (mode == Mode.COMPILED)
+				newBug.setBytecode(new Compiler(bugList.getChild(i), allbugsFunctions, allbugsSlotNames).compile());
+			else if (mode == Mode.TYPED)
+				newBug.setProgram(Node.convert(bugList.getChild(i), allbugsFunctions, allbugsSlotNames));
 			bugs.add(newBug);
 		}
 	}
@@ -76,100 +223,420 @@ public class Interpreter  extends Thread{
 	 */
 	@Override
 	public void run(){
+		lastTickTime = System.nanoTime();
+		if (engine == Engine.COOPERATIVE)
+			runCooperatively();
+		else
+			runThreads();
+		getLineSink().flush();
+	}
+
+	/**
+	 * Starts a Thread for each Bug, then hands out work permits.
+	 */
+	private void runThreads(){
+		//register every Bug before any of them starts asking for work permits
+		for (Bug bug : bugs){
+			barrier.register(bug);
+		}
 		for (Bug bug : bugs){
-			bug.start();
+			if (bugThreads != null)
+				bugThreads.newThread(bug).start();
+			else
+				bug.start();
+		}
+		while (bugs.size() > 0 && awaitTick()){
+			barrier.startTick();
+			endTick();
+		}
+	}
+
+	/**
+	 * Runs every Bug on this Thread. Each tick gives every Bug one work permit, in the order the Bugs
+	 * were defined, so the same program always draws the same thing.
+	 */
+	private void runCooperatively(){
+		while (bugs.size() > 0 || awaitRewind()){
+			if (!awaitTick())
+				return;
+			synchronized (timeline){
+				//a tick allowed before the timeline was moved is not run from where it was moved to
+				if (seeksAtPermit == seeks && bugs.size() > 0)
+					runTick();
+			}
+		}
+	}
+	
+	/**
+	 * Gives every Bug one work permit, in the order the Bugs were defined, and ends the tick. Takes a
+	 * snapshot if one is due. Called holding the timeline lock.
+	 */
+	private void runTick(){
+		for (int i = 0; i < bugs.size(); ){
+			Bug bug = bugs.get(i);
+			if (bug.step())
+				i++;
+			else
+				terminateBug(bug);
 		}
-		while (bugs.size() > 0){
-			//if asked to reset, inform all Bugs, then terminate
-			if (die){
-				for (int n = 0; n < bugs.size(); n++){
-					bugs.get(n).kill();
+		endTick();
+		if (snapshotInterval > 0 && tick % snapshotInterval == 0 && tick > snapshots.get(snapshots.size() - 1).tick){
+			snapshots.add(new Snapshot());
+			if (snapshots.size() > MAX_SNAPSHOTS){
+				//keep the snapshots at multiples of twice the interval, which include the one at tick 0
+				for (int i = snapshots.size() - 1; i > 0; i--){
+					if (i % 2 == 1)
+						snapshots.remove(i);
 				}
-				break;
+				snapshotInterval *= 2;
+			}
+		}
+	}
+	
+	/**
+	 * Once every Bug has ended, waits for the timeline to be moved back to a tick when some were still
+	 * running. Returns straight away unless snapshots are being taken.
+	 * @return false if the program has ended for good, or this Interpreter was killed
+	 */
+	private synchronized boolean awaitRewind(){
+		if (snapshotInterval == 0)
+			return false;
+		while (bugs.size() == 0 && runState != RunState.KILLED){
+			try {
+				wait();
 			}
-			else{
-				unblockAllBugs();
+			catch (InterruptedException e) {
 			}
 		}
+		return runState != RunState.KILLED;
+	}
+	
+	/**
+	 * Takes a snapshot of the program every so many ticks, so that <code>seek</code> can later move
+	 * back to any tick, or forward, without running the program from the start. The snapshots are kept
+	 * in memory: lines are shared with the LineStore, so each one holds little more than the state of the
+	 * Bugs. When there are many, every other one is dropped and they are taken half as often.
+	 * Only the cooperative engine can take snapshots, because only it runs the same ticks every time.
+	 * Once every Bug has ended the Interpreter's Thread waits, so the program can still be moved back,
+	 * until it is killed. Off by default.
+	 * @param interval - ticks between snapshots, 0 to take none
+	 * @throws IllegalStateException if the Interpreter has already been started or does not use the cooperative engine
+	 * @throws IllegalArgumentException if interval is negative
+	 */
+	public void setSnapshotInterval(int interval){
+		if (getState() != State.NEW)
+			throw new IllegalStateException("Snapshots must be chosen before the program runs");
+		if (interval < 0)
+			throw new IllegalArgumentException("Snapshot interval must not be negative: " + interval);
+		if (interval > 0 && engine != Engine.COOPERATIVE)
+			throw new IllegalStateException("Only the cooperative engine can take snapshots");
+		snapshotInterval = interval;
+		//the program is as it will be when it starts
+		snapshots.clear();
+		if (interval > 0)
+			snapshots.add(new Snapshot());
+	}
+	
+	/**
+	 * Sets how many function calls each Bug may have active at once, so the depth of recursion is
+	 * limited by a budget rather than by the Java stack. Compiled Bugs keep their calls in arrays, and a
+	 * call a function returns as its last act reuses the caller's frame, so only interpreted Bugs can
+	 * overflow the Java stack before reaching the limit.
+	 * @param calls - must be at least 1
+	 * @throws IllegalStateException if the program has already been started
+	 * @throws IllegalArgumentException if calls is less than 1
+	 */
+	public void setRecursionLimit(int calls){
+		if (getState() != State.NEW)
+			throw new IllegalStateException("The recursion limit must be chosen before the program runs");
+		if (calls < 1)
+			throw new IllegalArgumentException("Recursion limit must be at least 1: " + calls);
+		for (Bug bug : bugs){
+			bug.setRecursionLimit(calls);
+		}
 	}
 
+	/**
+	 * Returns the number of ticks that have ended. Moving the timeline changes it.
+	 * @return tick
+	 */
+	public int getTick(){
+		return tick;
+	}
+	
+	/**
+	 * Pauses, then moves the program to the end of a tick: the latest snapshot at or before it is restored
+	 * and ticks are run from there, without pausing, until the tick is reached. The program draws exactly what
+	 * it drew the first time, so the View shows the lines and Bugs as they were at the end of that tick.
+	 * If every Bug ends before the tick is reached, the program is left at the tick at which they did.
+	 * May be called from any Thread, including while a tick is running, once the Interpreter has been started.
+	 * @param target - tick to move to; 0 is the start of the program
+	 * @throws IllegalStateException if snapshots are not being taken, or lines are sent to another sink or recorded
+	 * @throws IllegalArgumentException if target is negative
+	 */
+	public void seek(int target){
+		if (snapshotInterval == 0 || getState() == State.NEW)
+			throw new IllegalStateException("The program can only be moved once it is running with snapshots");
+		if (sink != null || recorder != null)
+			throw new IllegalStateException("The program cannot be moved while its lines are sent elsewhere");
+		if (target < 0)
+			throw new IllegalArgumentException("Tick must not be negative: " + target);
+		synchronized (this){
+			changeRunState(RunState.PAUSED);
+			seeks++;
+		}
+		synchronized (timeline){
+			Snapshot from = null;
+			for (Snapshot snapshot : snapshots){
+				if (snapshot.tick <= target)
+					from = snapshot;
+			}
+			//moving forward, the program may already be closer than any snapshot
+			if (target < tick || from.tick > tick)
+				from.restore();
+			while (tick < target && bugs.size() > 0){
+				runTick();
+			}
+			//the whole drawing may have changed, and each Bug must be shown where it now is
+			dirtyRegion.addLine(Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+			synchronized (bugs){
+				for (Bug bug : bugs){
+					bug.addChangesTo(dirtyRegion);
+				}
+			}
+		}
+		//wake this Interpreter's Thread if it was waiting for a rewind
+		synchronized (this){
+			notifyAll();
+		}
+		Runnable listener = tickListener;
+		if (listener != null)
+			listener.run();
+	}
+	
+	/**
+	 * Pauses, then moves the program back to the end of the tick before the current one.
+	 * @throws IllegalStateException if snapshots are not being taken, or lines are sent to another sink or recorded
+	 */
+	public void stepBack(){
+		seek(Math.max(0, tick - 1));
+	}
+	
+	/**
+	 * State of a cooperative program at the end of a tick: each Bug still running, the Allbugs variables and
+	 * the number of lines drawn. The lines themselves only ever grow, so they are shared with the LineStore.
+	 */
+	private final class Snapshot {
+		private final int tick;
+		private final Bug[] bugs;
+		private final Bug.State[] states;
+		private final double[] allbugsValues;
+		private final int lines;
+		private final Command openLine;
+		
+		/**
+		 * Takes a snapshot of the program as it is now.
+		 */
+		private Snapshot(){
+			tick = Interpreter.this.tick;
+			bugs = Interpreter.this.bugs.toArray(new Bug[0]);
+			states = new Bug.State[bugs.length];
+			for (int i = 0; i < bugs.length; i++){
+				states[i] = bugs[i].save();
+			}
+			allbugsValues = Interpreter.this.allbugsValues.clone();
+			lines = Interpreter.this.lines.size();
+			openLine = Interpreter.this.lines.getOpenLine();
+		}
+		
+		/**
+		 * Puts the program back as it was. The lines drawn since are dropped by replacing the LineStore with a
+		 * copy of its first lines, so a View showing the old store sees a new one and draws it from scratch.
+		 */
+		private void restore(){
+			for (int i = 0; i < bugs.length; i++){
+				bugs[i].restore(states[i]);
+			}
+			synchronized (Interpreter.this.bugs){
+				Interpreter.this.bugs.clear();
+				Collections.addAll(Interpreter.this.bugs, bugs);
+			}
+			//compiled Bugs hold on to the array, so the values are copied into it
+			System.arraycopy(allbugsValues, 0, Interpreter.this.allbugsValues, 0, allbugsValues.length);
+			//every run draws the same lines, so the store with the most has all those of every snapshot
+			if (history == null || Interpreter.this.lines.size() > history.size())
+				history = Interpreter.this.lines;
+			LineStore restored = history.copy(lines);
+			if (openLine != null)
+				restored.add(openLine.getX1(), openLine.getY1(), openLine.getX2(), openLine.getY2(), openLine.getColor());
+			Interpreter.this.lines = restored;
+			linesAtTickEnd = restored.size();
+			openAtTickEnd = restored.getOpenLine();
+			Interpreter.this.tick = tick;
+		}
+	}
+	
+	/**
+	 * Adds what the tick that has just ended changed to the DirtyRegion: the bounds of the new lines, and where
+	 * each Bug that moved was and now is. With Bug threads the Bugs may already be running the next tick, in
+	 * which case some of its changes are picked up now and the rest at the end of the next tick.
+	 */
+	void endTick(){
+		Recorder recorder = this.recorder;
+		Bug.Pose[] poses = null;
+		synchronized (bugs){
+			if (recorder != null)
+				poses = new Bug.Pose[bugs.size()];
+			for (int i = 0; i < bugs.size(); i++){
+				bugs.get(i).addChangesTo(dirtyRegion);
+				if (poses != null)
+					poses[i] = bugs.get(i).getShownPose();
+			}
+		}
+		if (recorder != null)
+			recorder.endTick(poses);
+		int size = lines.size();
+		if (linesAtTickEnd < size){
+			double left = Double.POSITIVE_INFINITY, top = Double.POSITIVE_INFINITY;
+			double right = Double.NEGATIVE_INFINITY, bottom = Double.NEGATIVE_INFINITY;
+			boolean visible = false;
+			for (int i = linesAtTickEnd; i < size; i++){
+				if (lines.getColor(i) == null)
+					continue;
+				//a NaN coordinate makes the bounds NaN, and then the whole View is repainted
+				visible = true;
+				left = Math.min(left, Math.min(lines.getX1(i), lines.getX2(i)));
+				top = Math.min(top, Math.min(lines.getY1(i), lines.getY2(i)));
+				right = Math.max(right, Math.max(lines.getX1(i), lines.getX2(i)));
+				bottom = Math.max(bottom, Math.max(lines.getY1(i), lines.getY2(i)));
+			}
+			if (visible)
+				dirtyRegion.addLine(left, top, right, bottom);
+			linesAtTickEnd = size;
+		}
+		//a line that is still growing is drawn over the others, so only its new extent needs adding
+		Command open = lines.getOpenLine();
+		if (open != null && open.getColor() != null && !sameLine(open, openAtTickEnd))
+			dirtyRegion.addLine(open.getX1(), open.getY1(), open.getX2(), open.getY2());
+		openAtTickEnd = open;
+		tick++;
+		Runnable listener = tickListener;
+		if (listener != null)
+			listener.run();
+	}
+	
+	/**
+	 * Checks whether two lines have the same ends and color.
+	 * @param a
+	 * @param b - may be null
+	 * @return true if they are drawn the same
+	 */
+	private static boolean sameLine(Command a, Command b){
+		return b != null && a.getX1() == b.getX1() && a.getY1() == b.getY1() && a.getX2() == b.getX2() && a.getY2() == b.getY2()
+				&& (a.getColor() == null ? b.getColor() == null : a.getColor().equals(b.getColor()));
+	}
+	
+	/**
+	 * Sets what to tell at the end of each tick, such as a View's RenderScheduler. It is run on the
+	 * Interpreter's Thread, so it should return quickly.
+	 * @param listener - null to tell nothing
+	 */
+	void setTickListener(Runnable listener){
+		tickListener = listener;
+	}
+
+	
+	/**
+	 * Finds the factory for virtual threads. Looked up reflectively so the program still runs
+	 * (with the other engines) on Java versions without virtual threads.
+	 * @return factory, or null if virtual threads are not available
+	 */
+	static ThreadFactory virtualThreadFactory(){
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		}
+		catch (ReflectiveOperationException e){
+			return null;
+		}
+	}
+	
+	/**
+	 * Waits until this Interpreter is allowed to run the next tick: immediately when STEPPING or TURBO, once
+	 * the pause time since the previous tick has passed when RUNNING, and not at all when PAUSED. Every change
+	 * made by the Controller wakes this Thread, so it never needs to poll.
+	 * @return false if this Interpreter was killed instead
+	 */
+	private synchronized boolean awaitTick(){
+		while (true){
+			if (runState == RunState.TURBO)
+				break;
+			if (runState == RunState.KILLED)
+				return false;
+			if (runState == RunState.STEPPING){
+				runState = RunState.PAUSED;
+				break;
+			}
+			long delay = TimeUnit.MILLISECONDS.toNanos(pauseTime) - (System.nanoTime() - lastTickTime);
+			if (runState == RunState.RUNNING && delay <= 0)
+				break;
+			try {
+				if (runState == RunState.PAUSED)
+					wait();
+				else
+					TimeUnit.NANOSECONDS.timedWait(this, delay);
+			}
+			catch (InterruptedException e) {
+			}
+		}
+		lastTickTime = System.nanoTime();
+		seeksAtPermit = seeks;
+		return true;
+	}
 
     /** 
-     * Makes a Bug wait() until it is unblocked 
+     * Makes a Bug wait until it is unblocked 
      */
-    synchronized void getWorkPermit(Bug bug) {
-        while (bug.isBlocked()) {
-            try {
-                wait();
-            }
-            catch (InterruptedException e) {
-            }
-        }
+    void getWorkPermit(Bug bug) {
+    	barrier.getWorkPermit(bug);
     }
     
     /** 
      * Bug calls after completing an action. It is set to blocked. 
      */
-    synchronized void completeCurrentTask(Bug bug) {
-        bug.setBlocked(true);
-        notifyAll();
-    }
-
-    /** 
-     * Called repeatedly by this Interpreter. Waits until all Bugs become blocked.
-     * Then releases all again. 
-     */
-    synchronized void unblockAllBugs() {
-    	pause();
-    	if (oneTimePermission)
-    		setPermissionToGrant(false);
-        while (countBlockedBugs() < bugs.size()) {
-            try {
-                wait();
-            }
-            catch (InterruptedException e) {
-            }
-        }
-        while (!permissionToGrant) {
-            try {
-                wait();
-            }
-            catch (InterruptedException e) {
-            }
-        }
-
-        for (Bug bug : bugs) {
-            bug.setBlocked(false);
-        }
-        notifyAll();  
-    }
-    
-    /** Counts the number of currently blocked Bugs; since this is
-     *  called from a synchronized method, it is effectively synchronized */
-    private int countBlockedBugs() {
-        int count = 0;
-        for (Bug bug : bugs) {
-            if (bug.isBlocked()) {
-                count++;
-            }
-        }
-        return count;
+    void completeCurrentTask(Bug bug) {
+    	barrier.completeCurrentTask(bug);
     }
     
-    /** Called by a Bug to terminate; synchronized because it modifies the
-     * ArrayList of workers, which is used by other synchronized methods. */
-    synchronized void terminateBug(Bug bug) {
-        bugs.remove(bug);
+    /** Called by a Bug to terminate. */
+    void terminateBug(Bug bug) {
+    	barrier.terminateBug(bug, bugs);
+    	bug.addRemovalTo(dirtyRegion);
     }
 	
 	/**
-	 * Getter method for allBugsVariables HashMap.
+	 * Getter method for allBugsVariables HashMap. Compiled and typed Bugs keep the Allbugs variables in
+	 * slots instead (see <code>getAllbugsValues()</code>), so their current values are copied into it first.
 	 * @return allBugsVariables
 	 */
     public HashMap<String, Double> getAllbugsVariables() {
+    	if (mode != Mode.INTERPRETED && allbugsSlotNames != null){
+    		for (int i = 0; i < allbugsSlotNames.length; i++){
+    			allbugsVariables.put(allbugsSlotNames[i], allbugsValues[i]);
+    		}
+    	}
 		return allbugsVariables;
 	}
     
+	/**
+	 * Returns the values of the Allbugs variables used by compiled and typed Bugs, in the order given by
+	 * the names passed to their <code>Compiler</code>.
+	 * @return allbugsValues
+	 */
+	double[] getAllbugsValues() {
+		return allbugsValues;
+	}
+    
     /**
 	 * Getter method for allBugsFunctions HashMap.
 	 * @return allBugsFunctions
@@ -179,30 +646,121 @@ public class Interpreter  extends Thread{
 	}
 	
 	/**
-	 * Getter method for lines ArrayList. 
+	 * Returns what has changed since the View last repainted.
+	 * @return dirtyRegion
+	 */
+	DirtyRegion getDirtyRegion(){
+		return dirtyRegion;
+	}
+	
+	/**
+	 * Getter method for the lines drawn so far. Bugs append to it while the View reads it. It stays
+	 * empty if the lines are sent to another LineSink.
 	 * @return
 	 */
-	public Vector<Command> getLines(){
+	public LineStore getLines(){
 		return lines;
 	}
 	
+	/**
+	 * Returns where Bugs send the lines they draw: the LineStore unless another sink has been set.
+	 * @return sink
+	 */
+	LineSink getLineSink(){
+		if (recorder != null)
+			return recorder;
+		return sink == null ? lines : sink;
+	}
+	
+	/**
+	 * Sends the lines Bugs draw to a sink, such as a file, rather than keeping them in the LineStore
+	 * a View shows. The sink is flushed when the program finishes, but not closed.
+	 * @param sink - null to keep lines in the LineStore again
+	 * @throws IllegalStateException if the Interpreter has already been started
+	 */
+	public void setLineSink(LineSink sink){
+		if (getState() != State.NEW)
+			throw new IllegalStateException("The line sink must be chosen before the program runs");
+		this.sink = sink;
+	}
+	
+	/**
+	 * Records the run with a Recorder, which then passes the lines on to the sink it was created with,
+	 * usually <code>getLines()</code> or the sink set with <code>setLineSink</code>. The Recorder is
+	 * flushed when the program finishes, but not closed.
+	 * @param recorder - null to stop recording
+	 * @throws IllegalStateException if the Interpreter has already been started
+	 */
+	public void setRecorder(Recorder recorder){
+		if (getState() != State.NEW)
+			throw new IllegalStateException("A recorder must be chosen before the program runs");
+		this.recorder = recorder;
+	}
+	
+	/**
+	 * Returns what a View shows of this Interpreter.
+	 * @return scene
+	 */
+	Scene getScene(){
+		return scene;
+	}
+	
+	/**
+	 * Turns merging of lines on or off. When on, each line that continues the line drawn just before it,
+	 * horizontally or vertically and in the same color, is merged into it, which stores and draws far fewer
+	 * lines without changing a pixel of the drawing; see CoalescingLineStore. Off by default.
+	 * @param coalesce - true to merge lines
+	 * @throws IllegalStateException if the Interpreter has already been started
+	 */
+	public void setLineCoalescing(boolean coalesce){
+		if (getState() != State.NEW)
+			throw new IllegalStateException("Line coalescing must be chosen before the program runs");
+		if (coalesce && !(lines instanceof CoalescingLineStore))
+			lines = new CoalescingLineStore(lines);
+		else if (!coalesce && lines instanceof CoalescingLineStore)
+			lines = ((CoalescingLineStore) lines).getLines();
+	}
+	
 	/**
 	 * Allows Controller to determine whether or not this Interpreter can grant work visas.
-	 * @param boo
+	 * @param boo - true to run, false to pause
 	 */
 	synchronized public void setPermissionToGrant(boolean boo){
-		oneTimePermission = false;
-		permissionToGrant = boo;
-		notifyAll();
+		changeRunState(boo ? RunState.RUNNING : RunState.PAUSED);
 	}
 	
 	/**
 	 * Controller uses to allow this Interpreter to issue exactly one work permit to each Bug.
 	 */
 	synchronized public void giveOneTimePermission(){
-		oneTimePermission = true;
-		permissionToGrant = true;
-		notifyAll();
+		changeRunState(RunState.STEPPING);
+	}
+	
+	/**
+	 * Controller uses to let this Interpreter run ticks as fast as it can, without pausing between them.
+	 * <code>setPermissionToGrant</code> returns to running at the pause time, or pauses.
+	 */
+	synchronized public void runTurbo(){
+		changeRunState(RunState.TURBO);
+	}
+	
+	/**
+	 * Moves to a new RunState and wakes this Interpreter's Thread to act on it. A killed Interpreter stays killed.
+	 * @param newState
+	 */
+	private synchronized void changeRunState(RunState newState){
+		if (runState != RunState.KILLED){
+			runState = newState;
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * Returns what the Controller has most recently asked this Interpreter to do.
+	 * @return runState
+	 */
+	synchronized public RunState getRunState(){
+		return runState;
 	}
 	
 	/**
@@ -214,22 +772,6 @@ public class Interpreter  extends Thread{
 		notifyAll();
 	}
 	
-	/**
-	 * Checks to see if this Interpreter currently has permission to issue work permits.
-	 * @return
-	 */
-	private boolean checkPermission(){
-		if (permissionToGrant)
-			return true;
-		else
-			return false;
-	}
-	
-    /** Pause for a random amount of time */
-    private void pause() {
-        try { sleep(pauseTime); }
-        catch (InterruptedException e) {}
-    }
     
     /**
      * Getter method for programTree which holds the last program that was loaded by this Interpreter.
@@ -239,11 +781,32 @@ public class Interpreter  extends Thread{
     	return programTree;
     }
     
+    /**
+     * Returns how the Bugs managed by this Interpreter execute their programs.
+     * @return mode
+     */
+    public Mode getMode(){
+    	return mode;
+    }
+    
+    /**
+     * Returns how the Bugs managed by this Interpreter are scheduled.
+     * @return engine
+     */
+    public Engine getEngine(){
+    	return engine;
+    }
+    
     /**
      * Used to allow the Controller to inform this Interpreter to stop as soon as possible.
      */
-    synchronized public void kill(){
-    	die = true;
+    public void kill(){
+    	changeRunState(RunState.KILLED);
+    	//stop the Bugs straight away, even those in the middle of a tick
+    	for (Bug bug : bugs.toArray(new Bug[0])){
+    		bug.kill();
+    	}
+    	barrier.release();
     }
     
 //CODE BELOW THIS POINT INTERPRETS ALLBUGS CODE	
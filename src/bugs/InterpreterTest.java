@@ -2,6 +2,12 @@ package bugs;
 
 import static org.junit.Assert.*;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -197,8 +203,294 @@ public class InterpreterTest {
 		assertEquals("Not equal", 0.0, interpreter.getABVariables().get("footoo"), 0.001);
 		assertEquals("Not equal", 0.0, interpreter.getABVariables().get("footee"), 0.001);
     }
+    @Test
+    public void testCooperativeEngine(){
+    	//each tick every Bug takes exactly one action, in the order the Bugs were defined
+    	interpreter = new Interpreter(program("Bug A {\n" +
+    			"    var n\n" +
+    			"    loop {\n" +
+    			"        n = n + 1\n" +
+    			"        move B.n + 1\n" +
+    			"        exit if n >= 5\n" +
+    			"    }\n" +
+    			"}\n" +
+    			"Bug B {\n" +
+    			"    var n\n" +
+    			"    y = 10\n" +
+    			"    loop {\n" +
+    			"        n = A.n * 2\n" +
+    			"        move 1\n" +
+    			"        exit if n >= 10\n" +
+    			"    }\n" +
+    			"}\n"), Interpreter.Mode.COMPILED, Interpreter.Engine.COOPERATIVE);
+    	assertEquals(Interpreter.Engine.COOPERATIVE, interpreter.getEngine());
+    	TestPrograms.runToEnd(interpreter);
+    	assertEquals(10, interpreter.getLines().size());
+    	double ax = 0.0;
+    	for (int tick = 0; tick < 5; tick++){
+    		Command a = interpreter.getLines().get(2 * tick);
+    		Command b = interpreter.getLines().get(2 * tick + 1);
+    		//A sees the value B stored on the previous tick, B sees the value A stored on this tick
+    		assertEquals(ax, a.getX1(), 0.001);
+    		assertEquals(ax + 2 * tick + 1, a.getX2(), 0.001);
+    		assertEquals(10.0, b.getY1(), 0.001);
+    		assertEquals(tick + 1, b.getX2(), 0.001);
+    		ax = a.getX2();
+    	}
+    }
+    @Test
+    public void testCooperativeEngineOneTimePermission() throws InterruptedException{
+    	interpreter = new Interpreter(program("Bug A {\n" +
+    			"    loop {\n" +
+    			"        move 1\n" +
+    			"    }\n" +
+    			"}\n" +
+    			"Bug B {\n" +
+    			"    loop {\n" +
+    			"        turn 1\n" +
+    			"        line 0, 0, 1, 1\n" +
+    			"    }\n" +
+    			"}\n"), Interpreter.Mode.COMPILED);
+    	interpreter.updatePauseTime(0);
+    	interpreter.start();
+    	interpreter.giveOneTimePermission();
+    	Thread.sleep(200);
+    	assertEquals(1, interpreter.getLines().size());
+    	interpreter.giveOneTimePermission();
+    	Thread.sleep(200);
+    	assertEquals(3, interpreter.getLines().size());
+    	//a killed Interpreter stops even though it is waiting for permission
+    	interpreter.kill();
+    	interpreter.join(2000);
+    	assertFalse(interpreter.isAlive());
+    }
+    @Test
+    public void testVirtualThreadEngine(){
+    	StringBuilder source = new StringBuilder("Allbugs {\n    var total\n}\n");
+    	for (int i = 0; i < 300; i++){
+    		source.append("Bug B" + i + " {\n" +
+    				"    var n\n" +
+    				"    x = " + i + "\n" +
+    				"    loop {\n" +
+    				"        move 1 + n\n" +
+    				"        turn 90\n" +
+    				"        n = n + 1\n" +
+    				"        exit if n >= 4\n" +
+    				"    }\n" +
+    				"}\n");
+    	}
+    	Tree<Token> tree = program(source.toString());
+    	Interpreter expected = new Interpreter(tree, Interpreter.Mode.COMPILED, Interpreter.Engine.COOPERATIVE);
+    	TestPrograms.runToEnd(expected);
+    	//without virtual threads the same TickBarrier is exercised by platform threads
+    	ThreadFactory factory = Interpreter.virtualThreadFactory();
+    	if (factory == null){
+    		try {
+    			new Interpreter(tree, Interpreter.Mode.COMPILED, Interpreter.Engine.VIRTUAL_THREADS);
+    			fail("Virtual threads are not available, the engine should have been refused");
+    		}
+    		catch (UnsupportedOperationException e){
+    		}
+    		factory = Executors.defaultThreadFactory();
+    	}
+    	for (Interpreter.Mode mode : Interpreter.Mode.values()){
+    		Interpreter actual = new Interpreter(tree, mode, Interpreter.Engine.VIRTUAL_THREADS, factory);
+    		TestPrograms.runToEnd(actual);
+    		assertEquals(TestPrograms.sortedLines(expected), TestPrograms.sortedLines(actual));
+    	}
+    }
+    @Test
+    public void testRunStates() throws InterruptedException{
+    	for (Interpreter.Engine engine : new Interpreter.Engine[] {Interpreter.Engine.COOPERATIVE, Interpreter.Engine.THREADS}){
+    		interpreter = new Interpreter(program("Bug A {\n" +
+    				"    loop {\n" +
+    				"        move 1\n" +
+    				"    }\n" +
+    				"}\n"), Interpreter.Mode.COMPILED, engine);
+    		interpreter.updatePauseTime(0);
+    		interpreter.start();
+    		//a paused Interpreter waits rather than polling
+    		assertEquals(Interpreter.RunState.PAUSED, interpreter.getRunState());
+    		awaitPaused(interpreter);
+    		assertEquals(0, interpreter.getLines().size());
+    		interpreter.giveOneTimePermission();
+    		awaitTicks(interpreter, 1);
+    		awaitPaused(interpreter);
+    		assertEquals(Interpreter.RunState.PAUSED, interpreter.getRunState());
+    		assertEquals(1, interpreter.getTick());
+    		//with Bug threads a tick ends once its actions have been allowed, so the last one may still be finishing
+    		awaitLines(interpreter, 1);
+    		assertEquals(1, interpreter.getLines().size());
+    		interpreter.setPermissionToGrant(true);
+    		assertEquals(Interpreter.RunState.RUNNING, interpreter.getRunState());
+    		awaitTicks(interpreter, 2);
+    		interpreter.setPermissionToGrant(false);
+    		awaitPaused(interpreter);
+    		//the Bug draws one line each tick, and no tick starts while paused
+    		int ticks = interpreter.getTick();
+    		assertTrue(ticks > 1);
+    		awaitLines(interpreter, ticks);
+    		assertEquals(ticks, interpreter.getLines().size());
+    		awaitPaused(interpreter);
+    		assertEquals(ticks, interpreter.getTick());
+    		//a long pause time does not hold up a kill
+    		interpreter.updatePauseTime(60000);
+    		interpreter.setPermissionToGrant(true);
+    		interpreter.kill();
+    		interpreter.setPermissionToGrant(true);
+    		assertEquals(Interpreter.RunState.KILLED, interpreter.getRunState());
+    		interpreter.join(2000);
+    		assertFalse(interpreter.isAlive());
+    	}
+    }
+    @Test
+    public void testTurbo() throws InterruptedException{
+    	for (Interpreter.Engine engine : new Interpreter.Engine[] {Interpreter.Engine.COOPERATIVE, Interpreter.Engine.THREADS}){
+    		interpreter = new Interpreter(program("Bug A {\n" +
+    				"    var i\n" +
+    				"    loop {\n" +
+    				"        move 1\n" +
+    				"        turn 1\n" +
+    				"        i = i + 1\n" +
+    				"        exit if i = 10000\n" +
+    				"    }\n" +
+    				"}\n"), Interpreter.Mode.COMPILED, engine);
+    		//20,000 ticks would take well over an hour at the default pause time
+    		interpreter.runTurbo();
+    		assertEquals(Interpreter.RunState.TURBO, interpreter.getRunState());
+    		interpreter.start();
+    		interpreter.join(10000);
+    		assertFalse(interpreter.isAlive());
+    		assertEquals(10000, interpreter.getLines().size());
+    	}
+    	//turbo can be paused like running
+    	interpreter = new Interpreter(program("Bug A {\n    loop {\n        move 1\n    }\n}\n"), Interpreter.Mode.COMPILED);
+    	interpreter.runTurbo();
+    	interpreter.start();
+    	Thread.sleep(50);
+    	interpreter.setPermissionToGrant(false);
+    	awaitThreadState(interpreter, Thread.State.WAITING);
+    	int lines = interpreter.getLines().size();
+    	assertTrue(lines > 1);
+    	Thread.sleep(50);
+    	assertEquals(lines, interpreter.getLines().size());
+    	interpreter.kill();
+    	interpreter.join(2000);
+    	assertFalse(interpreter.isAlive());
+    }
+    @Test
+    public void testKillStopsBugsBetweenActions() throws InterruptedException{
+    	//the Bugs never reach an action, so the Interpreter is stuck waiting for them to finish their tick
+    	for (Interpreter.Mode mode : Interpreter.Mode.values()){
+    		interpreter = new Interpreter(program("Bug A {\n" +
+    				"    var n\n" +
+    				"    loop {\n" +
+    				"        n = n + 1\n" +
+    				"    }\n" +
+    				"}\n"), mode, Interpreter.Engine.THREADS);
+    		Bug bug = interpreter.getBugs().get(0);
+    		interpreter.updatePauseTime(0);
+    		interpreter.setPermissionToGrant(true);
+    		interpreter.start();
+    		Thread.sleep(100);
+    		interpreter.kill();
+    		interpreter.join(2000);
+    		bug.join(2000);
+    		assertFalse(interpreter.isAlive());
+    		assertFalse(bug.isAlive());
+    	}
+    }
+    @Test
+    public void testAllbugsVariablesOfCompiledBugs(){
+    	for (Interpreter.Mode mode : new Interpreter.Mode[] {Interpreter.Mode.COMPILED, Interpreter.Mode.TYPED}){
+    		interpreter = new Interpreter(program("Allbugs {\n" +
+    				"    var total, unused\n" +
+    				"}\n" +
+    				"Bug A {\n" +
+    				"    total = total + 3\n" +
+    				"    move 1\n" +
+    				"}\n" +
+    				"Bug B {\n" +
+    				"    move 1\n" +
+    				"    total = total + 4\n" +
+    				"}\n"), mode);
+    		TestPrograms.runToEnd(interpreter);
+    		//the Bugs kept the variables in slots, which the HashMap shows
+    		assertEquals(7.0, interpreter.getAllbugsVariables().get("total"), 0);
+    		assertEquals(0.0, interpreter.getAllbugsVariables().get("unused"), 0);
+    	}
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testCooperativeEngineRequiresCompiledBugs(){
+    	new Interpreter(program("Bug A {\n    move 1\n}\n"), Interpreter.Mode.INTERPRETED, Interpreter.Engine.COOPERATIVE);
+    }
     
   //HELPER methods
+    /**
+     * Parses a complete Bugs program.
+     * @param source
+     * @return AST of the program
+     */
+    private Tree<Token> program(String source){
+    	Parser p = new Parser(source);
+    	assertTrue(p.isProgram());
+    	return p.stack.pop();
+    }
+    
+    /**
+     * Waits (for up to 2 seconds) until a Thread is in the given state.
+     * @param thread
+     * @param state
+     */
+    private void awaitThreadState(Thread thread, Thread.State state) throws InterruptedException{
+    	for (int i = 0; i < 200 && thread.getState() != state; i++){
+    		Thread.sleep(10);
+    	}
+    	assertEquals(state, thread.getState());
+    }
+    
+    /**
+     * Waits (for up to 2 seconds) until at least the given number of an Interpreter's ticks have ended.
+     * @param interpreter
+     * @param ticks
+     */
+    private void awaitTicks(Interpreter interpreter, int ticks) throws InterruptedException{
+    	for (int i = 0; i < 200 && interpreter.getTick() < ticks; i++){
+    		Thread.sleep(10);
+    	}
+    	assertTrue("Fewer than " + ticks + " ticks ended", interpreter.getTick() >= ticks);
+    }
+    
+    /**
+     * Waits (for up to 2 seconds) until an Interpreter has drawn at least the given number of lines.
+     * @param interpreter
+     * @param lines
+     */
+    private void awaitLines(Interpreter interpreter, int lines) throws InterruptedException{
+    	for (int i = 0; i < 200 && interpreter.getLines().size() < lines; i++){
+    		Thread.sleep(10);
+    	}
+    	assertTrue("Fewer than " + lines + " lines were drawn", interpreter.getLines().size() >= lines);
+    }
+    
+    /**
+     * Waits (for up to 2 seconds) until an Interpreter is waiting for permission to run its next tick,
+     * rather than for its Bugs to finish a tick, so every tick it started has ended.
+     * @param interpreter
+     */
+    private void awaitPaused(Interpreter interpreter) throws InterruptedException{
+    	ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    	for (int i = 0; i < 200; i++){
+    		ThreadInfo info = threads.getThreadInfo(interpreter.getId());
+    		//a paused Interpreter waits on its own monitor
+    		if (info.getThreadState() == Thread.State.WAITING && info.getLockInfo() != null
+    				&& info.getLockInfo().getIdentityHashCode() == System.identityHashCode(interpreter))
+    			return;
+    		Thread.sleep(10);
+    	}
+    	fail("Interpreter is not waiting for permission to run");
+    }
+    
     /**
      * Returns a Tree node consisting of a single leaf; the
      * node will contain a Token with a String as its value. <br>
@@ -0,0 +1,41 @@
+package bugs;
+
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where the Bugs of a program send the lines they draw. A LineStore keeps every line in memory so a
+ * View can show them; other sinks stream lines out as they arrive (to an SVG or binary file) or
+ * discard them, so drawing any number of lines takes the same memory.
+ * <p>
+ * Bugs with their own Threads may add lines at the same time, so every sink must allow that.
+ * A sink that writes to a stream does not throw from <code>add</code> or <code>flush()</code>:
+ * it stops writing after the first error, and <code>close()</code> throws it.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public interface LineSink extends Closeable {
+
+	/**
+	 * Adds a line. May be called by several threads at once.
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @param color - color of the line, null if it is invisible
+	 */
+	void add(double x1, double y1, double x2, double y2, Color color);
+
+	/**
+	 * Passes on every line added so far. Called when a program has finished drawing.
+	 */
+	void flush();
+
+	/**
+	 * Flushes, then releases whatever the sink writes to.
+	 * @throws IOException if a line could not be written
+	 */
+	@Override
+	void close() throws IOException;
+}
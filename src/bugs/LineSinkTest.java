@@ -0,0 +1,148 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for the LineSink implementations of Bugs language Interpreter: SvgLineSink, BinaryLineSink
+ * and NullLineSink, and Interpreters that send their lines to them.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class LineSinkTest {
+	private static final String PROGRAM = "Bug Sally {\n" +
+			"    var i\n" +
+			"    y = 50\n" +
+			"    color red\n" +
+			"    loop {\n" +
+			"        move 1\n" +
+			"        i = i + 1\n" +
+			"        exit if i = 100\n" +
+			"    }\n" +
+			"    color none\n" +
+			"    moveto 0, 0\n" +
+			"    color blue\n" +
+			"    line 25, 0, 25, 100\n" +
+			"}\n";
+
+	@Test
+	public void testSvg() throws IOException {
+		StringWriter out = new StringWriter();
+		SvgLineSink sink = new SvgLineSink(out, 200, 100);
+		sink.add(0, 50, 12.5, 50, Color.RED);
+		sink.add(0, 0, 10, 10, null);
+		sink.add(0, Double.NaN, 10, 10, Color.BLUE);
+		sink.add(1.0 / 3, 0.001, 25.0001, -7, new Color(0x0000FF));
+		sink.close();
+		String svg = out.toString();
+		assertTrue(svg.startsWith("<?xml"));
+		assertTrue(svg.contains("width=\"200\" height=\"100\""));
+		assertTrue(svg.contains("<line x1=\"0\" y1=\"50\" x2=\"25\" y2=\"50\" stroke=\"#ff0000\"/>"));
+		assertTrue(svg.contains("<line x1=\"0.667\" y1=\"0.001\" x2=\"50\" y2=\"-7\" stroke=\"#0000ff\"/>"));
+		assertTrue(svg.endsWith("</g>\n</svg>\n"));
+		//invisible lines and lines that are not numbers are left out
+		assertEquals(2, svg.split("<line").length - 1);
+	}
+
+	@Test
+	public void testBinaryReplaysExactly() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryLineSink sink = new BinaryLineSink(out);
+		LineStore expected = new PrimitiveLineStore();
+		double[][] lines = {{0, 50, 12.5, 50}, {Math.PI, -0.1, 1e300, Double.NaN}, {1, 2, 3, 4}};
+		Color[] colors = {Color.RED, null, new Color(0x123456)};
+		for (int i = 0; i < lines.length; i++){
+			sink.add(lines[i][0], lines[i][1], lines[i][2], lines[i][3], colors[i]);
+			expected.add(lines[i][0], lines[i][1], lines[i][2], lines[i][3], colors[i]);
+		}
+		sink.close();
+		assertEquals(4 + 3 * BinaryLineSink.LINE_BYTES, out.size());
+		LineStore actual = new PrimitiveLineStore();
+		assertEquals(3, BinaryLineSink.replay(new ByteArrayInputStream(out.toByteArray()), actual));
+		assertEquals(3, actual.size());
+		for (int i = 0; i < 3; i++){
+			assertEquals(expected.getX1(i), actual.getX1(i), 0);
+			assertEquals(expected.getY1(i), actual.getY1(i), 0);
+			assertEquals(expected.getX2(i), actual.getX2(i), 0);
+			assertEquals(expected.getY2(i), actual.getY2(i), 0);
+			assertEquals(expected.getColor(i), actual.getColor(i));
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testBinaryRejectsTruncatedStream() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryLineSink sink = new BinaryLineSink(out);
+		sink.add(1, 2, 3, 4, Color.RED);
+		sink.close();
+		byte[] bytes = Arrays.copyOf(out.toByteArray(), out.size() - 1);
+		BinaryLineSink.replay(new ByteArrayInputStream(bytes), new NullLineSink());
+	}
+
+	@Test
+	public void testWriteErrorIsThrownByClose(){
+		final OutputStream broken = new OutputStream(){
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Disk full");
+			}
+		};
+		try {
+			BinaryLineSink sink = new BinaryLineSink(broken);
+			//the header is still in the buffer, so the error comes later
+			for (int i = 0; i < 10000; i++){
+				sink.add(i, i, i, i, Color.RED);
+			}
+			sink.close();
+			fail();
+		}
+		catch (IOException e){
+			assertEquals("Disk full", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testInterpreterStreamsToSink() throws IOException {
+		Parser parser = new Parser(PROGRAM);
+		assertTrue(parser.isProgram());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryLineSink sink = new BinaryLineSink(out);
+		Interpreter interpreter = BatchRenderer.stream(parser.stack.pop(), 10000, sink);
+		assertFalse(interpreter.isAlive());
+		//nothing is kept in memory, and everything has been written when the program finishes
+		assertEquals(0, interpreter.getLines().size());
+		assertEquals(4 + 102 * BinaryLineSink.LINE_BYTES, out.size());
+		sink.close();
+		//the lines are the ones the Interpreter would have kept
+		parser = new Parser(PROGRAM);
+		assertTrue(parser.isProgram());
+		LineStore kept = BatchRenderer.run(parser.stack.pop(), 10000).getLines();
+		LineStore replayed = new PrimitiveLineStore();
+		BinaryLineSink.replay(new ByteArrayInputStream(out.toByteArray()), replayed);
+		assertEquals(kept.size(), replayed.size());
+		for (int i = 0; i < kept.size(); i++){
+			assertEquals(kept.getX2(i), replayed.getX2(i), 0);
+			assertEquals(kept.getY2(i), replayed.getY2(i), 0);
+			assertEquals(kept.getColor(i), replayed.getColor(i));
+		}
+	}
+
+	@Test
+	public void testNullSinkCounts(){
+		Parser parser = new Parser(PROGRAM);
+		assertTrue(parser.isProgram());
+		NullLineSink sink = new NullLineSink();
+		BatchRenderer.stream(parser.stack.pop(), 10000, sink);
+		assertEquals(102, sink.getCount());
+	}
+}
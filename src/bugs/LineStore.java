@@ -0,0 +1,157 @@
+package bugs;
+
+import java.awt.Color;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lines drawn by the Bugs of a program. Bugs only ever append, possibly from several threads at
+ * once, while a View reads. <code>size()</code> is the number of lines that have been completely
+ * stored, and it only ever grows, so a reader that takes <code>size()</code> once can then read that
+ * many lines with <code>get(int)</code> and see a consistent prefix of the drawing, without locking.
+ * A store may hold its last line back while it can still grow; see <code>getOpenLine()</code>.
+ * <p>
+ * A LineStore is the LineSink that keeps the whole drawing in memory.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public abstract class LineStore implements Iterable<Command>, LineSink {
+
+	/**
+	 * Appends a line. May be called by several threads at once.
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @param color - color of the line, null if it is invisible
+	 */
+	@Override
+	public abstract void add(double x1, double y1, double x2, double y2, Color color);
+
+	/**
+	 * Returns the number of lines that can be read.
+	 * @return size
+	 */
+	public abstract int size();
+
+	/**
+	 * Returns a line.
+	 * @param index - must be less than a value returned by <code>size()</code>
+	 * @return line
+	 * @throws IndexOutOfBoundsException if the line has not been stored yet
+	 */
+	public abstract Command get(int index);
+
+	/**
+	 * Returns the x coordinate of the start of a line. Renderers use these accessors, which
+	 * stores can answer without creating a <code>Command</code>.
+	 * @param index - must be less than a value returned by <code>size()</code>
+	 * @return x1
+	 */
+	public double getX1(int index){
+		return get(index).getX1();
+	}
+
+	/**
+	 * Returns the y coordinate of the start of a line.
+	 * @param index - must be less than a value returned by <code>size()</code>
+	 * @return y1
+	 */
+	public double getY1(int index){
+		return get(index).getY1();
+	}
+
+	/**
+	 * Returns the x coordinate of the end of a line.
+	 * @param index - must be less than a value returned by <code>size()</code>
+	 * @return x2
+	 */
+	public double getX2(int index){
+		return get(index).getX2();
+	}
+
+	/**
+	 * Returns the y coordinate of the end of a line.
+	 * @param index - must be less than a value returned by <code>size()</code>
+	 * @return y2
+	 */
+	public double getY2(int index){
+		return get(index).getY2();
+	}
+
+	/**
+	 * Returns the color of a line.
+	 * @param index - must be less than a value returned by <code>size()</code>
+	 * @return color, null if the line is invisible
+	 */
+	public Color getColor(int index){
+		return get(index).getColor();
+	}
+
+	/**
+	 * Returns the line after the last one <code>size()</code> covers, if the store is still holding
+	 * it back because it may yet grow. It is the most recent line, so it is drawn over all the others.
+	 * @return a copy of the line as it is now, null if there is none
+	 */
+	public Command getOpenLine(){
+		return null;
+	}
+
+	/**
+	 * Stores any line held back by <code>getOpenLine()</code>, so that <code>size()</code> covers every
+	 * line added. Called when a program has finished drawing.
+	 */
+	@Override
+	public void flush(){
+	}
+
+	/**
+	 * Returns a new store that starts with the first lines of this one, as if they had been added to it
+	 * in the same order, and that is then appended to independently. This store is not changed.
+	 * @param size - number of lines to copy, at most <code>size()</code>
+	 * @return copy
+	 */
+	public LineStore copy(int size){
+		LineStore copy = new SegmentedLineStore();
+		for (int i = 0; i < size; i++){
+			copy.add(getX1(i), getY1(i), getX2(i), getY2(i), getColor(i));
+		}
+		return copy;
+	}
+
+	/**
+	 * Flushes. The lines can still be read afterwards.
+	 */
+	@Override
+	public void close(){
+		flush();
+	}
+
+	/**
+	 * Iterates over the lines that had been stored when this method was called.
+	 */
+	@Override
+	public Iterator<Command> iterator(){
+		final int size = size();
+		return new Iterator<Command>(){
+			private int next;
+
+			@Override
+			public boolean hasNext(){
+				return next < size;
+			}
+
+			@Override
+			public Command next(){
+				if (next >= size)
+					throw new NoSuchElementException();
+				return get(next++);
+			}
+
+			@Override
+			public void remove(){
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
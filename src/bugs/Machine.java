@@ -0,0 +1,410 @@
+package bugs;
+
+import java.util.Arrays;
+
+/**
+ * Executes the <code>Bytecode</code> of a single Bug. All execution state (program counter, operand
+ * stack, call stack and registers) is held in this object rather than on the Java stack, so the Machine
+ * can stop after each action and later resume exactly where it left off.
+ * <p>
+ * Variables are held in arrays indexed by the slots the <code>Compiler</code> resolved: the Bug's
+ * variables in <code>variables</code>, Allbugs variables in an array shared by every Bug of the program,
+ * and the parameters of a function call in the operand stack, where the caller left the arguments.
+ * <p>
+ * Since calls are kept in arrays rather than on the Java stack, how deeply a Bug may recurse is set by
+ * a limit on the number of active calls. A tail call replaces the call it is made from, so it is not
+ * counted, and a function that returns a call to itself can run for as long as a loop.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+class Machine {
+	private Bug bug; //Bug whose state the instructions manipulate
+	private Bytecode bytecode; //code being executed
+	private int pc; //index of the next instruction
+	private double[] stack; //operand stack
+	private int sp; //number of values on the operand stack
+	private double[] variables; //the Bug's variables
+	private double[] globals; //Allbugs variables, shared with the other Bugs
+	private int fp; //operand stack index of the first parameter of the current call
+	private int function; //index of the function being executed, -1 in the main program
+	private int[] callStack; //return address, fp and function of each active call's caller
+	private int csp; //number of ints used in callStack
+	private double returnValue; //value set by the last "return" statement
+	private int loopDepth; //number of loops currently executing, across all active calls
+	private boolean pendingExit; //an "exit if" in a function asked the calling loop to exit
+	private int recursionLimit = Interpreter.DEFAULT_RECURSION_LIMIT; //most calls that may be active at once
+
+	/**
+	 * Constructor.
+	 * @param bug - Bug to run the code for
+	 * @param bytecode - compiled Bug
+	 * @param globals - values of the program's Allbugs variables
+	 */
+	Machine(Bug bug, Bytecode bytecode, double[] globals){
+		this.bug = bug;
+		this.bytecode = bytecode;
+		this.globals = globals;
+		variables = new double[bytecode.variables.length];
+		stack = new double[Math.max(16, bytecode.maxStack)];
+		callStack = new int[48];
+		function = -1;
+	}
+
+	/**
+	 * Sets how many calls may be active at once. A call that would go past it is a runtime error.
+	 * @param calls
+	 */
+	void setRecursionLimit(int calls){
+		recursionLimit = calls;
+	}
+
+	/**
+	 * Runs instructions until an action has been completed or the program has ended.
+	 * @return true if an action was completed, false if the program ended (or the Bug was killed)
+	 */
+	boolean resume(){
+		final int[] code = bytecode.code;
+		final double[] constants = bytecode.constants;
+		final String[] names = bytecode.names;
+		final double[] variables = this.variables;
+		final double[] globals = this.globals;
+		double[] stack = this.stack;
+		int pc = this.pc;
+		int sp = this.sp;
+		int slot;
+		double a, b;
+		Bytecode.Function callee;
+		while (true){
+			switch (code[pc++]){
+				case Bytecode.PUSH:
+					stack[sp++] = constants[code[pc++]];
+					break;
+				case Bytecode.LOAD_LOCAL:
+					stack[sp++] = stack[fp + code[pc++]];
+					break;
+				case Bytecode.STORE_LOCAL:
+					stack[fp + code[pc++]] = stack[--sp];
+					break;
+				case Bytecode.LOAD_VAR:
+					stack[sp++] = variables[code[pc++]];
+					break;
+				case Bytecode.STORE_VAR:
+					variables[code[pc++]] = stack[--sp];
+					break;
+				case Bytecode.LOAD_GLOBAL:
+					stack[sp++] = globals[code[pc++]];
+					break;
+				case Bytecode.STORE_GLOBAL:
+					globals[code[pc++]] = stack[--sp];
+					break;
+				case Bytecode.LOAD_BUILTIN:
+					stack[sp++] = bug.fetchBuiltin(code[pc++]);
+					break;
+				case Bytecode.STORE_BUILTIN:
+					bug.storeBuiltin(code[pc++], stack[--sp]);
+					break;
+				case Bytecode.LOAD_DYNAMIC:
+					slot = findParameter(code[pc]);
+					if (slot >= 0)
+						stack[sp++] = stack[slot];
+					else if (code[pc + 1] == Bytecode.SCOPE_BUG)
+						stack[sp++] = variables[code[pc + 2]];
+					else if (code[pc + 1] == Bytecode.SCOPE_ALLBUGS)
+						stack[sp++] = globals[code[pc + 2]];
+					else
+						throw new RuntimeException("Variable \"" + names[code[pc]] + "\" could not be found");
+					pc += 3;
+					break;
+				case Bytecode.STORE_DYNAMIC:
+					slot = findParameter(code[pc]);
+					if (slot >= 0)
+						stack[slot] = stack[--sp];
+					else if (code[pc + 1] == Bytecode.SCOPE_BUG)
+						variables[code[pc + 2]] = stack[--sp];
+					else if (code[pc + 1] == Bytecode.SCOPE_ALLBUGS)
+						globals[code[pc + 2]] = stack[--sp];
+					else
+						throw new RuntimeException("Variable \"" + names[code[pc]] + "\" could not be found");
+					pc += 3;
+					break;
+				case Bytecode.LOAD_DOT:
+					stack[sp++] = bug.fetchDot(names[code[pc]], names[code[pc + 1]]);
+					pc += 2;
+					break;
+				case Bytecode.ADD:
+					b = stack[--sp];
+					stack[sp - 1] += b;
+					break;
+				case Bytecode.SUB:
+					b = stack[--sp];
+					stack[sp - 1] -= b;
+					break;
+				case Bytecode.MUL:
+					b = stack[--sp];
+					stack[sp - 1] *= b;
+					break;
+				case Bytecode.DIV:
+					b = stack[--sp];
+					stack[sp - 1] /= b;
+					break;
+				case Bytecode.NEG:
+					stack[sp - 1] = 0 - stack[sp - 1];
+					break;
+				case Bytecode.LT:
+					b = stack[--sp];
+					a = stack[sp - 1];
+					stack[sp - 1] = b - a > 0.001 ? 1.0 : 0.0;
+					break;
+				case Bytecode.LE:
+					b = stack[--sp];
+					a = stack[sp - 1];
+					stack[sp - 1] = b - a > -0.001 ? 1.0 : 0.0;
+					break;
+				case Bytecode.EQ:
+					b = stack[--sp];
+					a = stack[sp - 1];
+					stack[sp - 1] = a - b > 0.001 || a - b < -0.001 ? 0.0 : 1.0;
+					break;
+				case Bytecode.NE:
+					b = stack[--sp];
+					a = stack[sp - 1];
+					stack[sp - 1] = a - b > 0.001 || a - b < -0.001 ? 1.0 : 0.0;
+					break;
+				case Bytecode.GT:
+					b = stack[--sp];
+					a = stack[sp - 1];
+					stack[sp - 1] = a - b > 0.001 ? 1.0 : 0.0;
+					break;
+				case Bytecode.GE:
+					b = stack[--sp];
+					a = stack[sp - 1];
+					stack[sp - 1] = a - b > -0.001 ? 1.0 : 0.0;
+					break;
+				case Bytecode.POP:
+					sp--;
+					break;
+				case Bytecode.JUMP:
+					//a backward jump closes a loop - a good place to notice a reset request
+					if (code[pc] < pc && bug.isKilled())
+						return false;
+					pc = code[pc];
+					break;
+				case Bytecode.JUMP_FALSE:
+					if (Bug.isTrue(stack[--sp]))
+						pc++;
+					else
+						pc = code[pc];
+					break;
+				case Bytecode.JUMP_TRUE:
+					if (Bug.isTrue(stack[--sp]))
+						pc = code[pc];
+					else
+						pc++;
+					break;
+				case Bytecode.MOVE:
+					bug.moveBy(stack[--sp]);
+					return suspend(pc, sp);
+				case Bytecode.MOVETO:
+					sp -= 2;
+					bug.moveTo(stack[sp], stack[sp + 1]);
+					return suspend(pc, sp);
+				case Bytecode.TURN:
+					bug.turnBy(stack[--sp]);
+					return suspend(pc, sp);
+				case Bytecode.TURNTO:
+					bug.turnTo(stack[--sp]);
+					return suspend(pc, sp);
+				case Bytecode.LINE:
+					sp -= 4;
+					bug.drawLine(stack[sp], stack[sp + 1], stack[sp + 2], stack[sp + 3]);
+					return suspend(pc, sp);
+				case Bytecode.COLOR:
+					bug.setColor(bytecode.colors[code[pc++]]);
+					break;
+				case Bytecode.CALL:
+					if (csp / 3 >= recursionLimit)
+						throw new RuntimeException("Recursion is too deep: more than " + recursionLimit + " calls are active");
+					callee = bytecode.functions[code[pc]];
+					//the arguments already on the stack become the callee's parameters
+					if (csp + 3 > callStack.length)
+						callStack = Arrays.copyOf(callStack, callStack.length * 2);
+					callStack[csp++] = pc + 1;
+					callStack[csp++] = fp;
+					callStack[csp++] = function;
+					fp = sp - callee.params.length;
+					function = code[pc];
+					if (sp + callee.maxStack > stack.length)
+						stack = this.stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + callee.maxStack));
+					pc = callee.entry;
+					//recursion may never reach an action or a loop, so check for a reset request here too
+					if (bug.isKilled())
+						return false;
+					break;
+				case Bytecode.TAIL_CALL:
+					callee = bytecode.functions[code[pc]];
+					//nothing is left to do in the current call, so the arguments replace its parameters
+					//and the callee returns straight to the current call's caller
+					System.arraycopy(stack, sp - callee.params.length, stack, fp, callee.params.length);
+					sp = fp + callee.params.length;
+					function = code[pc];
+					if (sp + callee.maxStack > stack.length)
+						stack = this.stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + callee.maxStack));
+					pc = callee.entry;
+					if (bug.isKilled())
+						return false;
+					break;
+				case Bytecode.RET:
+					sp = fp;
+					stack[sp++] = returnValue;
+					returnValue = 0.0;
+					function = callStack[--csp];
+					fp = callStack[--csp];
+					pc = callStack[--csp];
+					break;
+				case Bytecode.END_INLINE:
+					sp -= code[pc++];
+					stack[sp++] = returnValue;
+					returnValue = 0.0;
+					break;
+				case Bytecode.SET_RETURN:
+					returnValue = stack[--sp];
+					break;
+				case Bytecode.DISTANCE:
+					stack[sp++] = bug.distance(names[code[pc++]]);
+					break;
+				case Bytecode.DIRECTION:
+					stack[sp++] = bug.direction(names[code[pc++]]);
+					break;
+				case Bytecode.ENTER_LOOP:
+					loopDepth++;
+					break;
+				case Bytecode.LEAVE_LOOP:
+					loopDepth--;
+					break;
+				case Bytecode.EXIT:
+					if (Bug.isTrue(stack[--sp]) && loopDepth > 0){
+						pendingExit = true;
+						pc = code[pc];
+					}
+					else
+						pc++;
+					break;
+				case Bytecode.CHECK_EXIT_LOOP:
+					if (pendingExit){
+						pendingExit = false;
+						pc = code[pc];
+					}
+					else
+						pc++;
+					break;
+				case Bytecode.CHECK_EXIT_RETURN:
+					if (pendingExit)
+						pc = code[pc];
+					else
+						pc++;
+					break;
+				case Bytecode.TRAP:
+					throw new RuntimeException(names[code[pc]]);
+				case Bytecode.HALT:
+					suspend(pc - 1, sp);
+					return false;
+				default:
+					throw new IllegalStateException("Bad opcode " + code[pc - 1] + " at " + (pc - 1));
+			}
+		}
+	}
+
+	/**
+	 * Searches the active function calls, most recent first, for a parameter. Bugs variables are
+	 * dynamically scoped, so a function can use the parameters of the functions that called it.
+	 * @param name - index of the parameter's name in the name table
+	 * @return operand stack index of the parameter, or -1 if no active call has it
+	 */
+	private int findParameter(int name){
+		int f = function;
+		int base = fp;
+		int i = csp;
+		while (f >= 0){
+			int slot = bytecode.functions[f].slots[name];
+			if (slot >= 0)
+				return base + slot;
+			f = callStack[--i];
+			base = callStack[--i];
+			i--;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value of one of the Bug's variables, for another Bug using dot notation.
+	 * @param name
+	 * @return value, or null if the Bug has no such variable
+	 */
+	Double getVariable(String name){
+		int slot = bytecode.variableSlot(name);
+		return slot < 0 ? null : variables[slot];
+	}
+
+	/**
+	 * Copies this Machine's execution state, between two calls to <code>resume()</code>. The Allbugs
+	 * variables are shared with the other Bugs, so they are not part of it.
+	 * @return state
+	 */
+	State save(){
+		return new State(this);
+	}
+
+	/**
+	 * Puts this Machine back in a state it was saved in, so it resumes exactly where it was then.
+	 * The state is copied, so it can be restored again later.
+	 * @param state - returned by <code>save()</code> on this Machine
+	 */
+	void restore(State state){
+		pc = state.pc;
+		stack = Arrays.copyOf(state.stack, Math.max(state.stack.length, stack.length));
+		sp = state.stack.length;
+		variables = state.variables.clone();
+		fp = state.fp;
+		function = state.function;
+		callStack = Arrays.copyOf(state.callStack, Math.max(state.callStack.length, callStack.length));
+		csp = state.callStack.length;
+		returnValue = state.returnValue;
+		loopDepth = state.loopDepth;
+		pendingExit = state.pendingExit;
+	}
+
+	/**
+	 * Execution state of a Machine at some moment. Only the part of each stack in use is kept.
+	 */
+	static final class State {
+		private final int pc, fp, function, loopDepth;
+		private final double[] stack, variables;
+		private final int[] callStack;
+		private final double returnValue;
+		private final boolean pendingExit;
+
+		private State(Machine machine){
+			pc = machine.pc;
+			stack = Arrays.copyOf(machine.stack, machine.sp);
+			variables = machine.variables.clone();
+			fp = machine.fp;
+			function = machine.function;
+			callStack = Arrays.copyOf(machine.callStack, machine.csp);
+			returnValue = machine.returnValue;
+			loopDepth = machine.loopDepth;
+			pendingExit = machine.pendingExit;
+		}
+	}
+
+	/**
+	 * Saves the registers held in local variables by <code>resume()</code>.
+	 * @param pc
+	 * @param sp
+	 * @return true, so actions can <code>return suspend(pc, sp)</code>
+	 */
+	private boolean suspend(int pc, int sp){
+		this.pc = pc;
+		this.sp = sp;
+		return true;
+	}
+}
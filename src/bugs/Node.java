@@ -0,0 +1,1010 @@
+package bugs;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import tree.Tree;
+
+/**
+ * Typed form of the statements and expressions a Bug runs, converted once from its AST. Each kind of
+ * statement or expression is its own immutable class with final fields, and runs itself through a
+ * virtual method, so running the program never looks up the children of a Tree.
+ * Used by Bugs in <code>Interpreter.Mode.TYPED</code>.
+ * <p>
+ * Variables are resolved while converting, as <code>Compiler</code> resolves them: x, y and angle, the
+ * parameters of the function being run, the Bug's variables and the Allbugs variables each have their own
+ * kind of node, which reads a field or a slot. Only a name that is a parameter of another function is still
+ * looked up by name among the active calls, because Bugs scopes variables dynamically.
+ * <p>
+ * Nodes behave like <code>Bug.interpret(Tree&ltToken&gt)</code>, except that (as in compiled code) every
+ * operand is evaluated exactly once. Function calls are resolved while converting, and problems such as
+ * an undefined function or color are only reported if the statement is reached.
+ * <p>
+ * The hierarchy is sealed: every class of it is nested in this one, the abstract classes permit only
+ * those subclasses and the others are final, so no other class can add a kind of node.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+abstract sealed class Node {
+
+	/**
+	 * Converts the parts of a Bug that run into nodes.
+	 * @param bug - "Bug" tree
+	 * @param allbugsFunctions - "function" trees of the program's Allbugs code, by name
+	 * @param allbugsVariables - names of the program's Allbugs variables, in the order of <code>Interpreter.getAllbugsValues()</code>
+	 * @return the Bug's program
+	 */
+	static Program convert(Tree<Token> bug, Map<String, Tree<Token>> allbugsFunctions, String[] allbugsVariables){
+		//the Bug's own functions take priority over Allbugs functions, and a later definition over an earlier one
+		LinkedHashMap<String, Tree<Token>> definitions = new LinkedHashMap<String, Tree<Token>>(allbugsFunctions);
+		Tree<Token> bugFunctions = bug.getChild(4);
+		for (int i = 0; i < bugFunctions.getNumberOfChildren(); i++){
+			definitions.put(bugFunctions.getChild(i).getChild(0).getValue().value, bugFunctions.getChild(i));
+		}
+		//Bug variables are given slots up front, so they are already defined (as 0.0) when the code starts
+		ArrayList<String> names = new ArrayList<String>();
+		Tree<Token> varList = bug.getChild(1);
+		for (int i = 0; i < varList.getNumberOfChildren(); i++){
+			Tree<Token> var = varList.getChild(i);
+			for (int j = 0; j < var.getNumberOfChildren(); j++){
+				if (!names.contains(var.getChild(j).getValue().value))
+					names.add(var.getChild(j).getValue().value);
+			}
+		}
+		String[] variables = names.toArray(new String[names.size()]);
+		Converter converter = new Converter(definitions, variables, allbugsVariables);
+		int index = 0;
+		for (Tree<Token> function : definitions.values()){
+			converter.functions[index++] = converter.function(function);
+		}
+		Tree<Token> initially = bug.getChild(2);
+		return new Program(variables, initially.getNumberOfChildren() > 0 ? converter.block(initially.getChild(0)) : new Block(new Statement[0]),
+				converter.block(bug.getChild(3)));
+	}
+
+	/**
+	 * Converts the trees of one Bug, resolving each call against the same table of functions.
+	 */
+	private static final class Converter {
+		private final HashMap<String, Tree<Token>> definitions = new HashMap<String, Tree<Token>>(); //functions that can be called, by name
+		private final HashMap<String, Integer> indices = new HashMap<String, Integer>(); //index in functions of each function
+		private final Function[] functions; //filled in once every body has been converted
+		private final HashMap<String, Integer> variableSlots = new HashMap<String, Integer>(); //slots of the Bug's variables
+		private final HashMap<String, Integer> allbugsSlots = new HashMap<String, Integer>(); //slots of the Allbugs variables
+		private final HashSet<String> parameterNames = new HashSet<String>(); //every name used as a parameter by a function that can be called
+		private String[] currentParams; //parameters of the function being converted, null outside functions
+
+		/**
+		 * Constructor.
+		 * @param definitions - "function" trees that can be called, by name
+		 * @param variables - names of the Bug's variables, in slot order
+		 * @param allbugsVariables - names of the Allbugs variables, in slot order
+		 */
+		Converter(LinkedHashMap<String, Tree<Token>> definitions, String[] variables, String[] allbugsVariables){
+			for (String name : definitions.keySet()){
+				indices.put(name, indices.size());
+			}
+			this.definitions.putAll(definitions);
+			functions = new Function[definitions.size()];
+			for (int i = 0; i < variables.length; i++){
+				variableSlots.put(variables[i], i);
+			}
+			for (int i = 0; i < allbugsVariables.length; i++){
+				allbugsSlots.put(allbugsVariables[i], i);
+			}
+			for (Tree<Token> function : definitions.values()){
+				Tree<Token> params = function.getChild(1);
+				for (int i = 0; i < params.getNumberOfChildren(); i++){
+					parameterNames.add(params.getChild(i).getValue().value);
+				}
+			}
+		}
+
+		/**
+		 * Converts a "function" tree.
+		 * @param tree
+		 * @return function
+		 */
+		Function function(Tree<Token> tree){
+			Tree<Token> params = tree.getChild(1);
+			String[] names = new String[params.getNumberOfChildren()];
+			for (int i = 0; i < names.length; i++){
+				names[i] = params.getChild(i).getValue().value;
+			}
+			currentParams = names;
+			try {
+				return new Function(tree.getChild(0).getValue().value, names, block(tree.getChild(2)));
+			}
+			finally {
+				currentParams = null;
+			}
+		}
+
+		/**
+		 * Resolves a variable the way <code>Bug.fetch(String)</code> and <code>Bug.store(String, Double)</code>
+		 * would find it from the code being converted.
+		 * @param name
+		 * @return variable
+		 */
+		Variable variable(String name){
+			switch (name){
+				case ("x"):
+					return new Builtin(name, Bytecode.X);
+				case ("y"):
+					return new Builtin(name, Bytecode.Y);
+				case ("angle"):
+					return new Builtin(name, Bytecode.ANGLE);
+				default:
+			}
+			if (currentParams != null){
+				//if a name is repeated the last one wins, as it does in FrameStack
+				for (int i = currentParams.length - 1; i >= 0; i--){
+					if (currentParams[i].equals(name))
+						return new Local(name, i);
+				}
+			}
+			Variable outside;
+			if (variableSlots.containsKey(name))
+				outside = new BugVariable(name, variableSlots.get(name));
+			else if (allbugsSlots.containsKey(name))
+				outside = new AllbugsVariable(name, allbugsSlots.get(name));
+			else
+				outside = new Undefined(name);
+			//a function sees the parameters of the functions that called it
+			if (currentParams != null && parameterNames.contains(name))
+				return new Dynamic(name, outside);
+			return outside;
+		}
+
+		/**
+		 * Converts a "block" tree.
+		 * @param tree
+		 * @return block
+		 */
+		Block block(Tree<Token> tree){
+			Statement[] statements = new Statement[tree.getNumberOfChildren()];
+			for (int i = 0; i < statements.length; i++){
+				statements[i] = statement(tree.getChild(i));
+			}
+			return new Block(statements);
+		}
+
+		/**
+		 * Converts a statement.
+		 * @param tree
+		 * @return statement
+		 * @throws IllegalArgumentException if the tree is not a statement
+		 */
+		Statement statement(Tree<Token> tree){
+			switch (tree.getValue().value){
+				case ("move"):
+					return new Move(expression(tree.getChild(0)));
+				case ("moveto"):
+					return new MoveTo(expression(tree.getChild(0)), expression(tree.getChild(1)));
+				case ("turn"):
+					return new Turn(expression(tree.getChild(0)));
+				case ("turnto"):
+					return new TurnTo(expression(tree.getChild(0)));
+				case ("line"):
+					return new Line(expression(tree.getChild(0)), expression(tree.getChild(1)),
+							expression(tree.getChild(2)), expression(tree.getChild(3)));
+				case ("assign"):
+					return new Assign(variable(tree.getChild(0).getValue().value), expression(tree.getChild(1)));
+				case ("return"):
+					return new Return(expression(tree.getChild(0)));
+				case ("loop"):
+					return new Loop(block(tree.getChild(0)));
+				case ("exit"):
+					return new Exit(expression(tree.getChild(0)));
+				case ("switch"):
+					Case[] cases = new Case[tree.getNumberOfChildren()];
+					for (int i = 0; i < cases.length; i++){
+						cases[i] = new Case(expression(tree.getChild(i).getChild(0)), block(tree.getChild(i).getChild(1)));
+					}
+					return new Switch(cases);
+				case ("color"):
+					try {
+						return new SetColor(Bug.toColor(tree.getChild(0).getValue().value), null);
+					}
+					catch (RuntimeException e){
+						return new SetColor(null, e.getMessage());
+					}
+				case ("call"):
+					return new Do(expression(tree));
+				case ("block"):
+					return block(tree);
+				default:
+					throw new IllegalArgumentException("Not a statement: " + tree.getValue().value);
+			}
+		}
+
+		/**
+		 * Converts an expression.
+		 * @param tree
+		 * @return expression
+		 * @throws IllegalArgumentException if the tree is not an expression
+		 */
+		Expression expression(Tree<Token> tree){
+			if (tree.getNumberOfChildren() == 0){
+				if (tree.getValue().type == Token.Type.NUMBER)
+					return new Constant(tree.getValue().number);
+				return variable(tree.getValue().value);
+			}
+			String value = tree.getValue().value;
+			if (tree.getNumberOfChildren() == 1 && value.equals("+"))
+				return expression(tree.getChild(0));
+			if (tree.getNumberOfChildren() == 1 && value.equals("-"))
+				return new Negate(expression(tree.getChild(0)));
+			switch (value){
+				case ("call"):
+					return call(tree);
+				case ("."):
+					return new Dot(tree.getChild(0).getValue().value, tree.getChild(1).getValue().value);
+				default:
+					for (Operator operator : Operator.values()){
+						if (operator.symbol.equals(value))
+							return new BinaryOp(operator, expression(tree.getChild(0)), expression(tree.getChild(1)));
+					}
+					throw new IllegalArgumentException("Not an expression: " + value);
+			}
+		}
+
+		/**
+		 * Converts a "call" tree, checking that the function can be called with the arguments given as
+		 * <code>Bug.evaluateCall(Tree&ltToken&gt)</code> does.
+		 * @param tree
+		 * @return call
+		 */
+		Expression call(Tree<Token> tree){
+			String name = tree.getChild(0).getValue().value;
+			Tree<Token> args = tree.getChild(1);
+			//the 2 special functions take the name of a Bug
+			if (name.equals("distance") || name.equals("direction")){
+				String bug = args.getNumberOfChildren() == 0 ? null : args.getChild(0).getValue().value;
+				return name.equals("distance") ? new Distance(bug) : new Direction(bug);
+			}
+			Expression[] arguments = new Expression[args.getNumberOfChildren()];
+			for (int i = 0; i < arguments.length; i++){
+				arguments[i] = expression(args.getChild(i));
+			}
+			Tree<Token> function = definitions.get(name);
+			if (function == null)
+				return new Call(arguments, functions, -1, -1, "Function not defined!");
+			Tree<Token> params = function.getChild(1);
+			if (arguments.length != params.getNumberOfChildren())
+				return new Call(arguments, functions, -1, -1, "Function call does not match number of arguments in function!");
+			for (int i = 0; i < arguments.length; i++){
+				String param = params.getChild(i).getValue().value;
+				if (param.equals("x") || param.equalsIgnoreCase("y") || param.equals("angle"))
+					return new Call(arguments, functions, indices.get(name), i, "Trying to declare local var " + param + " in function " + name);
+			}
+			return new Call(arguments, functions, indices.get(name), -1, null);
+		}
+	}
+
+	/**
+	 * The parts of a Bug's program that run: its initialization block, then its main block.
+	 */
+	static final class Program extends Node {
+		final String[] variables; //names of the Bug's variables, in slot order
+		final Block initially;
+		final Block block;
+
+		Program(String[] variables, Block initially, Block block){
+			this.variables = variables;
+			this.initially = initially;
+			this.block = block;
+		}
+
+		/**
+		 * Runs the program to its end.
+		 * @param bug
+		 */
+		void run(Bug bug){
+			initially.execute(bug);
+			block.execute(bug);
+		}
+
+		/**
+		 * Finds the slot of one of the Bug's variables, for another Bug using dot notation.
+		 * @param name
+		 * @return slot, or -1 if the Bug has no such variable
+		 */
+		int variableSlot(String name){
+			for (int i = variables.length - 1; i >= 0; i--){
+				if (variables[i].equals(name))
+					return i;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * A function that can be called: its parameters and its body.
+	 */
+	static final class Function extends Node {
+		final String name;
+		final String[] params;
+		final Block body;
+
+		Function(String name, String[] params, Block body){
+			this.name = name;
+			this.params = params;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * A command found in a block.
+	 */
+	abstract static sealed class Statement extends Node {
+
+		/**
+		 * Runs the statement.
+		 * @param bug - Bug running it
+		 * @return how the statement completed: <code>Bug.NORMAL</code>, <code>Bug.RETURNED</code> or <code>Bug.EXITED</code>
+		 */
+		abstract int execute(Bug bug);
+	}
+
+	/**
+	 * A part of a statement that has a value.
+	 */
+	abstract static sealed class Expression extends Node {
+
+		/**
+		 * Computes the value.
+		 * @param bug - Bug whose variables are used
+		 * @return value
+		 */
+		abstract double evaluate(Bug bug);
+	}
+
+	/**
+	 * Statements run in order until one returns or exits.
+	 */
+	static final class Block extends Statement {
+		final Statement[] statements;
+
+		Block(Statement[] statements){
+			this.statements = statements;
+		}
+
+		@Override
+		int execute(Bug bug){
+			for (Statement statement : statements){
+				//a killed Bug skips every statement
+				if (bug.isKilled())
+					return Bug.NORMAL;
+				int completion = statement.execute(bug);
+				//an exit from a function called by the statement ends the block just like an exit in it
+				if (completion == Bug.EXITED || bug.hasPendingExit())
+					return Bug.EXITED;
+				//a Bugs return statement only ends the block it is in
+				if (completion == Bug.RETURNED)
+					return Bug.NORMAL;
+			}
+			return Bug.NORMAL;
+		}
+	}
+
+	/**
+	 * "move" statement.
+	 */
+	static final class Move extends Statement {
+		final Expression distance;
+
+		Move(Expression distance){
+			this.distance = distance;
+		}
+
+		@Override
+		int execute(Bug bug){
+			bug.moveBy(distance.evaluate(bug));
+			bug.completeAction();
+			return Bug.NORMAL;
+		}
+	}
+
+	/**
+	 * "moveto" statement.
+	 */
+	static final class MoveTo extends Statement {
+		final Expression x;
+		final Expression y;
+
+		MoveTo(Expression x, Expression y){
+			this.x = x;
+			this.y = y;
+		}
+
+		@Override
+		int execute(Bug bug){
+			double newX = x.evaluate(bug);
+			bug.moveTo(newX, y.evaluate(bug));
+			bug.completeAction();
+			return Bug.NORMAL;
+		}
+	}
+
+	/**
+	 * "turn" statement.
+	 */
+	static final class Turn extends Statement {
+		final Expression degrees;
+
+		Turn(Expression degrees){
+			this.degrees = degrees;
+		}
+
+		@Override
+		int execute(Bug bug){
+			bug.turnBy(degrees.evaluate(bug));
+			bug.completeAction();
+			return Bug.NORMAL;
+		}
+	}
+
+	/**
+	 * "turnto" statement.
+	 */
+	static final class TurnTo extends Statement {
+		final Expression degrees;
+
+		TurnTo(Expression degrees){
+			this.degrees = degrees;
+		}
+
+		@Override
+		int execute(Bug bug){
+			bug.turnTo(degrees.evaluate(bug));
+			bug.completeAction();
+			return Bug.NORMAL;
+		}
+	}
+
+	/**
+	 * "line" statement.
+	 */
+	static final class Line extends Statement {
+		final Expression x1;
+		final Expression y1;
+		final Expression x2;
+		final Expression y2;
+
+		Line(Expression x1, Expression y1, Expression x2, Expression y2){
+			this.x1 = x1;
+			this.y1 = y1;
+			this.x2 = x2;
+			this.y2 = y2;
+		}
+
+		@Override
+		int execute(Bug bug){
+			double a = x1.evaluate(bug);
+			double b = y1.evaluate(bug);
+			double c = x2.evaluate(bug);
+			bug.drawLine(a, b, c, y2.evaluate(bug));
+			bug.completeAction();
+			return Bug.NORMAL;
+		}
+	}
+
+	/**
+	 * "assign" statement.
+	 */
+	static final class Assign extends Statement {
+		final Variable variable;
+		final Expression value;
+
+		Assign(Variable variable, Expression value){
+			this.variable = variable;
+			this.value = value;
+		}
+
+		@Override
+		int execute(Bug bug){
+			variable.store(bug, value.evaluate(bug));
+			return Bug.NORMAL;
+		}
+	}
+
+	/**
+	 * "return" statement.
+	 */
+	static final class Return extends Statement {
+		final Expression value;
+
+		Return(Expression value){
+			this.value = value;
+		}
+
+		@Override
+		int execute(Bug bug){
+			bug.setReturnValue(value.evaluate(bug));
+			return Bug.RETURNED;
+		}
+	}
+
+	/**
+	 * "loop" statement.
+	 */
+	static final class Loop extends Statement {
+		final Block body;
+
+		Loop(Block body){
+			this.body = body;
+		}
+
+		@Override
+		int execute(Bug bug){
+			bug.enterLoop();
+			//a killed Bug skips every statement, so the loop itself has to notice
+			while (!bug.isKilled()){
+				if (body.execute(bug) == Bug.EXITED)
+					break;
+			}
+			bug.leaveLoop();
+			return Bug.NORMAL;
+		}
+	}
+
+	/**
+	 * "exit if" statement.
+	 */
+	static final class Exit extends Statement {
+		final Expression condition;
+
+		Exit(Expression condition){
+			this.condition = condition;
+		}
+
+		@Override
+		int execute(Bug bug){
+			//outside any loop there is nothing to exit
+			if (Bug.isTrue(condition.evaluate(bug)) && bug.isInLoop())
+				return Bug.EXITED;
+			return Bug.NORMAL;
+		}
+	}
+
+	/**
+	 * "switch" statement.
+	 */
+	static final class Switch extends Statement {
+		final Case[] cases;
+
+		Switch(Case[] cases){
+			this.cases = cases;
+		}
+
+		@Override
+		int execute(Bug bug){
+			for (Case c : cases){
+				if (Bug.isTrue(c.condition.evaluate(bug)))
+					return c.block.execute(bug);
+			}
+			return Bug.NORMAL;
+		}
+	}
+
+	/**
+	 * One case of a "switch" statement.
+	 */
+	static final class Case extends Node {
+		final Expression condition;
+		final Block block;
+
+		Case(Expression condition, Block block){
+			this.condition = condition;
+			this.block = block;
+		}
+	}
+
+	/**
+	 * "color" statement.
+	 */
+	static final class SetColor extends Statement {
+		final Color color; //null for "none"
+		final String error; //message to report instead, if the color is not valid
+
+		SetColor(Color color, String error){
+			this.color = color;
+			this.error = error;
+		}
+
+		@Override
+		int execute(Bug bug){
+			if (error != null)
+				throw new RuntimeException(error);
+			bug.setColor(color);
+			return Bug.NORMAL;
+		}
+	}
+
+	/**
+	 * "do" statement, calling a function for what it does rather than its value.
+	 */
+	static final class Do extends Statement {
+		final Expression call;
+
+		Do(Expression call){
+			this.call = call;
+		}
+
+		@Override
+		int execute(Bug bug){
+			call.evaluate(bug);
+			return Bug.NORMAL;
+		}
+	}
+
+	/**
+	 * A number.
+	 */
+	static final class Constant extends Expression {
+		final double value;
+
+		Constant(double value){
+			this.value = value;
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			return value;
+		}
+	}
+
+	/**
+	 * A variable, which can be read and assigned. Each kind of variable is found in its own way.
+	 */
+	abstract static sealed class Variable extends Expression {
+		final String name;
+
+		Variable(String name){
+			this.name = name;
+		}
+
+		/**
+		 * Assigns a value to this variable.
+		 * @param bug - the Bug running the program
+		 * @param value
+		 */
+		abstract void store(Bug bug, double value);
+	}
+
+	/**
+	 * x, y or angle.
+	 */
+	static final class Builtin extends Variable {
+		final int variable; //Bytecode.X, Bytecode.Y or Bytecode.ANGLE
+
+		Builtin(String name, int variable){
+			super(name);
+			this.variable = variable;
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			return bug.fetchBuiltin(variable);
+		}
+
+		@Override
+		void store(Bug bug, double value){
+			bug.storeBuiltin(variable, value);
+		}
+	}
+
+	/**
+	 * A parameter of the function being run.
+	 */
+	static final class Local extends Variable {
+		final int slot; //position among the function's parameters
+
+		Local(String name, int slot){
+			super(name);
+			this.slot = slot;
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			return bug.fetchLocal(slot);
+		}
+
+		@Override
+		void store(Bug bug, double value){
+			bug.storeLocal(slot, value);
+		}
+	}
+
+	/**
+	 * One of the Bug's variables.
+	 */
+	static final class BugVariable extends Variable {
+		final int slot; //position in Program.variables
+
+		BugVariable(String name, int slot){
+			super(name);
+			this.slot = slot;
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			return bug.fetchVariable(slot);
+		}
+
+		@Override
+		void store(Bug bug, double value){
+			bug.storeVariable(slot, value);
+		}
+	}
+
+	/**
+	 * An Allbugs variable.
+	 */
+	static final class AllbugsVariable extends Variable {
+		final int slot; //position in Interpreter.getAllbugsValues()
+
+		AllbugsVariable(String name, int slot){
+			super(name);
+			this.slot = slot;
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			return bug.fetchAllbugs(slot);
+		}
+
+		@Override
+		void store(Bug bug, double value){
+			bug.storeAllbugs(slot, value);
+		}
+	}
+
+	/**
+	 * A name that is a parameter of another function, so it is found among the parameters of the
+	 * active calls when one of them has it, and as an ordinary variable otherwise.
+	 */
+	static final class Dynamic extends Variable {
+		final Variable outside; //the variable found when no active call has the parameter
+
+		Dynamic(String name, Variable outside){
+			super(name);
+			this.outside = outside;
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			int parameter = bug.findParameter(name);
+			return parameter >= 0 ? bug.fetchParameter(parameter) : outside.evaluate(bug);
+		}
+
+		@Override
+		void store(Bug bug, double value){
+			int parameter = bug.findParameter(name);
+			if (parameter >= 0)
+				bug.storeParameter(parameter, value);
+			else
+				outside.store(bug, value);
+		}
+	}
+
+	/**
+	 * A name that is not a variable, which is an error only if it is reached.
+	 */
+	static final class Undefined extends Variable {
+
+		Undefined(String name){
+			super(name);
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			throw new RuntimeException("Variable \"" + name + "\" could not be found");
+		}
+
+		@Override
+		void store(Bug bug, double value){
+			throw new RuntimeException("Variable \"" + name + "\" could not be found");
+		}
+	}
+
+	/**
+	 * A variable of another Bug, as in <code>Sally.x</code>.
+	 */
+	static final class Dot extends Expression {
+		final String bug;
+		final String variable;
+
+		Dot(String bug, String variable){
+			this.bug = bug;
+			this.variable = variable;
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			return bug.fetchDot(this.bug, variable);
+		}
+	}
+
+	/**
+	 * Unary minus.
+	 */
+	static final class Negate extends Expression {
+		final Expression operand;
+
+		Negate(Expression operand){
+			this.operand = operand;
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			return 0 - operand.evaluate(bug);
+		}
+	}
+
+	/**
+	 * The arithmetic and comparison operators, which compare with the same tolerance as the Bug does.
+	 */
+	static enum Operator {
+		ADD("+"){
+			@Override
+			double apply(double a, double b){
+				return a + b;
+			}
+		},
+		SUBTRACT("-"){
+			@Override
+			double apply(double a, double b){
+				return a - b;
+			}
+		},
+		MULTIPLY("*"){
+			@Override
+			double apply(double a, double b){
+				return a * b;
+			}
+		},
+		DIVIDE("/"){
+			@Override
+			double apply(double a, double b){
+				return a / b;
+			}
+		},
+		LESS("<"){
+			@Override
+			double apply(double a, double b){
+				return b - a > 0.001 ? 1.0 : 0.0;
+			}
+		},
+		LESS_OR_EQUAL("<="){
+			@Override
+			double apply(double a, double b){
+				return b - a > -0.001 ? 1.0 : 0.0;
+			}
+		},
+		EQUAL("="){
+			@Override
+			double apply(double a, double b){
+				return a - b > 0.001 || a - b < -0.001 ? 0.0 : 1.0;
+			}
+		},
+		NOT_EQUAL("!="){
+			@Override
+			double apply(double a, double b){
+				return a - b > 0.001 || a - b < -0.001 ? 1.0 : 0.0;
+			}
+		},
+		GREATER(">"){
+			@Override
+			double apply(double a, double b){
+				return a - b > 0.001 ? 1.0 : 0.0;
+			}
+		},
+		GREATER_OR_EQUAL(">="){
+			@Override
+			double apply(double a, double b){
+				return a - b > -0.001 ? 1.0 : 0.0;
+			}
+		};
+
+		final String symbol; //how the operator is written in a program
+
+		Operator(String symbol){
+			this.symbol = symbol;
+		}
+
+		/**
+		 * Applies the operator.
+		 * @param a - left operand
+		 * @param b - right operand
+		 * @return value, 1.0 or 0.0 for a comparison
+		 */
+		abstract double apply(double a, double b);
+	}
+
+	/**
+	 * An operator with two operands.
+	 */
+	static final class BinaryOp extends Expression {
+		final Operator operator;
+		final Expression left;
+		final Expression right;
+
+		BinaryOp(Operator operator, Expression left, Expression right){
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			double a = left.evaluate(bug);
+			return operator.apply(a, right.evaluate(bug));
+		}
+	}
+
+	/**
+	 * A call to one of the program's functions.
+	 */
+	static final class Call extends Expression {
+		final Expression[] args;
+		final Function[] functions; //every function of the Bug, shared by all its calls
+		final int function; //index in functions of the function called, -1 if the call cannot be made
+		final int badParameter; //index of the first parameter that cannot be declared, -1 if there is none
+		final String error; //message to report if the call cannot be made, or at badParameter
+
+		Call(Expression[] args, Function[] functions, int function, int badParameter, String error){
+			this.args = args;
+			this.functions = functions;
+			this.function = function;
+			this.badParameter = badParameter;
+			this.error = error;
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			return bug.call(this);
+		}
+	}
+
+	/**
+	 * A call to the special function <code>distance</code>.
+	 */
+	static final class Distance extends Expression {
+		final String bug; //name of the other Bug, null if none was given
+
+		Distance(String bug){
+			this.bug = bug;
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			if (this.bug == null)
+				throw new RuntimeException("Function distance requires the name of a Bug.");
+			return bug.distance(this.bug);
+		}
+	}
+
+	/**
+	 * A call to the special function <code>direction</code>.
+	 */
+	static final class Direction extends Expression {
+		final String bug; //name of the other Bug, null if none was given
+
+		Direction(String bug){
+			this.bug = bug;
+		}
+
+		@Override
+		double evaluate(Bug bug){
+			if (this.bug == null)
+				throw new RuntimeException("Function direction requires the name of a Bug.");
+			return bug.direction(this.bug);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import tree.Tree;
+
+/**
+ * Tests for Node class of Bugs language Interpreter. Each program is run once with the tree
+ * walking Interpreter and once as typed nodes, and both runs must draw exactly the same lines.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class NodeTest {
+
+	@Test
+	public void testConvertsExpressions(){
+		Node.Program program = Node.convert(bug("Bug A {\n" +
+				"    y = y + 7 * -x\n" +
+				"    do f(1)\n" +
+				"    define f using n {\n" +
+				"        return distance(B) >= +n\n" +
+				"    }\n" +
+				"}\n"), new HashMap<String, Tree<Token>>(), new String[0]);
+		Node.Assign assign = (Node.Assign) program.block.statements[0];
+		assertEquals("y", assign.variable.name);
+		assertTrue(assign.variable instanceof Node.Builtin);
+		Node.BinaryOp sum = (Node.BinaryOp) assign.value;
+		assertEquals(Node.Operator.ADD, sum.operator);
+		assertEquals("y", ((Node.Variable) sum.left).name);
+		Node.BinaryOp product = (Node.BinaryOp) sum.right;
+		assertEquals(Node.Operator.MULTIPLY, product.operator);
+		assertEquals(7.0, ((Node.Constant) product.left).value, 0);
+		assertTrue(product.right instanceof Node.Negate);
+		//the call is resolved to the function it refers to
+		Node.Call call = (Node.Call) ((Node.Do) program.block.statements[1]).call;
+		Node.Function function = call.functions[call.function];
+		assertEquals("f", function.name);
+		Node.BinaryOp comparison = (Node.BinaryOp) ((Node.Return) function.body.statements[0]).value;
+		assertEquals(Node.Operator.GREATER_OR_EQUAL, comparison.operator);
+		assertEquals("B", ((Node.Distance) comparison.left).bug);
+		//unary plus does nothing
+		assertEquals("n", ((Node.Variable) comparison.right).name);
+		assertEquals(0, ((Node.Local) comparison.right).slot);
+	}
+
+	@Test
+	public void testResolvesVariables(){
+		Node.Program program = Node.convert(bug("Bug A {\n" +
+				"    var a, n\n" +
+				"    a = b + n\n" +
+				"    c = 1\n" +
+				"    do f(1, 2)\n" +
+				"    do g(3)\n" +
+				"    define f using m, n {\n" +
+				"        a = n + m\n" +
+				"    }\n" +
+				"    define g using q {\n" +
+				"        b = n + q\n" +
+				"    }\n" +
+				"}\n"), new HashMap<String, Tree<Token>>(), new String[] {"z", "b"});
+		assertArrayEquals(new String[] {"a", "n"}, program.variables);
+		//outside functions no parameter can be active
+		Node.Assign assign = (Node.Assign) program.block.statements[0];
+		assertEquals(0, ((Node.BugVariable) assign.variable).slot);
+		Node.BinaryOp sum = (Node.BinaryOp) assign.value;
+		assertEquals(1, ((Node.AllbugsVariable) sum.left).slot);
+		assertEquals(1, ((Node.BugVariable) sum.right).slot);
+		assertTrue(((Node.Assign) program.block.statements[1]).variable instanceof Node.Undefined);
+		//a function's own parameters are slots of its call
+		sum = (Node.BinaryOp) ((Node.Assign) called(program.block.statements[2]).body.statements[0]).value;
+		assertEquals(1, ((Node.Local) sum.left).slot);
+		assertEquals(0, ((Node.Local) sum.right).slot);
+		//a parameter of another function is found by name, then as a variable of the Bug
+		Node.Assign other = (Node.Assign) called(program.block.statements[3]).body.statements[0];
+		assertTrue(other.variable instanceof Node.AllbugsVariable);
+		Node.Dynamic n = (Node.Dynamic) ((Node.BinaryOp) other.value).left;
+		assertEquals("n", n.name);
+		assertEquals(1, ((Node.BugVariable) n.outside).slot);
+	}
+
+	@Test
+	public void testBugFunctionsHideAllbugsFunctions(){
+		//the Bug's own function is called rather than the Allbugs one of the same name
+		assertSameDrawing("Allbugs {\n" +
+				"    define step using n {\n" +
+				"        move 100\n" +
+				"    }\n" +
+				"}\n" +
+				"Bug Sally {\n" +
+				"    do step(3)\n" +
+				"    define step using n {\n" +
+				"        move n\n" +
+				"    }\n" +
+				"}\n" +
+				"Bug Fred {\n" +
+				"    do step(3)\n" +
+				"}\n");
+	}
+
+	@Test
+	public void testControlFlow(){
+		//a return only leaves its block, an exit in a function leaves the loop it was called from
+		assertSameDrawing("Allbugs {\n" +
+				"    var total\n" +
+				"    define step using n {\n" +
+				"        move n\n" +
+				"        total = total + n\n" +
+				"        exit if total > 30\n" +
+				"        turn 5\n" +
+				"    }\n" +
+				"    define pick using n {\n" +
+				"        switch {\n" +
+				"            case n > 2\n" +
+				"                return 7\n" +
+				"                move 1000\n" +
+				"        }\n" +
+				"        move n\n" +
+				"    }\n" +
+				"}\n" +
+				"Bug Walker {\n" +
+				"    var i\n" +
+				"    initially {\n" +
+				"        x = 10\n" +
+				"        y = 10\n" +
+				"        color green\n" +
+				"    }\n" +
+				"    loop {\n" +
+				"        do step(3)\n" +
+				"        turn 15\n" +
+				"    }\n" +
+				"    exit if 1\n" +
+				"    loop {\n" +
+				"        i = i + 1\n" +
+				"        loop {\n" +
+				"            switch {\n" +
+				"                case i = 3\n" +
+				"                    exit if 1\n" +
+				"                    move 500\n" +
+				"            }\n" +
+				"            exit if i != 3\n" +
+				"        }\n" +
+				"        moveto pick(i), i\n" +
+				"        color none\n" +
+				"        exit if i >= 5\n" +
+				"        color red\n" +
+				"    }\n" +
+				"    line total, i, Walker.x, Walker.angle\n" +
+				"}\n");
+	}
+
+	@Test
+	public void testRecursionAndDynamicScoping(){
+		assertSameDrawing("Allbugs {\n" +
+				"    var shared\n" +
+				"    define grow {\n" +
+				"        n = n + 1\n" +
+				"        shared = shared + n\n" +
+				"        move n\n" +
+				"    }\n" +
+				"}\n" +
+				"Bug Sally {\n" +
+				"    var n\n" +
+				"    n = 100\n" +
+				"    do grow()\n" +
+				"    do spiral(6, 3)\n" +
+				"    moveto n, shared\n" +
+				"    define spiral using depth, n {\n" +
+				"        switch {\n" +
+				"            case depth > 0\n" +
+				"                do grow()\n" +
+				"                turn 360 / depth\n" +
+				"                do spiral(depth - 1, n * 2)\n" +
+				"        }\n" +
+				"    }\n" +
+				"}\n");
+	}
+
+	@Test
+	public void testErrorsOnlyWhenReached(){
+		assertSameDrawing("Bug Careful {\n" +
+				"    switch {\n" +
+				"        case 0\n" +
+				"            a = undefined(b)\n" +
+				"            color move\n" +
+				"            do twice(1)\n" +
+				"    }\n" +
+				"    move 10\n" +
+				"    do twice(1, 2)\n" +
+				"    move 20\n" +
+				"    define twice using a, b {\n" +
+				"        move a + b\n" +
+				"    }\n" +
+				"}\n");
+	}
+
+	//HELPER methods
+	/**
+	 * Returns the function a "do" statement calls.
+	 * @param statement
+	 * @return function
+	 */
+	private Node.Function called(Node.Statement statement){
+		Node.Call call = (Node.Call) ((Node.Do) statement).call;
+		return call.functions[call.function];
+	}
+
+	/**
+	 * Parses a program and returns its first Bug.
+	 * @param program
+	 * @return "Bug" tree
+	 */
+	private Tree<Token> bug(String program){
+		return TestPrograms.parse(program).getChild(1).getChild(0);
+	}
+
+	/**
+	 * Runs the program interpreted and as typed nodes and compares the lines drawn.
+	 * @param program
+	 */
+	private void assertSameDrawing(String program){
+		TestPrograms.assertSameDrawing(program, Interpreter.Mode.INTERPRETED, Interpreter.Mode.TYPED);
+	}
+}
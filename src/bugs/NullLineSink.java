@@ -0,0 +1,35 @@
+package bugs;
+
+import java.awt.Color;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LineSink that throws every line away and only counts them. Useful for running a program for its
+ * side effects, or for timing the Interpreter without the cost of keeping or writing lines.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class NullLineSink implements LineSink {
+	private final AtomicLong count = new AtomicLong(); //lines added so far
+
+	@Override
+	public void add(double x1, double y1, double x2, double y2, Color color){
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of lines added so far.
+	 * @return count
+	 */
+	public long getCount(){
+		return count.get();
+	}
+
+	@Override
+	public void flush(){
+	}
+
+	@Override
+	public void close(){
+	}
+}
@@ -0,0 +1,224 @@
+package bugs;
+
+import tree.Tree;
+
+/**
+ * Simplifies the AST of a Bugs program before it is interpreted or compiled, without changing
+ * what the program does:
+ * <ul>
+ * <li>arithmetic and comparisons whose operands are all numbers are replaced by their value,
+ * computed exactly as <code>Bug.evaluate</code> would, so <code>y = y + 7 * 2</code> becomes
+ * <code>y = y + 14</code>;</li>
+ * <li><code>switch</code> cases whose condition is always false are removed, as are the cases after one
+ * whose condition is always true, and a <code>switch</code> left with no cases;</li>
+ * <li>an <code>exit if</code> that never exits is removed, and one that always exits gets the condition 1;</li>
+ * <li>statements after a <code>return</code>, or after an <code>exit if</code> that always exits a loop of the
+ * same block, are removed, since they can never run.</li>
+ * </ul>
+ * Nothing with a side effect, such as a function call, is ever removed or evaluated.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class Optimizer {
+
+	/**
+	 * Not instantiated.
+	 */
+	private Optimizer(){
+	}
+
+	/**
+	 * Returns an optimized copy of a program. The program's own Tree is not changed.
+	 * @param program - AST of a whole program, as built by the Parser
+	 * @return the optimized AST
+	 */
+	public static Tree<Token> optimize(Tree<Token> program){
+		return optimize(program, false);
+	}
+
+	/**
+	 * Optimizes any part of a program.
+	 * @param tree
+	 * @param inLoop - whether tree is inside a loop of the same Bug or function
+	 * @return the optimized copy of tree, or null if tree is a statement that does nothing
+	 */
+	private static Tree<Token> optimize(Tree<Token> tree, boolean inLoop){
+		if (tree.getNumberOfChildren() == 0)
+			return node(tree.getValue());
+		switch (tree.getValue().value){
+			case ("+"):
+			case ("-"):
+			case ("*"):
+			case ("/"):
+			case ("<"):
+			case ("<="):
+			case ("="):
+			case ("!="):
+			case (">"):
+			case (">="):
+				return optimizeOperation(tree);
+			case ("block"):
+				return optimizeBlock(tree, inLoop);
+			case ("switch"):
+				return optimizeSwitch(tree, inLoop);
+			case ("exit"):
+				return optimizeExit(tree);
+			case ("loop"):
+				inLoop = true;
+				break;
+			case ("Bug"):
+			case ("function"):
+				//an "exit if" in a function exits whichever loop the function was called from, if any
+				inLoop = false;
+				break;
+		}
+		Tree<Token> optimized = node(tree.getValue());
+		for (int i = 0; i < tree.getNumberOfChildren(); i++){
+			optimized.addChild(optimize(tree.getChild(i), inLoop));
+		}
+		return optimized;
+	}
+
+	/**
+	 * Optimizes an arithmetic or comparison tree, replacing it with its value if every operand is a number.
+	 * @param tree
+	 * @return the optimized copy of tree
+	 */
+	private static Tree<Token> optimizeOperation(Tree<Token> tree){
+		Tree<Token> optimized = node(tree.getValue());
+		boolean constant = true;
+		for (int i = 0; i < tree.getNumberOfChildren(); i++){
+			Tree<Token> operand = optimize(tree.getChild(i), false);
+			constant &= Bug.isNumber(operand);
+			optimized.addChild(operand);
+		}
+		if (!constant)
+			return optimized;
+		double a = optimized.getChild(0).getValue().number;
+		if (optimized.getNumberOfChildren() == 1){
+			if (tree.getValue().value.equals("+"))
+				return number(a);
+			//interpreted Bugs negate with 0 - a and compiled Bugs with -a, which differ in the sign of zero
+			if (tree.getValue().value.equals("-") && a != 0)
+				return number(-a);
+			return optimized;
+		}
+		double b = optimized.getChild(1).getValue().number;
+		switch (tree.getValue().value){
+			case ("+"):
+				return number(a + b);
+			case ("-"):
+				return number(a - b);
+			case ("*"):
+				return number(a * b);
+			case ("/"):
+				return number(a / b);
+			case ("<"):
+				return truth(b - a > 0.001);
+			case ("<="):
+				return truth(b - a > -0.001);
+			case ("="):
+				return truth(!(a - b > 0.001 || a - b < -0.001));
+			case ("!="):
+				return truth(a - b > 0.001 || a - b < -0.001);
+			case (">"):
+				return truth(a - b > 0.001);
+			default:
+				return truth(a - b > -0.001);
+		}
+	}
+
+	/**
+	 * Optimizes a "block" tree, leaving out statements that do nothing and those that can never be reached.
+	 * @param tree
+	 * @param inLoop - whether the block is inside a loop of the same Bug or function
+	 * @return the optimized copy of tree
+	 */
+	private static Tree<Token> optimizeBlock(Tree<Token> tree, boolean inLoop){
+		Tree<Token> optimized = node(tree.getValue());
+		for (int i = 0; i < tree.getNumberOfChildren(); i++){
+			Tree<Token> statement = optimize(tree.getChild(i), inLoop);
+			if (statement == null)
+				continue;
+			optimized.addChild(statement);
+			//a block ends at a return, and at an exit from the loop it is in
+			if (statement.getValue().value.equals("return"))
+				break;
+			if (inLoop && statement.getValue().value.equals("exit") && Bug.isNumber(statement.getChild(0)))
+				break;
+		}
+		return optimized;
+	}
+
+	/**
+	 * Optimizes a "switch" tree, leaving out cases that can never be chosen.
+	 * @param tree
+	 * @param inLoop - whether the switch is inside a loop of the same Bug or function
+	 * @return the optimized copy of tree, or null if no case can be chosen
+	 */
+	private static Tree<Token> optimizeSwitch(Tree<Token> tree, boolean inLoop){
+		Tree<Token> optimized = node(tree.getValue());
+		for (int i = 0; i < tree.getNumberOfChildren(); i++){
+			Tree<Token> condition = optimize(tree.getChild(i).getChild(0), inLoop);
+			if (Bug.isNumber(condition) && !Bug.isTrue(condition.getValue().number))
+				continue;
+			Tree<Token> optimizedCase = node(tree.getChild(i).getValue());
+			optimizedCase.addChild(condition);
+			for (int j = 1; j < tree.getChild(i).getNumberOfChildren(); j++){
+				optimizedCase.addChild(optimize(tree.getChild(i).getChild(j), inLoop));
+			}
+			optimized.addChild(optimizedCase);
+			//the cases after one that is always chosen never are
+			if (Bug.isNumber(condition))
+				break;
+		}
+		return optimized.getNumberOfChildren() == 0 ? null : optimized;
+	}
+
+	/**
+	 * Optimizes an "exit" tree.
+	 * @param tree
+	 * @return the optimized copy of tree, always exiting if its condition is always true; null if it never exits
+	 */
+	private static Tree<Token> optimizeExit(Tree<Token> tree){
+		Tree<Token> condition = optimize(tree.getChild(0), false);
+		if (Bug.isNumber(condition)){
+			if (!Bug.isTrue(condition.getValue().number))
+				return null;
+			condition = number(1.0);
+		}
+		Tree<Token> exit = node(tree.getValue());
+		exit.addChild(condition);
+		return exit;
+	}
+
+	/**
+	 * Returns a new tree with no children.
+	 * @param value
+	 * @return tree
+	 */
+	private static Tree<Token> node(Token value){
+		//Tree's only constructor takes its children as varargs
+		@SuppressWarnings("unchecked")
+		Tree<Token>[] children = (Tree<Token>[]) new Tree<?>[0];
+		return new Tree<Token>(value, children);
+	}
+
+	/**
+	 * Returns a leaf holding a number.
+	 * @param value
+	 * @return tree
+	 */
+	private static Tree<Token> number(double value){
+		return node(new Token(value));
+	}
+
+	/**
+	 * Returns a leaf holding the value of a comparison.
+	 * @param value
+	 * @return tree holding 1 if value is true, 0 if it is false
+	 */
+	private static Tree<Token> truth(boolean value){
+		return number(value ? 1.0 : 0.0);
+	}
+}
@@ -0,0 +1,208 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import tree.Tree;
+
+/**
+ * Tests for Optimizer class of Bugs language Interpreter. Optimized programs are checked to draw
+ * exactly what the programs they were made from draw, both interpreted and compiled.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class OptimizerTest {
+
+	@Test
+	public void testFoldsConstantArithmeticAndComparisons(){
+		Tree<Token> block = bugBlock(Optimizer.optimize(TestPrograms.parse("Bug A {\n" +
+				"    y = y + 7 * 2\n" +
+				"    line 3 <= 3, 3 < 3, 10 / 4, 2 - -1\n" +
+				"    x = -0\n" +
+				"}\n")));
+		//the variable stays, only the constant part is folded
+		Tree<Token> sum = block.getChild(0).getChild(1);
+		assertEquals("+", sum.getValue().value);
+		assertEquals("y", sum.getChild(0).getValue().value);
+		assertNumber(14, sum.getChild(1));
+		Tree<Token> line = block.getChild(1);
+		assertNumber(1, line.getChild(0));
+		assertNumber(0, line.getChild(1));
+		assertNumber(2.5, line.getChild(2));
+		assertNumber(3, line.getChild(3));
+		//interpreted and compiled Bugs give zero a different sign, so it is not negated
+		assertEquals("-", block.getChild(2).getChild(1).getValue().value);
+	}
+
+	@Test
+	public void testRemovesCasesThatAreNeverChosen(){
+		Tree<Token> block = bugBlock(Optimizer.optimize(TestPrograms.parse("Bug A {\n" +
+				"    switch {\n" +
+				"        case 0\n" +
+				"            move 1\n" +
+				"        case 1 > 2\n" +
+				"            move 2\n" +
+				"        case x\n" +
+				"            move 3\n" +
+				"        case 2 > 1\n" +
+				"            move 4\n" +
+				"        case y\n" +
+				"            move 5\n" +
+				"    }\n" +
+				"    switch {\n" +
+				"        case 0.0001\n" +
+				"            move 6\n" +
+				"    }\n" +
+				"    move 7\n" +
+				"}\n")));
+		assertEquals(2, block.getNumberOfChildren());
+		Tree<Token> cases = block.getChild(0);
+		assertEquals(2, cases.getNumberOfChildren());
+		assertEquals("x", cases.getChild(0).getChild(0).getValue().value);
+		assertNumber(1, cases.getChild(1).getChild(0));
+		assertNumber(4, cases.getChild(1).getChild(1).getChild(0).getChild(0));
+		assertEquals("move", block.getChild(1).getValue().value);
+	}
+
+	@Test
+	public void testSimplifiesConstantExits(){
+		Tree<Token> block = bugBlock(Optimizer.optimize(TestPrograms.parse("Bug A {\n" +
+				"    loop {\n" +
+				"        move 1\n" +
+				"        exit if 1 > 2\n" +
+				"        exit if x > 2\n" +
+				"        exit if 3 = 3\n" +
+				"        move 2\n" +
+				"    }\n" +
+				"    return 5\n" +
+				"    move 3\n" +
+				"}\n")));
+		Tree<Token> loop = block.getChild(0).getChild(0);
+		assertEquals(3, loop.getNumberOfChildren());
+		assertEquals(">", loop.getChild(1).getChild(0).getValue().value);
+		assertNumber(1, loop.getChild(2).getChild(0));
+		//nothing after a return is ever run
+		assertEquals(2, block.getNumberOfChildren());
+	}
+
+	@Test
+	public void testExitInFunctionIsKept(){
+		//the function may be called outside any loop, where the exit does nothing and the block goes on
+		Tree<Token> program = Optimizer.optimize(TestPrograms.parse("Allbugs {\n" +
+				"    define f {\n" +
+				"        exit if 1\n" +
+				"        move 1\n" +
+				"    }\n" +
+				"}\n" +
+				"Bug A {\n" +
+				"    do f()\n" +
+				"}\n"));
+		Tree<Token> function = program.getChild(0).getChild(1).getChild(0);
+		assertEquals(2, function.getChild(2).getNumberOfChildren());
+	}
+
+	@Test
+	public void testProgramIsNotChanged(){
+		String program = "Bug A {\n    y = 2 * 3\n    exit if 0\n}\n";
+		Tree<Token> tree = TestPrograms.parse(program);
+		Optimizer.optimize(tree);
+		assertEquals(TestPrograms.parse(program).toString(), tree.toString());
+	}
+
+	@Test
+	public void testOptimizedProgramsDrawTheSame(){
+		assertSameDrawing("Allbugs {\n" +
+				"    var size\n" +
+				"    define spiral using n {\n" +
+				"        switch {\n" +
+				"            case n < 1 + 0 * 5\n" +
+				"                return 0\n" +
+				"            case 1 = 0\n" +
+				"                move 1000\n" +
+				"            case 1\n" +
+				"                move n * (2 / 4)\n" +
+				"                turn 360 / 5 - 3 * 2\n" +
+				"                exit if size > 40 + 10\n" +
+				"                do spiral(n - 1)\n" +
+				"        }\n" +
+				"        return n\n" +
+				"    }\n" +
+				"}\n" +
+				"Bug Sally {\n" +
+				"    var i\n" +
+				"    initially {\n" +
+				"        x = 100 / 2\n" +
+				"        y = 10 * 5\n" +
+				"        color red\n" +
+				"    }\n" +
+				"    loop {\n" +
+				"        size = size + 1 * 1\n" +
+				"        i = spiral(4 + 2 - 1)\n" +
+				"        switch {\n" +
+				"            case 2 >= 2 + 0.0005\n" +
+				"                color blue\n" +
+				"            case 0\n" +
+				"                color green\n" +
+				"        }\n" +
+				"        exit if 1 > 2\n" +
+				"    }\n" +
+				"    line 3 <= 3, 3 <= 3, 2 * 10, -4 - -30\n" +
+				"}\n" +
+				"Bug Fred {\n" +
+				"    var n\n" +
+				"    color blue\n" +
+				"    loop {\n" +
+				"        n = n + 1\n" +
+				"        move 2 + 3 * 0.5\n" +
+				"        turn 1 - 2 + 91\n" +
+				"        switch {\n" +
+				"            case n = 30\n" +
+				"                return 1\n" +
+				"        }\n" +
+				"        exit if n >= 10 * 10\n" +
+				"        exit if 1 != 1 + 0.00001\n" +
+				"        move 99\n" +
+				"    }\n" +
+				"}\n");
+	}
+
+	//HELPER methods
+	/**
+	 * Returns the main block of the first Bug of a program.
+	 * @param program
+	 * @return block
+	 */
+	private Tree<Token> bugBlock(Tree<Token> program){
+		return program.getChild(1).getChild(0).getChild(3);
+	}
+
+	/**
+	 * Checks that a tree is a number.
+	 * @param expected
+	 * @param tree
+	 */
+	private void assertNumber(double expected, Tree<Token> tree){
+		assertEquals(0, tree.getNumberOfChildren());
+		assertTrue(Bug.isNumber(tree));
+		assertEquals(expected, tree.getValue().number, 0);
+	}
+
+	/**
+	 * Runs a program and its optimized version both interpreted and compiled, and compares the lines drawn.
+	 * @param program
+	 */
+	private void assertSameDrawing(String program){
+		Tree<Token> tree = TestPrograms.parse(program);
+		Tree<Token> optimized = Optimizer.optimize(tree);
+		assertFalse(tree.toString().equals(optimized.toString()));
+		for (Interpreter.Mode mode : Interpreter.Mode.values()){
+			List<String> expected = TestPrograms.drawnLines(tree, mode);
+			assertFalse(expected.isEmpty());
+			assertEquals(expected, TestPrograms.drawnLines(optimized, mode));
+		}
+	}
+}
@@ -935,7 +935,7 @@ public class Parser {
                 }
                 return new Token(Token.Type.NAME, tokenizer.sval);
             case StreamTokenizer.TT_NUMBER:
-                return new Token(Token.Type.NUMBER, tokenizer.nval + "");
+                return new Token(tokenizer.nval);
             case StreamTokenizer.TT_EOL:
                 lineNumber++;
                 return new Token(Token.Type.EOL, "\n");
@@ -0,0 +1,128 @@
+package bugs;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * LineStore that keeps its lines in primitive arrays rather than as objects: four doubles of
+ * coordinates and one int ARGB color per line, 36 bytes in all. <code>get(int)</code> creates a
+ * <code>Command</code> as a view of a line; renderers should use the accessors for single fields,
+ * which read the arrays directly.
+ * <p>
+ * Appending takes a lock, which is never contended when a single Thread runs every Bug, as with the
+ * cooperative engine. Reading does not: the arrays are replaced (not changed) when they grow, through
+ * volatile fields, after the lines are copied into them, and a line is filled in before <code>size()</code>
+ * covers it, so a reader that takes the size first always finds that many complete lines in whichever
+ * arrays it then reads.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class PrimitiveLineStore extends LineStore {
+	private static final int NONE = 0; //color of invisible lines; every color a Bug can use is opaque
+
+	private volatile double[] coordinates; //x1, y1, x2, y2 of each line in turn
+	private volatile int[] colors; //ARGB color of each line
+	private volatile int size; //number of lines readers may see
+	private volatile Color lastColor = Color.BLACK; //Color most recently returned; runs of lines usually share a color
+
+	/**
+	 * Constructor. Creates an empty store.
+	 */
+	public PrimitiveLineStore(){
+		coordinates = new double[4 * 256];
+		colors = new int[256];
+	}
+
+	@Override
+	public synchronized void add(double x1, double y1, double x2, double y2, Color color){
+		int index = size;
+		if (index == colors.length){
+			if (index == Integer.MAX_VALUE / 4)
+				throw new IllegalStateException("Too many lines");
+			int capacity = (int) Math.min(2L * index, Integer.MAX_VALUE / 4);
+			coordinates = Arrays.copyOf(coordinates, 4 * capacity);
+			colors = Arrays.copyOf(colors, capacity);
+		}
+		double[] coordinates = this.coordinates;
+		int[] colors = this.colors;
+		coordinates[4 * index] = x1;
+		coordinates[4 * index + 1] = y1;
+		coordinates[4 * index + 2] = x2;
+		coordinates[4 * index + 3] = y2;
+		colors[index] = color == null ? NONE : color.getRGB();
+		size = index + 1;
+	}
+
+	/**
+	 * Copies the arrays rather than adding the lines one at a time.
+	 */
+	@Override
+	public LineStore copy(int size){
+		if (size < 0 || size > this.size)
+			throw new IndexOutOfBoundsException("Size: " + size + ", lines: " + this.size);
+		PrimitiveLineStore copy = new PrimitiveLineStore();
+		int capacity = Math.max(256, size);
+		copy.coordinates = Arrays.copyOf(coordinates, 4 * capacity);
+		copy.colors = Arrays.copyOf(colors, capacity);
+		copy.size = size;
+		return copy;
+	}
+
+	@Override
+	public int size(){
+		return size;
+	}
+
+	@Override
+	public Command get(int index){
+		checkIndex(index);
+		double[] coordinates = this.coordinates;
+		return new Command(coordinates[4 * index], coordinates[4 * index + 1], coordinates[4 * index + 2], coordinates[4 * index + 3], getColor(index), index);
+	}
+
+	@Override
+	public double getX1(int index){
+		checkIndex(index);
+		return coordinates[4 * index];
+	}
+
+	@Override
+	public double getY1(int index){
+		checkIndex(index);
+		return coordinates[4 * index + 1];
+	}
+
+	@Override
+	public double getX2(int index){
+		checkIndex(index);
+		return coordinates[4 * index + 2];
+	}
+
+	@Override
+	public double getY2(int index){
+		checkIndex(index);
+		return coordinates[4 * index + 3];
+	}
+
+	@Override
+	public Color getColor(int index){
+		checkIndex(index);
+		int color = colors[index];
+		if (color == NONE)
+			return null;
+		Color last = lastColor;
+		if (last.getRGB() != color)
+			lastColor = last = new Color(color, true);
+		return last;
+	}
+
+	/**
+	 * Checks that a line can be read. Reading <code>size</code> also makes the line's values visible.
+	 * @param index
+	 * @throws IndexOutOfBoundsException if the line has not been stored yet
+	 */
+	private void checkIndex(int index){
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+	}
+}
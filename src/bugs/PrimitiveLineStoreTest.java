@@ -0,0 +1,43 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+/**
+ * Tests for PrimitiveLineStore class of Bugs language Interpreter. Runs every test of
+ * SegmentedLineStoreTest against a PrimitiveLineStore, plus the tests below.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class PrimitiveLineStoreTest extends SegmentedLineStoreTest {
+
+	@Override
+	protected LineStore newStore(){
+		return new PrimitiveLineStore();
+	}
+
+	@Test
+	public void testCommandsAreViews(){
+		LineStore lines = newStore();
+		lines.add(0.1, 0.2, 0.3, 0.4, Color.MAGENTA);
+		lines.add(1, 2, 3, 4, new Color(1, 2, 3));
+		Command line = lines.get(1);
+		assertEquals("Command 1: 1.0, 2.0, 3.0, 4.0.", line.toString());
+		assertEquals(new Color(1, 2, 3), line.getColor());
+		//coordinates are kept exactly
+		assertEquals(0.1, lines.get(0).getX1(), 0);
+		assertEquals(0.4, lines.getY2(0), 0);
+		assertEquals(Color.MAGENTA, lines.getColor(0));
+	}
+
+	@Test
+	public void testCooperativeProgramsUseCompactStore(){
+		Parser parser = new Parser("Bug A {\n    move 10\n}\n");
+		assertTrue(parser.isProgram());
+		assertTrue(new Interpreter(parser.stack.pop(), Interpreter.Mode.COMPILED).getLines() instanceof PrimitiveLineStore);
+	}
+}
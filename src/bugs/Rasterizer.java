@@ -0,0 +1,242 @@
+package bugs;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Draws the lines of a LineStore. The View and the BatchRenderer both draw through this class, so a
+ * drawing looks the same on screen and in an image file. Coordinates are scaled from the 100 by 100
+ * unit drawing area to pixels.
+ * <p>
+ * Large numbers of lines are drawn by the tiled rasterizer: the image is divided into square tiles,
+ * each line is binned into every tile its bounding box (plus a margin for the pixels a line can touch
+ * around it) overlaps, and the tiles are drawn in parallel, each clipped to itself and drawing its
+ * lines in their original order. Every pixel is in exactly one tile, and is drawn by the same lines in
+ * the same order as by the serial rasterizer, so the image is identical.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+class Rasterizer {
+	static final int TILE_SIZE = 128; //width and height of a tile, in pixels
+	static final int TILED_THRESHOLD = 20000; //fewest lines worth drawing in parallel
+	static final int TILED_PARALLELISM = 4; //fewest worker threads that more than make up for lines drawn in several tiles
+	private static final double MARGIN = 2; //pixels a line may touch beyond its bounding box, with or without antialiasing
+
+	/**
+	 * Draws a range of lines into an image, with the tiled rasterizer when there are enough of them
+	 * and enough processors to share them.
+	 * @param image - where to draw
+	 * @param lines
+	 * @param from - index of the first line to draw
+	 * @param to - index after the last line to draw, at most <code>lines.size()</code>
+	 * @param scaleX - pixels per unit across
+	 * @param scaleY - pixels per unit down
+	 */
+	static void draw(BufferedImage image, LineStore lines, int from, int to, double scaleX, double scaleY){
+		if (to - from >= TILED_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() >= TILED_PARALLELISM)
+			drawTiled(image, null, lines, from, to, scaleX, scaleY);
+		else {
+			Graphics2D g = image.createGraphics();
+			draw(g, lines, from, to, scaleX, scaleY);
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Draws a range of lines, in order, on this Thread. Lines drawn with color "none" are invisible and are skipped.
+	 * @param g - where to draw
+	 * @param lines
+	 * @param from - index of the first line to draw
+	 * @param to - index after the last line to draw, at most <code>lines.size()</code>
+	 * @param scaleX - pixels per unit across
+	 * @param scaleY - pixels per unit down
+	 */
+	static void draw(Graphics2D g, LineStore lines, int from, int to, double scaleX, double scaleY){
+		Line2D.Double line = new Line2D.Double();
+		for (int i = from; i < to; i++){
+			drawLine(g, lines, i, line, scaleX, scaleY);
+		}
+	}
+
+	/**
+	 * Draws one line, such as a LineStore's open line, unless it is invisible.
+	 * @param g - where to draw
+	 * @param line
+	 * @param scaleX - pixels per unit across
+	 * @param scaleY - pixels per unit down
+	 */
+	static void draw(Graphics2D g, Command line, double scaleX, double scaleY){
+		if (line.getColor() == null)
+			return;
+		g.setColor(line.getColor());
+		g.draw(new Line2D.Double(line.getX1() * scaleX, line.getY1() * scaleY, line.getX2() * scaleX, line.getY2() * scaleY));
+	}
+
+	/**
+	 * Draws a range of lines into an image with the tiled rasterizer, using the common fork-join pool.
+	 * The result is the same as drawing them with <code>draw(Graphics2D, ...)</code> on a Graphics2D
+	 * of the image with the same rendering hints.
+	 * @param image - where to draw
+	 * @param hints - rendering hints (such as antialiasing) for every tile, or null for the defaults
+	 * @param lines
+	 * @param from - index of the first line to draw
+	 * @param to - index after the last line to draw, at most <code>lines.size()</code>
+	 * @param scaleX - pixels per unit across
+	 * @param scaleY - pixels per unit down
+	 */
+	static void drawTiled(BufferedImage image, RenderingHints hints, LineStore lines, int from, int to, double scaleX, double scaleY){
+		int columns = (image.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+		int rows = (image.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+		int tiles = columns * rows;
+		//count the lines in each tile, then lay the tiles' lists of lines out one after another
+		int[] start = new int[tiles + 1];
+		int[] range = new int[4];
+		for (int i = from; i < to; i++){
+			if (tileRange(lines, i, scaleX, scaleY, columns, rows, range)){
+				for (int row = range[2]; row <= range[3]; row++){
+					for (int column = range[0]; column <= range[1]; column++){
+						start[row * columns + column + 1]++;
+					}
+				}
+			}
+		}
+		long total = 0;
+		for (int t = 1; t <= tiles; t++){
+			total += start[t];
+			if (total > Integer.MAX_VALUE - 8){
+				//too many lines cross too many tiles to index them all; draw them the slow way
+				Graphics2D g = image.createGraphics();
+				if (hints != null)
+					g.addRenderingHints(hints);
+				draw(g, lines, from, to, scaleX, scaleY);
+				g.dispose();
+				return;
+			}
+			start[t] = (int) total;
+		}
+		int[] binned = new int[start[tiles]];
+		int[] next = start.clone();
+		for (int i = from; i < to; i++){
+			if (tileRange(lines, i, scaleX, scaleY, columns, rows, range)){
+				for (int row = range[2]; row <= range[3]; row++){
+					for (int column = range[0]; column <= range[1]; column++){
+						binned[next[row * columns + column]++] = i;
+					}
+				}
+			}
+		}
+		ForkJoinPool.commonPool().invoke(new TileTask(image, hints, lines, binned, start, columns, 0, tiles, scaleX, scaleY));
+	}
+
+	/**
+	 * Finds the tiles a line may draw in.
+	 * @param lines
+	 * @param index - the line
+	 * @param scaleX
+	 * @param scaleY
+	 * @param columns - number of tiles across
+	 * @param rows - number of tiles down
+	 * @param range - receives the first and last column, then the first and last row
+	 * @return false if the line draws nothing in the image
+	 */
+	private static boolean tileRange(LineStore lines, int index, double scaleX, double scaleY, int columns, int rows, int[] range){
+		if (lines.getColor(index) == null)
+			return false;
+		double x1 = lines.getX1(index) * scaleX;
+		double y1 = lines.getY1(index) * scaleY;
+		double x2 = lines.getX2(index) * scaleX;
+		double y2 = lines.getY2(index) * scaleY;
+		double left = Math.min(x1, x2) - MARGIN;
+		double right = Math.max(x1, x2) + MARGIN;
+		double top = Math.min(y1, y2) - MARGIN;
+		double bottom = Math.max(y1, y2) + MARGIN;
+		if (Double.isNaN(left + right + top + bottom)){
+			//leave lines the bounds say nothing about to Java2D, in every tile
+			range[0] = 0;
+			range[1] = columns - 1;
+			range[2] = 0;
+			range[3] = rows - 1;
+			return true;
+		}
+		if (right < 0 || bottom < 0 || left >= columns * TILE_SIZE || top >= rows * TILE_SIZE)
+			return false;
+		range[0] = (int) Math.max(0, Math.floor(left / TILE_SIZE));
+		range[1] = (int) Math.min(columns - 1, Math.floor(right / TILE_SIZE));
+		range[2] = (int) Math.max(0, Math.floor(top / TILE_SIZE));
+		range[3] = (int) Math.min(rows - 1, Math.floor(bottom / TILE_SIZE));
+		return true;
+	}
+
+	/**
+	 * Draws a single line, unless it is invisible.
+	 * @param g
+	 * @param lines
+	 * @param index - the line
+	 * @param line - reused for drawing
+	 * @param scaleX
+	 * @param scaleY
+	 */
+	private static void drawLine(Graphics2D g, LineStore lines, int index, Line2D.Double line, double scaleX, double scaleY){
+		Color color = lines.getColor(index);
+		if (color == null)
+			return;
+		g.setColor(color);
+		line.setLine(lines.getX1(index) * scaleX, lines.getY1(index) * scaleY, lines.getX2(index) * scaleX, lines.getY2(index) * scaleY);
+		g.draw(line);
+	}
+
+	/**
+	 * Draws a range of tiles, splitting it in half until there is one tile to draw.
+	 */
+	private static class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final BufferedImage image;
+		private final RenderingHints hints;
+		private final LineStore lines;
+		private final int[] binned; //indexes of the lines in each tile, tile after tile
+		private final int[] start; //where each tile's lines start in binned
+		private final int columns; //number of tiles across
+		private final int first, last; //range of tiles to draw, last exclusive
+		private final double scaleX, scaleY;
+
+		TileTask(BufferedImage image, RenderingHints hints, LineStore lines, int[] binned, int[] start, int columns,
+				int first, int last, double scaleX, double scaleY){
+			this.image = image;
+			this.hints = hints;
+			this.lines = lines;
+			this.binned = binned;
+			this.start = start;
+			this.columns = columns;
+			this.first = first;
+			this.last = last;
+			this.scaleX = scaleX;
+			this.scaleY = scaleY;
+		}
+
+		@Override
+		protected void compute(){
+			if (last - first > 1){
+				int middle = (first + last) >>> 1;
+				invokeAll(new TileTask(image, hints, lines, binned, start, columns, first, middle, scaleX, scaleY),
+						new TileTask(image, hints, lines, binned, start, columns, middle, last, scaleX, scaleY));
+				return;
+			}
+			if (start[first] == start[first + 1])
+				return;
+			Graphics2D g = image.createGraphics();
+			if (hints != null)
+				g.addRenderingHints(hints);
+			g.clipRect((first % columns) * TILE_SIZE, (first / columns) * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+			Line2D.Double line = new Line2D.Double();
+			for (int i = start[first]; i < start[first + 1]; i++){
+				drawLine(g, lines, binned[i], line, scaleX, scaleY);
+			}
+			g.dispose();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for Rasterizer class of Bugs language Interpreter.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class RasterizerTest {
+	private static final Color[] COLORS = {Color.BLACK, Color.RED, Color.BLUE, Color.GREEN, null};
+
+	@Test
+	public void testTiledMatchesSerial(){
+		LineStore lines = randomLines(5000, 1);
+		assertTiledMatchesSerial(lines, 600, 600, null);
+		//sizes that are not a multiple of the tile size, and scales that differ across and down
+		assertTiledMatchesSerial(lines, 333, 171, null);
+	}
+
+	@Test
+	public void testTiledMatchesSerialWithAntialiasing(){
+		RenderingHints hints = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		assertTiledMatchesSerial(randomLines(5000, 2), 500, 400, hints);
+		hints.put(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+		assertTiledMatchesSerial(randomLines(5000, 3), 257, 300, hints);
+	}
+
+	@Test
+	public void testTiledHandlesLinesOutsideTheImage(){
+		LineStore lines = new PrimitiveLineStore();
+		lines.add(-50, -50, 150, 150, Color.RED);
+		lines.add(-10, -10, -5, -5, Color.RED);
+		lines.add(200, 50, 300, 50, Color.RED);
+		lines.add(50, 0, 50, Double.POSITIVE_INFINITY, Color.BLUE);
+		lines.add(0, Double.NaN, 10, 10, Color.BLUE);
+		lines.add(100, 0, 100, 100, Color.GREEN);
+		lines.add(0, 100, 100, 100, Color.GREEN);
+		assertTiledMatchesSerial(lines, 200, 200, null);
+	}
+
+	@Test
+	public void testLargeDrawings(){
+		//with enough processors BatchRenderer picks the tiled rasterizer for this many lines
+		LineStore lines = randomLines(Rasterizer.TILED_THRESHOLD + 1, 4);
+		BufferedImage serial = blank(300, 300);
+		Graphics2D g = serial.createGraphics();
+		Rasterizer.draw(g, lines, 0, lines.size(), 3, 3);
+		g.dispose();
+		TestImages.assertSameImage(serial, BatchRenderer.render(lines, 300, 300));
+	}
+
+	//HELPER methods
+	/**
+	 * Creates lines with random positions and colors, mostly short like those of most Bugs programs.
+	 * @param count
+	 * @param seed
+	 * @return lines
+	 */
+	private LineStore randomLines(int count, long seed){
+		Random random = new Random(seed);
+		LineStore lines = new PrimitiveLineStore();
+		for (int i = 0; i < count; i++){
+			double x = random.nextDouble() * 110 - 5;
+			double y = random.nextDouble() * 110 - 5;
+			double length = i % 10 == 0 ? 100 : 5;
+			lines.add(x, y, x + (random.nextDouble() - 0.5) * length, y + (random.nextDouble() - 0.5) * length,
+					COLORS[random.nextInt(COLORS.length)]);
+		}
+		return lines;
+	}
+
+	/**
+	 * Draws lines serially and tiled, and checks that every pixel is the same.
+	 * @param lines
+	 * @param width
+	 * @param height
+	 * @param hints
+	 */
+	private void assertTiledMatchesSerial(LineStore lines, int width, int height, RenderingHints hints){
+		BufferedImage serial = blank(width, height);
+		Graphics2D g = serial.createGraphics();
+		if (hints != null)
+			g.addRenderingHints(hints);
+		Rasterizer.draw(g, lines, 0, lines.size(), width / 100.0, height / 100.0);
+		g.dispose();
+		BufferedImage tiled = blank(width, height);
+		Rasterizer.drawTiled(tiled, hints, lines, 0, lines.size(), width / 100.0, height / 100.0);
+		TestImages.assertSameImage(serial, tiled);
+	}
+
+	/**
+	 * Creates a white image.
+	 * @param width
+	 * @param height
+	 * @return image
+	 */
+	private BufferedImage blank(int width, int height){
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+		return image;
+	}
+}
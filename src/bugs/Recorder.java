@@ -0,0 +1,341 @@
+package bugs;
+
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Records a run of a program so that a Replay can show it again without running it. The recording is
+ * a header, then one record per tick holding the lines drawn during the tick and where each Bug was
+ * shown at the end of it, then an index and a footer (see Recording).
+ * <p>
+ * Records are compact. Numbers are stored as varints: seven bits a byte, low bits first, the top bit
+ * set on every byte but the last. Each coordinate, angle and color is stored as its difference from
+ * the value it is most likely to equal: a Bug's own values at the previous tick, and for lines the end
+ * of the previous line (for the start) or the start of the same line (for the end). The difference of
+ * two doubles is the exclusive or of their bits, stored as the number of trailing zero bits and then the
+ * remaining bits as a varint, so values are kept exactly and an unchanged value takes one byte. A Bug
+ * that has moved is usually at the end of a line it drew in the tick, and is then stored as that line's number.
+ * <p>
+ * Every <code>INDEX_INTERVAL</code> ticks is a key tick: differences start again from zero, so reading can
+ * start there, and the index at the end of the recording lists where each key tick is.
+ * <p>
+ * A Recorder is the LineSink an Interpreter's Bugs draw to (see <code>Interpreter.setRecorder</code>); it
+ * passes each line on to another sink. Like the other sinks, it remembers the first error writing and
+ * <code>close()</code> throws it.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class Recorder implements LineSink {
+	static final int MAGIC = 0x42554752; //"BUGR" in ASCII, at the start of a recording
+	static final int FOOTER_MAGIC = 0x42554745; //"BUGE" in ASCII, at the very end of a closed recording
+	static final int VERSION = 1;
+	static final int INDEX_INTERVAL = 256; //ticks from one key tick to the next
+	static final int NONE = 0; //color of invisible lines and Bugs; every color a Bug can use is opaque
+	static final int SAME = 64; //first byte of a double equal to the value it is stored against
+	static final int LINE_END = 65; //first byte of a Bug's position that is the end of a line drawn in the same tick
+	private static final int SEARCH = 16; //lines to look through for the one ending at a Bug's position
+
+	private final OutputStream out;
+	private final LineSink next; //gets every line after it is recorded
+	private long position; //bytes written so far
+	private int ticks; //ticks recorded so far
+	private int lines; //lines in the records written so far
+	private final Bytes record = new Bytes(); //the tick record being written
+	private final Bytes tickLineBytes = new Bytes(); //lines drawn since the last tick was recorded
+	private int tickLines; //number of lines in tickLineBytes
+	private double[] endX = new double[64], endY = new double[64]; //where each of those lines ends
+	private double lastX2, lastY2; //end of the last line recorded
+	private int lastColor; //ARGB color of the last line recorded
+	private double[] bugX = new double[0], bugY = new double[0], bugAngle = new double[0]; //each Bug's pose at the previous tick
+	private int[] bugColor = new int[0];
+	private long[] index = new long[16]; //offset of each key tick's record, and the number of lines before it
+	private int indexLength;
+	private IOException error; //the first error writing, after which nothing more is written
+	private boolean closed;
+
+	/**
+	 * Constructor. Writes the header.
+	 * @param out - where to write the recording
+	 * @param next - receives every line, usually the Interpreter's LineStore; not closed by this Recorder
+	 * @throws IOException if the header cannot be written
+	 */
+	public Recorder(OutputStream out, LineSink next) throws IOException {
+		this.out = new BufferedOutputStream(out, 1 << 16);
+		this.next = next;
+		record.putInt(MAGIC);
+		record.put(VERSION);
+		writeRecord();
+	}
+
+	@Override
+	public void add(double x1, double y1, double x2, double y2, Color color){
+		synchronized (this){
+			if (ticks % INDEX_INTERVAL == 0 && tickLines == 0)
+				startKeyTick();
+			tickLineBytes.putDouble(x1, lastX2);
+			tickLineBytes.putDouble(y1, lastY2);
+			tickLineBytes.putDouble(x2, x1);
+			tickLineBytes.putDouble(y2, y1);
+			int argb = color == null ? NONE : color.getRGB();
+			tickLineBytes.putVarint((argb ^ lastColor) & 0xFFFFFFFFL);
+			lastX2 = x2;
+			lastY2 = y2;
+			lastColor = argb;
+			if (tickLines == endX.length){
+				endX = Arrays.copyOf(endX, 2 * tickLines);
+				endY = Arrays.copyOf(endY, 2 * tickLines);
+			}
+			endX[tickLines] = x2;
+			endY[tickLines] = y2;
+			tickLines++;
+		}
+		next.add(x1, y1, x2, y2, color);
+	}
+
+	/**
+	 * Records the end of a tick: the Bugs' poses, and the lines drawn since the last tick ended.
+	 * Called by the Interpreter.
+	 * @param poses - how each Bug was shown at the end of the tick, in the Interpreter's order
+	 */
+	synchronized void endTick(Bug.Pose[] poses){
+		if (error != null || closed)
+			return;
+		if (ticks % INDEX_INTERVAL == 0){
+			if (tickLines == 0)
+				startKeyTick();
+			//differences in the poses of a key tick start from zero as well
+			Arrays.fill(bugX, 0);
+			Arrays.fill(bugY, 0);
+			Arrays.fill(bugAngle, 0);
+			Arrays.fill(bugColor, NONE);
+		}
+		if (bugX.length < poses.length){
+			bugX = Arrays.copyOf(bugX, poses.length);
+			bugY = Arrays.copyOf(bugY, poses.length);
+			bugAngle = Arrays.copyOf(bugAngle, poses.length);
+			bugColor = Arrays.copyOf(bugColor, poses.length);
+		}
+		//lines come first, so that a Bug can be placed at the end of one
+		record.putVarint(ticks);
+		record.putVarint(tickLines);
+		record.putVarint(tickLineBytes.length);
+		writeRecord();
+		write(tickLineBytes);
+		record.putVarint(poses.length);
+		int hint = 0; //Bugs usually draw in the order they are listed, so look for each one's line after the last one's
+		for (int i = 0; i < poses.length; i++){
+			Bug.Pose pose = poses[i];
+			int line = pose.x == bugX[i] && pose.y == bugY[i] ? -1 : findEnd(pose.x, pose.y, hint);
+			if (line < 0){
+				record.putDouble(pose.x, bugX[i]);
+				record.putDouble(pose.y, bugY[i]);
+			}
+			else {
+				record.put(LINE_END);
+				record.putVarint(line);
+				hint = line + 1;
+			}
+			int argb = pose.color == null ? NONE : pose.color.getRGB();
+			record.putDouble(pose.angle, bugAngle[i]);
+			record.putVarint((argb ^ bugColor[i]) & 0xFFFFFFFFL);
+			bugX[i] = pose.x;
+			bugY[i] = pose.y;
+			bugAngle[i] = pose.angle;
+			bugColor[i] = argb;
+		}
+		writeRecord();
+		tickLineBytes.length = 0;
+		ticks++;
+		lines += tickLines;
+		tickLines = 0;
+	}
+
+	/**
+	 * Looks for a line drawn in this tick that ends at a Bug's position, as the Bug's last move does.
+	 * @param x
+	 * @param y
+	 * @param hint - where to start looking
+	 * @return index of the line in the tick, -1 if none of the lines looked at ends there
+	 */
+	private int findEnd(double x, double y, int hint){
+		long xBits = Double.doubleToRawLongBits(x);
+		long yBits = Double.doubleToRawLongBits(y);
+		for (int i = hint; i < Math.min(tickLines, hint + SEARCH); i++){
+			if (Double.doubleToRawLongBits(endX[i]) == xBits && Double.doubleToRawLongBits(endY[i]) == yBits)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Starts a key tick: adds it to the index and stops lines depending on those before it.
+	 */
+	private void startKeyTick(){
+		if (indexLength == index.length)
+			index = Arrays.copyOf(index, 2 * indexLength);
+		index[indexLength++] = position;
+		index[indexLength++] = lines;
+		lastX2 = lastY2 = 0;
+		lastColor = NONE;
+	}
+
+	/**
+	 * Returns the number of ticks recorded so far.
+	 * @return ticks
+	 */
+	public synchronized int getTicks(){
+		return ticks;
+	}
+
+	/**
+	 * Returns the number of bytes written so far.
+	 * @return bytes
+	 */
+	public synchronized long getSize(){
+		return position;
+	}
+
+	/**
+	 * Records any lines drawn since the last tick ended as a tick of their own (the Bugs that drew
+	 * them have finished), and flushes the stream and the next sink.
+	 */
+	@Override
+	public synchronized void flush(){
+		if (tickLines > 0)
+			endTick(new Bug.Pose[0]);
+		next.flush();
+		if (error != null || closed)
+			return;
+		try {
+			out.flush();
+		}
+		catch (IOException e){
+			error = e;
+		}
+	}
+
+	/**
+	 * Flushes, writes the index and footer and closes the stream. The next sink is flushed but not closed.
+	 * @throws IOException if any part of the recording could not be written
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		flush();
+		long indexStart = position;
+		record.putVarint(indexLength / 2);
+		for (int i = 0; i < indexLength; i += 2){
+			record.putVarint(index[i]);
+			record.putVarint(index[i + 1]);
+		}
+		record.putLong(indexStart);
+		record.putInt(ticks);
+		record.putInt(lines);
+		record.putInt(FOOTER_MAGIC);
+		writeRecord();
+		closed = true;
+		try {
+			out.close();
+		}
+		catch (IOException e){
+			if (error == null)
+				error = e;
+		}
+		if (error != null)
+			throw error;
+	}
+
+	/**
+	 * Writes the record built so far and starts a new one.
+	 */
+	private void writeRecord(){
+		write(record);
+		record.length = 0;
+	}
+
+	/**
+	 * Writes bytes, unless writing has failed before.
+	 * @param bytes
+	 */
+	private void write(Bytes bytes){
+		if (error != null)
+			return;
+		try {
+			out.write(bytes.data, 0, bytes.length);
+			position += bytes.length;
+		}
+		catch (IOException e){
+			error = e;
+		}
+	}
+
+	/**
+	 * Bytes being put together to be written.
+	 */
+	private static final class Bytes {
+		byte[] data = new byte[256];
+		int length;
+
+		/**
+		 * Adds a double, as its difference from the value it is most likely to equal.
+		 * @param value
+		 * @param expected
+		 */
+		void putDouble(double value, double expected){
+			long difference = Double.doubleToRawLongBits(value) ^ Double.doubleToRawLongBits(expected);
+			if (difference == 0){
+				put(SAME);
+				return;
+			}
+			int zeros = Long.numberOfTrailingZeros(difference);
+			put(zeros);
+			putVarint(difference >>> zeros);
+		}
+
+		/**
+		 * Adds a number as a varint.
+		 * @param value - treated as unsigned
+		 */
+		void putVarint(long value){
+			while ((value & ~0x7FL) != 0){
+				put((int) (value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			put((int) value);
+		}
+
+		/**
+		 * Adds a long, high byte first.
+		 * @param value
+		 */
+		void putLong(long value){
+			putInt((int) (value >>> 32));
+			putInt((int) value);
+		}
+
+		/**
+		 * Adds an int, high byte first.
+		 * @param value
+		 */
+		void putInt(int value){
+			put(value >>> 24);
+			put(value >>> 16);
+			put(value >>> 8);
+			put(value);
+		}
+
+		/**
+		 * Adds a byte.
+		 * @param value - only the low eight bits are used
+		 */
+		void put(int value){
+			if (length == data.length)
+				data = Arrays.copyOf(data, 2 * length);
+			data[length++] = (byte) value;
+		}
+	}
+}
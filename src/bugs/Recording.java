@@ -0,0 +1,346 @@
+package bugs;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A run of a program written by a Recorder, read back. The file is memory-mapped rather than read
+ * in, so opening even a large recording costs little, and the operating system pages in only the
+ * parts that are read. Ticks are read with a Cursor, which can jump to any tick: it goes to the key
+ * tick at or before it through the index, then reads forward at most <code>Recorder.INDEX_INTERVAL</code>
+ * ticks.
+ * <p>
+ * A recording that was never closed, such as one of a program that was killed, has no index; it is
+ * rebuilt by reading every tick when the recording is opened, and any incomplete tick at the end is ignored.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class Recording {
+	private static final int HEADER_BYTES = 5;
+	private static final int FOOTER_BYTES = 20;
+
+	private final ByteBuffer data;
+	private int ticks; //number of complete ticks
+	private int lines; //number of lines drawn in them
+	private int[] keyOffsets; //where the record of each key tick starts
+	private int[] keyLines; //number of lines drawn before each key tick
+
+	/**
+	 * Opens a recording by mapping its file into memory.
+	 * @param file
+	 * @return recording
+	 * @throws IOException if the file cannot be read, is larger than 2 GB or is not a recording
+	 */
+	public static Recording open(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Recording is too large to map: " + file);
+			//the mapping stays valid after the file is closed
+			return new Recording(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param data - the whole recording, from its header
+	 * @throws IOException if the data is not a recording
+	 */
+	Recording(ByteBuffer data) throws IOException {
+		this.data = data;
+		if (data.limit() < HEADER_BYTES || data.getInt(0) != Recorder.MAGIC)
+			throw new IOException("Not a Bugs recording");
+		if (data.get(4) != Recorder.VERSION)
+			throw new IOException("Unsupported Bugs recording version " + data.get(4));
+		if (!readIndex())
+			rebuildIndex();
+	}
+
+	/**
+	 * Reads the index written when the recording was closed.
+	 * @return false if there is none
+	 */
+	private boolean readIndex(){
+		int footer = data.limit() - FOOTER_BYTES;
+		if (footer < HEADER_BYTES || data.getInt(footer + 16) != Recorder.FOOTER_MAGIC)
+			return false;
+		long indexStart = data.getLong(footer);
+		if (indexStart < HEADER_BYTES || indexStart > footer)
+			return false;
+		ticks = data.getInt(footer + 8);
+		lines = data.getInt(footer + 12);
+		ByteBuffer index = data.duplicate();
+		index.position((int) indexStart);
+		try {
+			int keys = (int) getVarint(index);
+			keyOffsets = new int[keys];
+			keyLines = new int[keys];
+			for (int i = 0; i < keys; i++){
+				keyOffsets[i] = (int) getVarint(index);
+				keyLines[i] = (int) getVarint(index);
+			}
+		}
+		catch (BufferUnderflowException e){
+			return false;
+		}
+		return keyOffsets.length == (ticks + Recorder.INDEX_INTERVAL - 1) / Recorder.INDEX_INTERVAL;
+	}
+
+	/**
+	 * Finds the key ticks by reading every tick.
+	 */
+	private void rebuildIndex(){
+		keyOffsets = new int[16];
+		keyLines = new int[16];
+		int keys = 0;
+		Cursor cursor = new Cursor();
+		while (true){
+			int start = cursor.position;
+			int tick = cursor.tick;
+			int linesBefore = cursor.lines;
+			try {
+				cursor.read(null);
+			}
+			catch (BufferUnderflowException e){
+				break; //the last tick was not written completely
+			}
+			catch (IllegalStateException e){
+				break;
+			}
+			if (tick % Recorder.INDEX_INTERVAL == 0){
+				if (keys == keyOffsets.length){
+					keyOffsets = Arrays.copyOf(keyOffsets, 2 * keys);
+					keyLines = Arrays.copyOf(keyLines, 2 * keys);
+				}
+				keyOffsets[keys] = start;
+				keyLines[keys] = linesBefore;
+				keys++;
+			}
+			ticks = cursor.tick;
+			lines = cursor.lines;
+		}
+		keyOffsets = Arrays.copyOf(keyOffsets, keys);
+		keyLines = Arrays.copyOf(keyLines, keys);
+	}
+
+	/**
+	 * Returns the number of ticks recorded.
+	 * @return ticks
+	 */
+	public int getTickCount(){
+		return ticks;
+	}
+
+	/**
+	 * Returns the number of lines drawn in all the ticks recorded.
+	 * @return lines
+	 */
+	public int getLineCount(){
+		return lines;
+	}
+
+	/**
+	 * Creates a Cursor before the first tick.
+	 * @return cursor
+	 */
+	public Cursor cursor(){
+		return new Cursor();
+	}
+
+	/**
+	 * Reads a varint.
+	 * @param in
+	 * @return value
+	 * @throws BufferUnderflowException if the data ends part way through it
+	 */
+	private static long getVarint(ByteBuffer in){
+		long value = 0;
+		for (int shift = 0; ; shift += 7){
+			byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	/**
+	 * Reads the ticks of a recording in order, from any tick.
+	 */
+	public class Cursor {
+		private int position; //where the next tick's record starts
+		private int tick; //the next tick to read
+		private int lines; //lines drawn in the ticks before it
+		private double lastX2, lastY2; //end of the last line read
+		private int lastColor;
+		private double[] bugX = new double[0], bugY = new double[0], bugAngle = new double[0]; //poses at the last tick read
+		private int[] bugColor = new int[0];
+		private double[] endX = new double[0], endY = new double[0]; //where each line of the last tick read ends
+		private Bug.Pose[] poses = new Bug.Pose[0];
+
+		private Cursor(){
+			position = HEADER_BYTES;
+		}
+
+		/**
+		 * Reads up to a tick, going through the key tick at or before it unless the tick is just ahead.
+		 * @param tick - the tick to read last, from -1 (before the first tick) to <code>getTickCount() - 1</code>
+		 * @throws IndexOutOfBoundsException if there is no such tick
+		 */
+		public void seek(int tick){
+			if (tick < -1 || tick >= ticks)
+				throw new IndexOutOfBoundsException("Tick: " + tick + ", Ticks: " + ticks);
+			if (tick < 0){
+				position = HEADER_BYTES;
+				this.tick = 0;
+				lines = 0;
+				poses = new Bug.Pose[0];
+				return;
+			}
+			int key = tick / Recorder.INDEX_INTERVAL;
+			if (tick < this.tick - 1 || this.tick < key * Recorder.INDEX_INTERVAL){
+				position = keyOffsets[key];
+				this.tick = key * Recorder.INDEX_INTERVAL;
+				lines = keyLines[key];
+			}
+			while (this.tick <= tick){
+				read(null);
+			}
+		}
+
+		/**
+		 * Reads the next tick.
+		 * @param sink - receives the lines drawn in the tick, null to skip them
+		 * @return false if every tick has been read
+		 */
+		public boolean next(LineSink sink){
+			if (tick >= ticks)
+				return false;
+			read(sink);
+			return true;
+		}
+
+		/**
+		 * Returns the last tick read.
+		 * @return tick, -1 if none has been read
+		 */
+		public int getTick(){
+			return tick - 1;
+		}
+
+		/**
+		 * Returns the number of lines drawn up to the end of the last tick read.
+		 * @return lines
+		 */
+		public int getLines(){
+			return lines;
+		}
+
+		/**
+		 * Returns how each Bug was shown at the end of the last tick read.
+		 * @return poses, empty before the first tick
+		 */
+		public Bug.Pose[] getPoses(){
+			return poses.clone();
+		}
+
+		/**
+		 * Reads the record of the next tick. Its lines are read even if nobody wants them, because the
+		 * lines of the ticks after it up to the next key tick, and its Bugs, are stored as differences from them.
+		 * @param sink - receives its lines, null if nobody wants them
+		 * @throws BufferUnderflowException if the record is incomplete
+		 * @throws IllegalStateException if the record is not the next tick's
+		 */
+		private void read(LineSink sink){
+			ByteBuffer in = data.duplicate();
+			in.position(position);
+			if (getVarint(in) != tick)
+				throw new IllegalStateException("Damaged Bugs recording at tick " + tick);
+			if (tick % Recorder.INDEX_INTERVAL == 0){
+				Arrays.fill(bugX, 0);
+				Arrays.fill(bugY, 0);
+				Arrays.fill(bugAngle, 0);
+				Arrays.fill(bugColor, Recorder.NONE);
+				lastX2 = lastY2 = 0;
+				lastColor = Recorder.NONE;
+			}
+			int count = (int) getVarint(in);
+			int length = (int) getVarint(in);
+			if (count < 0 || length < 0 || length > in.remaining())
+				throw new BufferUnderflowException();
+			int end = in.position() + length;
+			if (endX.length < count){
+				endX = new double[count];
+				endY = new double[count];
+			}
+			for (int i = 0; i < count; i++){
+				double x1 = getDouble(in, lastX2);
+				double y1 = getDouble(in, lastY2);
+				double x2 = getDouble(in, x1);
+				double y2 = getDouble(in, y1);
+				lastColor ^= (int) getVarint(in);
+				lastX2 = endX[i] = x2;
+				lastY2 = endY[i] = y2;
+				if (sink != null)
+					sink.add(x1, y1, x2, y2, lastColor == Recorder.NONE ? null : new Color(lastColor, true));
+			}
+			if (in.position() != end)
+				throw new IllegalStateException("Damaged Bugs recording at tick " + tick);
+			int bugs = (int) getVarint(in);
+			if (bugs < 0 || bugs > in.remaining())
+				throw new BufferUnderflowException();
+			if (bugX.length < bugs){
+				bugX = Arrays.copyOf(bugX, bugs);
+				bugY = Arrays.copyOf(bugY, bugs);
+				bugAngle = Arrays.copyOf(bugAngle, bugs);
+				bugColor = Arrays.copyOf(bugColor, bugs);
+			}
+			Bug.Pose[] poses = new Bug.Pose[bugs];
+			for (int i = 0; i < bugs; i++){
+				if (!in.hasRemaining())
+					throw new BufferUnderflowException();
+				if (in.get(in.position()) == Recorder.LINE_END){
+					in.get();
+					int line = (int) getVarint(in);
+					if (line < 0 || line >= count)
+						throw new IllegalStateException("Damaged Bugs recording at tick " + tick);
+					bugX[i] = endX[line];
+					bugY[i] = endY[line];
+				}
+				else {
+					bugX[i] = getDouble(in, bugX[i]);
+					bugY[i] = getDouble(in, bugY[i]);
+				}
+				bugAngle[i] = getDouble(in, bugAngle[i]);
+				bugColor[i] ^= (int) getVarint(in);
+				poses[i] = new Bug.Pose(bugX[i], bugY[i], bugAngle[i], bugColor[i] == Recorder.NONE ? null : new Color(bugColor[i], true));
+			}
+			position = in.position();
+			lines += count;
+			tick++;
+			this.poses = poses;
+		}
+
+		/**
+		 * Reads a double stored as its difference from another.
+		 * @param in
+		 * @param expected - the value it was stored against
+		 * @return value
+		 */
+		private double getDouble(ByteBuffer in, double expected){
+			int zeros = in.get();
+			if (zeros == Recorder.SAME)
+				return expected;
+			return Double.longBitsToDouble(Double.doubleToRawLongBits(expected) ^ (getVarint(in) << zeros));
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for Recorder, Recording and Replay classes of Bugs language Interpreter.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class RecordingTest {
+	private static final String PROGRAM = "Bug Sally {\n" +
+			"    var i\n" +
+			"    y = 50\n" +
+			"    color red\n" +
+			"    loop {\n" +
+			"        move 1\n" +
+			"        turn 7\n" +
+			"        i = i + 1\n" +
+			"        exit if i = 600\n" +
+			"    }\n" +
+			"}\n" +
+			"Bug Fred {\n" +
+			"    var i\n" +
+			"    color blue\n" +
+			"    loop {\n" +
+			"        line i / 10, 0, 100 - i / 10, 100\n" +
+			"        i = i + 1\n" +
+			"        exit if i = 300\n" +
+			"    }\n" +
+			"    color none\n" +
+			"}\n";
+
+	@Test
+	public void testRecordsProgramExactly() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Interpreter interpreter = record(PROGRAM, out);
+		LineStore expected = interpreter.getLines();
+		assertEquals(900, expected.size());
+		Recording recording = new Recording(ByteBuffer.wrap(out.toByteArray()));
+		assertEquals(900, recording.getLineCount());
+		assertTrue(recording.getTickCount() > 600);
+		LineStore actual = new PrimitiveLineStore();
+		Recording.Cursor cursor = recording.cursor();
+		while (cursor.next(actual)){
+			assertEquals(actual.size(), cursor.getLines());
+		}
+		assertSameLines(expected, actual);
+		//under half the size of the same values stored whole: 28 bytes a pose, 36 a line
+		long whole = 0;
+		cursor.seek(-1);
+		while (cursor.next(null)){
+			whole += 28 * cursor.getPoses().length;
+		}
+		whole += 36 * expected.size();
+		assertTrue(out.size() < whole / 2);
+	}
+
+	@Test
+	public void testSeekFindsPoses() throws IOException {
+		//poses and lines made up for many key ticks' worth of ticks
+		Random random = new Random(18);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Recorder recorder = new Recorder(out, new NullLineSink());
+		int ticks = 5 * Recorder.INDEX_INTERVAL + 17;
+		Bug.Pose[][] poses = new Bug.Pose[ticks][];
+		int[] lines = new int[ticks]; //lines drawn up to the end of each tick
+		int drawn = 0;
+		for (int t = 0; t < ticks; t++){
+			poses[t] = new Bug.Pose[1 + random.nextInt(3)];
+			for (int b = 0; b < poses[t].length; b++){
+				poses[t][b] = new Bug.Pose(random.nextInt(100), random.nextDouble() * 100, random.nextInt(360), random.nextBoolean() ? Color.RED : null);
+			}
+			for (int i = random.nextInt(3); i > 0; i--){
+				recorder.add(random.nextDouble(), t, t, random.nextDouble(), Color.GREEN);
+				drawn++;
+			}
+			recorder.endTick(poses[t]);
+			lines[t] = drawn;
+		}
+		recorder.close();
+		Recording recording = new Recording(ByteBuffer.wrap(out.toByteArray()));
+		assertEquals(ticks, recording.getTickCount());
+		Recording.Cursor cursor = recording.cursor();
+		assertEquals(-1, cursor.getTick());
+		for (int i = 0; i < 200; i++){
+			int t = random.nextInt(ticks);
+			cursor.seek(t);
+			assertEquals(t, cursor.getTick());
+			assertSamePoses(poses[t], cursor.getPoses());
+			assertEquals(lines[t], cursor.getLines());
+		}
+		//and reading on from a seek
+		cursor.seek(Recorder.INDEX_INTERVAL - 2);
+		for (int t = Recorder.INDEX_INTERVAL - 1; t < Recorder.INDEX_INTERVAL + 2; t++){
+			assertTrue(cursor.next(null));
+			assertSamePoses(poses[t], cursor.getPoses());
+			assertEquals(lines[t], cursor.getLines());
+		}
+		cursor.seek(ticks - 1);
+		assertFalse(cursor.next(null));
+	}
+
+	@Test
+	public void testRecordingWithoutIndexCanBeRead() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Recorder recorder = new Recorder(out, new NullLineSink());
+		Bug.Pose[] poses = {new Bug.Pose(1, 2, 3, Color.BLACK)};
+		for (int t = 0; t < 2 * Recorder.INDEX_INTERVAL + 5; t++){
+			recorder.add(t, 0, t + 1, 0, Color.BLACK);
+			recorder.endTick(poses);
+		}
+		recorder.flush();
+		//as if the program was killed part way through writing a tick
+		byte[] bytes = Arrays.copyOf(out.toByteArray(), out.size() - 3);
+		Recording recording = new Recording(ByteBuffer.wrap(bytes));
+		assertEquals(2 * Recorder.INDEX_INTERVAL + 4, recording.getTickCount());
+		assertEquals(2 * Recorder.INDEX_INTERVAL + 4, recording.getLineCount());
+		Recording.Cursor cursor = recording.cursor();
+		cursor.seek(2 * Recorder.INDEX_INTERVAL + 1);
+		assertSamePoses(poses, cursor.getPoses());
+		assertEquals(2 * Recorder.INDEX_INTERVAL + 2, cursor.getLines());
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsOtherFiles() throws IOException {
+		new Recording(ByteBuffer.wrap(new byte[] {'B', 'U', 'G', 'S', 1, 0, 0}));
+	}
+
+	@Test
+	public void testReplayFromMappedFile() throws IOException {
+		File file = File.createTempFile("bugs", ".rec");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			Interpreter interpreter = record(PROGRAM, out);
+			Recording recording = Recording.open(file);
+			Recording.Cursor cursor = recording.cursor();
+			Replay replay = new Replay(recording);
+			assertEquals(-1, replay.getTick());
+			assertEquals(0, replay.getLines().size());
+			//forward, lines are added to those shown
+			replay.seek(99);
+			LineStore shown = replay.getLines();
+			cursor.seek(99);
+			assertEquals(cursor.getLines(), shown.size());
+			assertEquals(2, replay.getPoses().length);
+			replay.seek(replay.getTickCount() - 1);
+			assertSame(shown, replay.getLines());
+			assertSameLines(interpreter.getLines(), replay.getLines());
+			//back, there are fewer lines in a new store
+			replay.seek(9);
+			assertNotSame(shown, replay.getLines());
+			cursor.seek(9);
+			assertEquals(cursor.getLines(), replay.getLines().size());
+			assertTrue(replay.getLines().size() > 0);
+			assertEquals(2, replay.getPoses().length);
+			assertNotNull(replay.getDirtyRegion().take(1, 1, 0, 0));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testReplayPlays() throws IOException, InterruptedException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		record(PROGRAM, out);
+		Replay replay = new Replay(new Recording(ByteBuffer.wrap(out.toByteArray())));
+		final int[] ticks = new int[1];
+		replay.setTickListener(new Runnable(){
+			@Override
+			public void run(){
+				ticks[0]++;
+			}
+		});
+		replay.setSpeed(Double.POSITIVE_INFINITY);
+		replay.play();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (replay.isPlaying() && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertFalse(replay.isPlaying());
+		assertEquals(replay.getTickCount() - 1, replay.getTick());
+		assertEquals(replay.getTickCount(), ticks[0]);
+		assertEquals(900, replay.getLines().size());
+	}
+
+	//HELPER methods
+	/**
+	 * Runs a program to the end while recording it.
+	 * @param program
+	 * @param out - receives the recording
+	 * @return the Interpreter
+	 * @throws IOException
+	 */
+	private Interpreter record(String program, OutputStream out) throws IOException {
+		Parser parser = new Parser(program);
+		assertTrue(parser.isProgram());
+		Interpreter interpreter = new Interpreter(parser.stack.pop(), Interpreter.Mode.COMPILED);
+		Recorder recorder = new Recorder(out, interpreter.getLines());
+		interpreter.setRecorder(recorder);
+		interpreter.runTurbo();
+		interpreter.start();
+		try {
+			interpreter.join(10000);
+		}
+		catch (InterruptedException e){
+			fail();
+		}
+		assertFalse(interpreter.isAlive());
+		recorder.close();
+		return interpreter;
+	}
+
+	/**
+	 * Checks that two stores hold exactly the same lines.
+	 * @param expected
+	 * @param actual
+	 */
+	private void assertSameLines(LineStore expected, LineStore actual){
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++){
+			assertEquals(expected.getX1(i), actual.getX1(i), 0);
+			assertEquals(expected.getY1(i), actual.getY1(i), 0);
+			assertEquals(expected.getX2(i), actual.getX2(i), 0);
+			assertEquals(expected.getY2(i), actual.getY2(i), 0);
+			assertEquals(expected.getColor(i), actual.getColor(i));
+		}
+	}
+
+	/**
+	 * Checks that two sets of poses are exactly the same.
+	 * @param expected
+	 * @param actual
+	 */
+	private void assertSamePoses(Bug.Pose[] expected, Bug.Pose[] actual){
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++){
+			assertEquals(expected[i].x, actual[i].x, 0);
+			assertEquals(expected[i].y, actual[i].y, 0);
+			assertEquals(expected[i].angle, actual[i].angle, 0);
+			assertEquals(expected[i].color, actual[i].color);
+		}
+	}
+}
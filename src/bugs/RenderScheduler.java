@@ -0,0 +1,202 @@
+package bugs;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Decides when a View paints its next frame. A frame is only worth painting once the Interpreter has
+ * finished a tick, so the scheduler waits for one; it then waits until the frame interval has passed
+ * since the previous frame and asks the Event Dispatch Thread to paint.
+ * <p>
+ * The frame interval adapts to the tick rate and to what painting costs: at low speed a frame is painted
+ * right after each tick, at high speed frames are painted at the target frame rate and each one shows
+ * several ticks (they are <i>coalesced</i>), and if painting takes longer than half the target interval
+ * frames are spaced further apart so the Event Dispatch Thread keeps up. A frame that is due while the
+ * previous one is still being painted is <i>dropped</i>: the next frame is only scheduled once the previous
+ * one is done.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+class RenderScheduler {
+	static final int DEFAULT_FPS = 25; //the frame rate of the View's old 40 ms Swing Timer
+
+	private final Runnable frame; //paints a frame, on the Event Dispatch Thread
+	private final Thread thread; //waits for ticks and frame intervals
+	private int targetFps = DEFAULT_FPS; //frames per second to aim for
+	private long ticks; //ticks ended since this scheduler was created
+	private long ticksPainted; //value of ticks when the last frame was scheduled
+	private boolean awaitingTick; //whether the scheduler's Thread is waiting for a tick
+	private boolean framePending; //whether a frame has been handed to the Event Dispatch Thread and not yet painted
+	private boolean stopped;
+	private double paintNanos; //moving average of the time a frame takes to paint
+	private long framesPainted, framesDropped, ticksCoalesced;
+
+	/**
+	 * Constructor. The scheduler does nothing until <code>start()</code> is called.
+	 * @param paintFrame - paints one frame; always run on the Event Dispatch Thread
+	 */
+	RenderScheduler(final Runnable paintFrame){
+		frame = new Runnable(){
+			@Override
+			public void run(){
+				long start = System.nanoTime();
+				try {
+					paintFrame.run();
+				}
+				finally {
+					framePainted(System.nanoTime() - start);
+				}
+			}
+		};
+		thread = new Thread("Render scheduler"){
+			@Override
+			public void run(){
+				schedule();
+			}
+		};
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Starts scheduling frames.
+	 */
+	void start(){
+		thread.start();
+	}
+
+	/**
+	 * Stops scheduling frames, for good.
+	 */
+	synchronized void stop(){
+		stopped = true;
+		notifyAll();
+	}
+
+	/**
+	 * Called by the Interpreter each time it finishes a tick.
+	 */
+	synchronized void tickEnded(){
+		ticks++;
+		if (awaitingTick)
+			notifyAll();
+	}
+
+	/**
+	 * Schedules frames until stopped.
+	 */
+	private void schedule(){
+		long lastFrame = System.nanoTime();
+		while (true){
+			synchronized (this){
+				try {
+					//wait for something to show
+					awaitingTick = true;
+					while (!stopped && ticks == ticksPainted)
+						wait();
+					awaitingTick = false;
+					//then for the frame interval to pass
+					long delay;
+					while (!stopped && (delay = lastFrame + frameIntervalNanos() - System.nanoTime()) > 0)
+						wait(delay / 1000000, (int) (delay % 1000000));
+					//the previous frame may still be painting, and may already have missed these ticks
+					if (framePending){
+						framesDropped++;
+						while (!stopped && framePending)
+							wait();
+					}
+				}
+				catch (InterruptedException e){
+					stopped = true;
+				}
+				if (stopped)
+					return;
+				lastFrame = System.nanoTime();
+				ticksCoalesced += ticks - ticksPainted - 1;
+				ticksPainted = ticks;
+				framePending = true;
+			}
+			SwingUtilities.invokeLater(frame);
+		}
+	}
+
+	/**
+	 * Records that a frame has been painted.
+	 * @param nanos - how long painting took
+	 */
+	private synchronized void framePainted(long nanos){
+		framePending = false;
+		notifyAll();
+		framesPainted++;
+		paintNanos = framesPainted == 1 ? nanos : 0.8 * paintNanos + 0.2 * nanos;
+	}
+
+	/**
+	 * Returns the time to leave between the starts of two frames: the target interval, or twice what
+	 * a frame takes to paint if that is longer.
+	 * @return nanoseconds
+	 */
+	synchronized long frameIntervalNanos(){
+		return Math.max(1000000000L / targetFps, (long) (2 * paintNanos));
+	}
+
+	/**
+	 * Sets the frame rate to aim for. Frames are painted less often if ticks or painting are too slow.
+	 * @param fps - frames per second
+	 * @throws IllegalArgumentException if fps is not positive
+	 */
+	synchronized void setTargetFps(int fps){
+		if (fps <= 0)
+			throw new IllegalArgumentException("Target frame rate must be positive: " + fps);
+		targetFps = fps;
+		notifyAll();
+	}
+
+	/**
+	 * Returns the frame rate aimed for.
+	 * @return frames per second
+	 */
+	synchronized int getTargetFps(){
+		return targetFps;
+	}
+
+	/**
+	 * Returns the number of frames painted so far.
+	 * @return framesPainted
+	 */
+	synchronized long getFramesPainted(){
+		return framesPainted;
+	}
+
+	/**
+	 * Returns the number of frames that were due while the Event Dispatch Thread was still painting the previous one.
+	 * @return framesDropped
+	 */
+	synchronized long getFramesDropped(){
+		return framesDropped;
+	}
+
+	/**
+	 * Returns the number of ticks that were never shown on their own, because a later tick ended before their frame.
+	 * @return ticksCoalesced
+	 */
+	synchronized long getTicksCoalesced(){
+		return ticksCoalesced;
+	}
+
+	/**
+	 * Returns the average time recent frames took to paint.
+	 * @return milliseconds
+	 */
+	synchronized double getPaintMillis(){
+		return paintNanos / 1000000;
+	}
+
+	/**
+	 * Describes how frames have been paced so far.
+	 * @return description
+	 */
+	@Override
+	public synchronized String toString(){
+		return String.format("%d fps target, %d frames painted, %d dropped, %d ticks coalesced, %.2f ms per paint",
+				targetFps, framesPainted, framesDropped, ticksCoalesced, paintNanos / 1000000);
+	}
+}
@@ -0,0 +1,141 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for RenderScheduler class of Bugs language Interpreter.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class RenderSchedulerTest {
+	private RenderScheduler scheduler;
+	private final AtomicInteger frames = new AtomicInteger();
+	private volatile long paintMillis; //how long each frame takes to paint
+	private volatile boolean onEventDispatchThread = true;
+	private final CountDownLatch paintStarted = new CountDownLatch(1); //counted down when the first frame starts painting
+	private volatile CountDownLatch paintGate; //frames wait until it is opened, if there is one
+
+	@After
+	public void tearDown(){
+		if (scheduler != null)
+			scheduler.stop();
+	}
+
+	@Test
+	public void testNoTicksNoFrames() throws InterruptedException{
+		start(100);
+		Thread.sleep(100);
+		assertEquals(0, frames.get());
+	}
+
+	@Test
+	public void testSlowTicksGetAFrameEach() throws InterruptedException{
+		start(100);
+		//each tick ends only once the frame showing the tick before it has been painted
+		for (int i = 0; i < 5; i++){
+			scheduler.tickEnded();
+			awaitFrames(i + 1);
+		}
+		assertEquals(5, scheduler.getFramesPainted());
+		assertEquals(0, scheduler.getTicksCoalesced());
+		assertEquals(0, scheduler.getFramesDropped());
+		assertTrue(onEventDispatchThread);
+	}
+
+	@Test
+	public void testFastTicksAreCoalesced() throws InterruptedException{
+		start(10);
+		long end = System.currentTimeMillis() + 300;
+		int ticks = 0;
+		while (System.currentTimeMillis() < end){
+			scheduler.tickEnded();
+			ticks++;
+		}
+		//every tick is shown, on its own or coalesced with later ones, once the last frame is painted
+		long deadline = System.currentTimeMillis() + 5000;
+		while (frames.get() + scheduler.getTicksCoalesced() < ticks && System.currentTimeMillis() < deadline){
+			Thread.sleep(5);
+		}
+		assertTrue(scheduler.toString(), frames.get() >= 1);
+		assertEquals(ticks, frames.get() + scheduler.getTicksCoalesced());
+		assertEquals(frames.get(), scheduler.getFramesPainted());
+	}
+
+	@Test
+	public void testSlowPaintingSpacesFramesOut() throws InterruptedException{
+		start(1000);
+		paintMillis = 20;
+		scheduler.tickEnded();
+		awaitFrames(1);
+		//a frame took 20 ms, so frames are at least 40 ms apart rather than 1 ms
+		assertTrue(scheduler.frameIntervalNanos() >= 40000000L);
+		assertTrue(scheduler.getPaintMillis() >= 20);
+	}
+
+	@Test
+	public void testFramesAreDroppedWhilePainting() throws InterruptedException{
+		start(1000);
+		paintGate = new CountDownLatch(1);
+		scheduler.tickEnded();
+		paintStarted.await(5, TimeUnit.SECONDS);
+		//the first frame is still painting when the second is due
+		scheduler.tickEnded();
+		paintGate.countDown();
+		awaitFrames(2);
+		assertEquals(1, scheduler.getFramesDropped());
+		assertEquals(0, scheduler.getTicksCoalesced());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testTargetFpsMustBePositive(){
+		new RenderScheduler(null).setTargetFps(0);
+	}
+
+	//HELPER methods
+	/**
+	 * Starts a scheduler whose frames are counted.
+	 * @param fps - target frame rate
+	 */
+	private void start(int fps){
+		scheduler = new RenderScheduler(new Runnable(){
+			@Override
+			public void run(){
+				if (!SwingUtilities.isEventDispatchThread())
+					onEventDispatchThread = false;
+				paintStarted.countDown();
+				try {
+					if (paintGate != null)
+						paintGate.await();
+					Thread.sleep(paintMillis);
+				}
+				catch (InterruptedException e){
+				}
+				frames.incrementAndGet();
+			}
+		});
+		scheduler.setTargetFps(fps);
+		assertEquals(fps, scheduler.getTargetFps());
+		scheduler.start();
+	}
+
+	/**
+	 * Waits for frames to be painted, for at most 5 seconds.
+	 * @param count
+	 */
+	private void awaitFrames(int count) throws InterruptedException{
+		long end = System.currentTimeMillis() + 5000;
+		while (scheduler.getFramesPainted() < count && System.currentTimeMillis() < end){
+			Thread.sleep(5);
+		}
+	}
+}
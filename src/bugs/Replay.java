@@ -0,0 +1,358 @@
+package bugs;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Plays a Recording in a View, at any speed and from any tick, without running the program again.
+ * Lines are read from the recording as playback reaches them and kept, so going back shows fewer
+ * of them without reading anything again; the Bugs' poses at an earlier tick are read from the key
+ * tick before it.
+ * <p>
+ * Usage: <code>java bugs.Replay recording [ticks per second]</code>
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class Replay extends Scene {
+	static final double DEFAULT_SPEED = 25; //ticks per second
+
+	private final Recording recording;
+	private final Recording.Cursor reader; //reads the lines of each tick in turn
+	private final Recording.Cursor jumper; //reads the poses of earlier ticks
+	private final PrimitiveLineStore read = new PrimitiveLineStore(); //lines read so far
+	private final int[] linesAt; //lines drawn up to the end of each tick read so far
+	private Shown shown; //the lines shown at the current tick
+	private Bug.Pose[] poses = new Bug.Pose[0]; //the Bugs at the current tick
+	private int tick = -1; //the current tick, -1 before the first
+	private final DirtyRegion dirtyRegion = new DirtyRegion();
+	private volatile Runnable tickListener;
+	private double speed = DEFAULT_SPEED; //ticks per second
+	private Thread player; //moves on a tick at a time while playing, null when paused
+
+	/**
+	 * Constructor. The replay starts before the first tick, paused.
+	 * @param recording
+	 */
+	public Replay(Recording recording){
+		this.recording = recording;
+		reader = recording.cursor();
+		jumper = recording.cursor();
+		linesAt = new int[recording.getTickCount()];
+		shown = new Shown(read);
+	}
+
+	/**
+	 * Shows a tick.
+	 * @param tick - from -1 (before the first tick) to <code>getTickCount() - 1</code>
+	 * @throws IndexOutOfBoundsException if there is no such tick
+	 */
+	public void seek(int tick){
+		synchronized (this){
+			if (tick < -1 || tick >= linesAt.length)
+				throw new IndexOutOfBoundsException("Tick: " + tick + ", Ticks: " + linesAt.length);
+			while (reader.getTick() < tick){
+				reader.next(read);
+				linesAt[reader.getTick()] = reader.getLines();
+			}
+			int lines = tick < 0 ? 0 : linesAt[tick];
+			if (lines < shown.size){
+				//the View keeps the lines it has drawn, so give it a new store to start again from
+				shown = new Shown(read);
+				shown.size = lines;
+				dirtyRegion.addLine(Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+			}
+			else {
+				for (int i = shown.size; i < lines; i++){
+					if (read.getColor(i) != null)
+						dirtyRegion.addLine(read.getX1(i), read.getY1(i), read.getX2(i), read.getY2(i));
+				}
+				shown.size = lines;
+			}
+			Bug.Pose[] newPoses;
+			if (reader.getTick() == tick)
+				newPoses = reader.getPoses();
+			else {
+				jumper.seek(tick);
+				newPoses = jumper.getPoses();
+			}
+			for (Bug.Pose pose : poses){
+				dirtyRegion.addBug(pose.x, pose.y);
+			}
+			for (Bug.Pose pose : newPoses){
+				dirtyRegion.addBug(pose.x, pose.y);
+			}
+			poses = newPoses;
+			this.tick = tick;
+		}
+		Runnable listener = tickListener;
+		if (listener != null)
+			listener.run();
+	}
+
+	/**
+	 * Plays from the current tick to the end, a tick at a time.
+	 */
+	public synchronized void play(){
+		if (player != null)
+			return;
+		player = new Thread("Replay"){
+			@Override
+			public void run(){
+				playTicks(this);
+			}
+		};
+		player.setDaemon(true);
+		player.start();
+	}
+
+	/**
+	 * Moves on a tick at a time until paused or at the end.
+	 * @param thread - the Thread doing this, which stops when it is no longer the player
+	 */
+	private void playTicks(Thread thread){
+		long next = System.nanoTime();
+		while (true){
+			int tick;
+			synchronized (this){
+				try {
+					long delay;
+					while (player == thread && (delay = next - System.nanoTime()) > 0)
+						wait(delay / 1000000, (int) (delay % 1000000));
+				}
+				catch (InterruptedException e){
+					player = null;
+				}
+				if (player != thread)
+					return;
+				if (this.tick + 1 >= linesAt.length){
+					player = null;
+					return;
+				}
+				tick = this.tick + 1;
+				next = Math.max(next + (long) (1e9 / speed), System.nanoTime() - 1000000000L);
+			}
+			seek(tick);
+		}
+	}
+
+	/**
+	 * Stops playing at the current tick.
+	 */
+	public synchronized void pause(){
+		player = null;
+		notifyAll();
+	}
+
+	/**
+	 * Returns whether the replay is playing.
+	 * @return true until paused or at the end
+	 */
+	public synchronized boolean isPlaying(){
+		return player != null;
+	}
+
+	/**
+	 * Sets how fast to play.
+	 * @param ticksPerSecond - may be infinite, to play as fast as the recording can be read
+	 * @throws IllegalArgumentException if ticksPerSecond is not positive
+	 */
+	public synchronized void setSpeed(double ticksPerSecond){
+		if (!(ticksPerSecond > 0))
+			throw new IllegalArgumentException("Speed must be positive: " + ticksPerSecond);
+		speed = ticksPerSecond;
+		notifyAll();
+	}
+
+	/**
+	 * Returns the tick shown.
+	 * @return tick, -1 before the first
+	 */
+	public synchronized int getTick(){
+		return tick;
+	}
+
+	/**
+	 * Returns the number of ticks in the recording.
+	 * @return ticks
+	 */
+	public int getTickCount(){
+		return linesAt.length;
+	}
+
+	/**
+	 * Returns the recording being played.
+	 * @return recording
+	 */
+	public Recording getRecording(){
+		return recording;
+	}
+
+	@Override
+	synchronized LineStore getLines(){
+		return shown;
+	}
+
+	@Override
+	synchronized Bug.Pose[] getPoses(){
+		return poses;
+	}
+
+	@Override
+	DirtyRegion getDirtyRegion(){
+		return dirtyRegion;
+	}
+
+	@Override
+	void setTickListener(Runnable listener){
+		tickListener = listener;
+	}
+
+	/**
+	 * The first lines of those read so far: the ones drawn up to the current tick.
+	 */
+	private static class Shown extends LineStore {
+		private final LineStore lines;
+		private volatile int size;
+
+		Shown(LineStore lines){
+			this.lines = lines;
+		}
+
+		@Override
+		public void add(double x1, double y1, double x2, double y2, Color color){
+			throw new UnsupportedOperationException("A replay cannot be drawn on");
+		}
+
+		@Override
+		public int size(){
+			return size;
+		}
+
+		@Override
+		public Command get(int index){
+			if (index >= size)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			return lines.get(index);
+		}
+
+		@Override
+		public double getX1(int index){
+			return lines.getX1(index);
+		}
+
+		@Override
+		public double getY1(int index){
+			return lines.getY1(index);
+		}
+
+		@Override
+		public double getX2(int index){
+			return lines.getX2(index);
+		}
+
+		@Override
+		public double getY2(int index){
+			return lines.getY2(index);
+		}
+
+		@Override
+		public Color getColor(int index){
+			return lines.getColor(index);
+		}
+	}
+
+	/**
+	 * Opens a window playing a recording, with a slider to go to any tick.
+	 * @param args - the recording, then optionally the ticks per second
+	 */
+	public static void main(String[] args){
+		if (args.length < 1 || args.length > 2){
+			System.err.println("Usage: java bugs.Replay recording [ticks per second]");
+			System.exit(1);
+		}
+		final Replay replay;
+		try {
+			replay = new Replay(Recording.open(new File(args[0])));
+			if (args.length > 1)
+				replay.setSpeed(Double.parseDouble(args[1]));
+		}
+		catch (IOException e){
+			System.err.println("There was an error reading the recording.\n" + e);
+			System.exit(1);
+			return;
+		}
+		catch (IllegalArgumentException e){
+			System.err.println("Bad speed: " + args[1]);
+			System.exit(1);
+			return;
+		}
+		SwingUtilities.invokeLater(new Runnable(){
+			@Override
+			public void run(){
+				showWindow(replay);
+			}
+		});
+	}
+
+	/**
+	 * Creates the window for <code>main</code>, and starts playing.
+	 * @param replay
+	 */
+	private static void showWindow(final Replay replay){
+		JFrame frame = new JFrame("Bugs replay");
+		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		frame.setSize(600, 650);
+		View view = new View();
+		view.addReplay(replay);
+		final JSlider slider = new JSlider(-1, Math.max(-1, replay.getTickCount() - 1), -1);
+		final JButton playButton = new JButton("Pause");
+		slider.addChangeListener(new ChangeListener(){
+			@Override
+			public void stateChanged(ChangeEvent e){
+				//only the user's dragging moves the replay; the timer below just follows it
+				if (slider.getValueIsAdjusting() || slider.getValue() != replay.getTick() && !replay.isPlaying())
+					replay.seek(slider.getValue());
+			}
+		});
+		playButton.addActionListener(new ActionListener(){
+			@Override
+			public void actionPerformed(ActionEvent e){
+				if (replay.isPlaying())
+					replay.pause();
+				else {
+					if (replay.getTick() == replay.getTickCount() - 1)
+						replay.seek(-1);
+					replay.play();
+				}
+			}
+		});
+		new Timer(100, new ActionListener(){
+			@Override
+			public void actionPerformed(ActionEvent e){
+				if (!slider.getValueIsAdjusting())
+					slider.setValue(replay.getTick());
+				playButton.setText(replay.isPlaying() ? "Pause" : "Play");
+			}
+		}).start();
+		JPanel controls = new JPanel(new BorderLayout());
+		controls.add(playButton, BorderLayout.WEST);
+		controls.add(slider, BorderLayout.CENTER);
+		frame.add(view, BorderLayout.CENTER);
+		frame.add(controls, BorderLayout.SOUTH);
+		frame.setVisible(true);
+		replay.play();
+	}
+}
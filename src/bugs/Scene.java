@@ -0,0 +1,36 @@
+package bugs;
+
+/**
+ * What a View shows: lines, and Bugs as they were at the end of the last tick, along with what has
+ * changed since the View last looked. A running Interpreter is one (see <code>Interpreter.getScene()</code>),
+ * a Replay of a Recording is another.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+abstract class Scene {
+
+	/**
+	 * Returns the lines to show. A View keeps the lines it has drawn, so the store must only grow;
+	 * a Scene that goes back to fewer lines must return a new store.
+	 * @return lines
+	 */
+	abstract LineStore getLines();
+
+	/**
+	 * Returns how each Bug was shown at the end of the last tick.
+	 * @return poses
+	 */
+	abstract Bug.Pose[] getPoses();
+
+	/**
+	 * Returns what has changed since the View last repainted.
+	 * @return region
+	 */
+	abstract DirtyRegion getDirtyRegion();
+
+	/**
+	 * Sets what to tell at the end of each tick, such as a View's RenderScheduler.
+	 * @param listener - null to tell nothing
+	 */
+	abstract void setTickListener(Runnable listener);
+}
@@ -0,0 +1,104 @@
+package bugs;
+
+import java.awt.Color;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free, append-only LineStore. Lines are kept in segments that double in size, so storing
+ * a line never copies the lines before it and a reader never sees an array being replaced.
+ * <p>
+ * A Bug appending a line first reserves an index, then fills in its slot, then publishes. Publishing
+ * moves <code>size()</code> forward over every filled slot, including slots filled by other Bugs
+ * that have not got round to publishing yet, so no Bug ever waits for another.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class SegmentedLineStore extends LineStore {
+	private static final int FIRST_SHIFT = 10; //the first segment holds 2^FIRST_SHIFT lines, each later one twice as many as the one before
+	private static final int FIRST_SIZE = 1 << FIRST_SHIFT;
+	private static final int SEGMENTS = 31 - FIRST_SHIFT; //enough segments for all but the last FIRST_SIZE int indexes
+	private static final int MAX_LINES = Integer.MAX_VALUE - FIRST_SIZE + 1;
+
+	private final AtomicReferenceArray<AtomicReferenceArray<Command>> segments; //segments, created when first needed
+	private final AtomicInteger reserved = new AtomicInteger(); //number of indexes handed out to appending Bugs
+	private final AtomicInteger published = new AtomicInteger(); //number of lines, all filled in, that readers may see
+
+	/**
+	 * Constructor. Creates an empty store.
+	 */
+	public SegmentedLineStore(){
+		segments = new AtomicReferenceArray<AtomicReferenceArray<Command>>(SEGMENTS);
+	}
+
+	@Override
+	public void add(double x1, double y1, double x2, double y2, Color color){
+		int index = reserved.getAndIncrement();
+		if (index < 0 || index >= MAX_LINES)
+			throw new IllegalStateException("Too many lines");
+		int segment = segmentOf(index);
+		AtomicReferenceArray<Command> lines = segments.get(segment);
+		if (lines == null){
+			segments.compareAndSet(segment, null, new AtomicReferenceArray<Command>(FIRST_SIZE << segment));
+			lines = segments.get(segment);
+		}
+		lines.set(offsetOf(index, segment), new Command(x1, y1, x2, y2, color));
+		publish();
+	}
+
+	/**
+	 * Moves the published size forward over every slot that has been filled in.
+	 */
+	private void publish(){
+		while (true){
+			int size = published.get();
+			if (size == reserved.get() || slot(size) == null)
+				return;
+			published.compareAndSet(size, size + 1);
+		}
+	}
+
+	/**
+	 * Returns the line in a slot that has been reserved, which is null until it has been filled in.
+	 * @param index
+	 * @return line or null
+	 */
+	private Command slot(int index){
+		int segment = segmentOf(index);
+		AtomicReferenceArray<Command> lines = segments.get(segment);
+		return lines == null ? null : lines.get(offsetOf(index, segment));
+	}
+
+	@Override
+	public int size(){
+		return published.get();
+	}
+
+	@Override
+	public Command get(int index){
+		if (index < 0 || index >= published.get())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + published.get());
+		int segment = segmentOf(index);
+		return segments.get(segment).get(offsetOf(index, segment));
+	}
+
+	/**
+	 * Finds the segment an index is in.
+	 * @param index
+	 * @return segment
+	 */
+	private static int segmentOf(int index){
+		//segment s starts at index FIRST_SIZE * (2^s - 1)
+		return 31 - Integer.numberOfLeadingZeros((index >>> FIRST_SHIFT) + 1);
+	}
+
+	/**
+	 * Finds where an index is within its segment.
+	 * @param index
+	 * @param segment
+	 * @return offset
+	 */
+	private static int offsetOf(int index, int segment){
+		return index - ((FIRST_SIZE << segment) - FIRST_SIZE);
+	}
+}
@@ -0,0 +1,125 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests for SegmentedLineStore class of Bugs language Interpreter.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class SegmentedLineStoreTest {
+
+	/**
+	 * Creates the kind of store being tested.
+	 * @return an empty store
+	 */
+	protected LineStore newStore(){
+		return new SegmentedLineStore();
+	}
+
+	@Test
+	public void testAddAndGet(){
+		LineStore lines = newStore();
+		assertEquals(0, lines.size());
+		//enough lines to fill several segments
+		for (int i = 0; i < 10000; i++){
+			lines.add(i, i + 1, i + 2, i + 3, i % 2 == 0 ? Color.RED : null);
+			assertEquals(i + 1, lines.size());
+		}
+		for (int i = 0; i < 10000; i++){
+			Command line = lines.get(i);
+			assertEquals(i, line.getX1(), 0);
+			assertEquals(i + 1, line.getY1(), 0);
+			assertEquals(i + 2, line.getX2(), 0);
+			assertEquals(i + 3, line.getY2(), 0);
+			assertEquals(i % 2 == 0 ? Color.RED : null, line.getColor());
+			assertEquals(i, lines.getX1(i), 0);
+			assertEquals(i + 1, lines.getY1(i), 0);
+			assertEquals(i + 2, lines.getX2(i), 0);
+			assertEquals(i + 3, lines.getY2(i), 0);
+			assertEquals(i % 2 == 0 ? Color.RED : null, lines.getColor(i));
+		}
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testGetPastSize(){
+		LineStore lines = newStore();
+		lines.add(1, 2, 3, 4, Color.BLACK);
+		lines.get(1);
+	}
+
+	@Test
+	public void testIteratorSeesSnapshot(){
+		LineStore lines = newStore();
+		lines.add(1, 1, 1, 1, Color.BLACK);
+		lines.add(2, 2, 2, 2, Color.BLACK);
+		Iterator<Command> iterator = lines.iterator();
+		lines.add(3, 3, 3, 3, Color.BLACK);
+		assertEquals(1, iterator.next().getX1(), 0);
+		assertEquals(2, iterator.next().getX1(), 0);
+		assertFalse(iterator.hasNext());
+		int count = 0;
+		for (Command line : lines){
+			assertEquals(++count, line.getX1(), 0);
+		}
+		assertEquals(3, count);
+	}
+
+	@Test
+	public void testConcurrentAppends() throws InterruptedException{
+		final LineStore lines = newStore();
+		final int threads = 8;
+		final int perThread = 20000;
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] writers = new Thread[threads];
+		for (int t = 0; t < threads; t++){
+			final int id = t;
+			writers[t] = new Thread(){
+				@Override
+				public void run(){
+					try {
+						start.await();
+					}
+					catch (InterruptedException e){
+						return;
+					}
+					for (int i = 0; i < perThread; i++){
+						lines.add(id, i, 0, 0, Color.BLACK);
+					}
+				}
+			};
+			writers[t].start();
+		}
+		start.countDown();
+		//a reader running alongside the writers always sees complete lines
+		int seen = 0;
+		while (seen < threads * perThread){
+			int size = lines.size();
+			assertTrue(size >= seen);
+			for (int i = seen; i < size; i++){
+				assertNotNull(lines.get(i));
+			}
+			seen = size;
+		}
+		for (Thread writer : writers){
+			writer.join();
+		}
+		//every line is stored exactly once, and each thread's lines are in the order it added them
+		assertEquals(threads * perThread, lines.size());
+		int[] next = new int[threads];
+		for (Command line : lines){
+			int id = (int) line.getX1();
+			assertEquals(next[id]++, line.getY1(), 0);
+		}
+		for (int t = 0; t < threads; t++){
+			assertEquals(perThread, next[t]);
+		}
+	}
+}
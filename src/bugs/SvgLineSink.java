@@ -0,0 +1,136 @@
+package bugs;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * LineSink that writes each line to an SVG document as it is drawn. Coordinates are scaled from the
+ * 100 by 100 unit drawing area to the document's size in pixels, and lines are drawn one pixel wide
+ * with square ends on a white background, as by the View and the BatchRenderer. Invisible lines, and
+ * lines with coordinates that are not numbers, are left out.
+ * <p>
+ * Nothing but the end of the document is kept in memory, so a drawing of any size can be written.
+ * Adding takes a lock.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+public class SvgLineSink implements LineSink {
+	private final Writer out;
+	private final double scaleX, scaleY; //pixels per unit
+	private final StringBuilder element = new StringBuilder(); //reused for each line
+	private IOException error; //the first error writing, after which nothing more is written
+	private boolean closed;
+
+	/**
+	 * Constructor. Writes the start of the document.
+	 * @param out - where to write; should be buffered
+	 * @param width - in pixels
+	 * @param height - in pixels
+	 * @throws IOException if the start of the document cannot be written
+	 */
+	public SvgLineSink(Writer out, int width, int height) throws IOException {
+		this.out = out;
+		scaleX = width / 100.0;
+		scaleY = height / 100.0;
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height + "\">\n");
+		out.write("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+		out.write("<g fill=\"none\" stroke-width=\"1\" stroke-linecap=\"square\">\n");
+	}
+
+	@Override
+	public synchronized void add(double x1, double y1, double x2, double y2, Color color){
+		if (color == null || error != null || closed || Double.isNaN(x1 + y1 + x2 + y2) || Double.isInfinite(x1 + y1 + x2 + y2))
+			return;
+		element.setLength(0);
+		element.append("<line x1=\"");
+		appendNumber(x1 * scaleX);
+		element.append("\" y1=\"");
+		appendNumber(y1 * scaleY);
+		element.append("\" x2=\"");
+		appendNumber(x2 * scaleX);
+		element.append("\" y2=\"");
+		appendNumber(y2 * scaleY);
+		element.append("\" stroke=\"#");
+		String rgb = Integer.toHexString(color.getRGB() & 0xFFFFFF);
+		for (int i = rgb.length(); i < 6; i++){
+			element.append('0');
+		}
+		element.append(rgb).append("\"/>\n");
+		try {
+			out.append(element);
+		}
+		catch (IOException e){
+			error = e;
+		}
+	}
+
+	/**
+	 * Appends a number to the element being built, to a thousandth of a pixel and without trailing zeros.
+	 * @param value - a finite number
+	 */
+	private void appendNumber(double value){
+		if (Math.abs(value) >= 1e12){
+			element.append(value); //far outside the document; exponent notation is valid SVG
+			return;
+		}
+		long thousandths = Math.round(value * 1000);
+		if (thousandths < 0){
+			element.append('-');
+			thousandths = -thousandths;
+		}
+		element.append(thousandths / 1000);
+		int fraction = (int) (thousandths % 1000);
+		if (fraction != 0){
+			element.append('.');
+			if (fraction < 100)
+				element.append('0');
+			if (fraction < 10)
+				element.append('0');
+			while (fraction % 10 == 0){
+				fraction /= 10;
+			}
+			element.append(fraction);
+		}
+	}
+
+	@Override
+	public synchronized void flush(){
+		if (error != null || closed)
+			return;
+		try {
+			out.flush();
+		}
+		catch (IOException e){
+			error = e;
+		}
+	}
+
+	/**
+	 * Writes the end of the document and closes the Writer.
+	 * @throws IOException if any part of the document could not be written
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			if (error == null)
+				out.write("</g>\n</svg>\n");
+		}
+		catch (IOException e){
+			error = e;
+		}
+		try {
+			out.close();
+		}
+		catch (IOException e){
+			if (error == null)
+				error = e;
+		}
+		if (error != null)
+			throw error;
+	}
+}
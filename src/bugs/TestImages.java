@@ -0,0 +1,36 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+/**
+ * Assertions on drawn images, shared by the tests of the classes that draw lines.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+final class TestImages {
+
+	private TestImages(){
+	}
+
+	/**
+	 * Checks that two images are identical, pixel for pixel, and that something was drawn on the white background.
+	 * @param expected
+	 * @param actual
+	 */
+	static void assertSameImage(BufferedImage expected, BufferedImage actual){
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		boolean drawn = false;
+		for (int y = 0; y < expected.getHeight(); y++){
+			for (int x = 0; x < expected.getWidth(); x++){
+				assertEquals("Pixel " + x + ", " + y, expected.getRGB(x, y), actual.getRGB(x, y));
+				drawn |= expected.getRGB(x, y) != Color.WHITE.getRGB();
+			}
+		}
+		assertTrue(drawn);
+	}
+}
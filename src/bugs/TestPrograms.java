@@ -0,0 +1,106 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import tree.Tree;
+
+/**
+ * Runs whole Bugs programs for tests and describes what they drew, so different ways of running
+ * a program can be compared.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+final class TestPrograms {
+
+	private TestPrograms(){
+	}
+
+	/**
+	 * Parses a complete Bugs program.
+	 * @param source
+	 * @return AST of the program
+	 */
+	static Tree<Token> parse(String source){
+		Parser parser = new Parser(source);
+		assertTrue(parser.isProgram());
+		return parser.stack.pop();
+	}
+
+	/**
+	 * Runs a program both ways and compares the lines drawn. Bugs may run concurrently, so
+	 * lines are compared without regard to the order in which different Bugs drew them.
+	 * @param source - the program
+	 * @param reference - mode giving the expected drawing
+	 * @param mode - mode that must draw the same
+	 */
+	static void assertSameDrawing(String source, Interpreter.Mode reference, Interpreter.Mode mode){
+		Tree<Token> tree = parse(source);
+		List<String> expected = drawnLines(tree, reference);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, drawnLines(tree, mode));
+	}
+
+	/**
+	 * Runs a program to completion without pausing between steps.
+	 * @param tree
+	 * @param mode
+	 * @return sorted descriptions of the lines drawn
+	 */
+	static List<String> drawnLines(Tree<Token> tree, Interpreter.Mode mode){
+		return drawnLines(tree, mode, Interpreter.DEFAULT_RECURSION_LIMIT);
+	}
+
+	/**
+	 * Runs a program to completion without pausing between steps.
+	 * @param tree
+	 * @param mode
+	 * @param recursionLimit - most function calls each Bug may have active at once
+	 * @return sorted descriptions of the lines drawn
+	 */
+	static List<String> drawnLines(Tree<Token> tree, Interpreter.Mode mode, int recursionLimit){
+		Interpreter interpreter = new Interpreter(tree, mode);
+		interpreter.setRecursionLimit(recursionLimit);
+		runToEnd(interpreter);
+		return sortedLines(interpreter);
+	}
+
+	/**
+	 * Runs an Interpreter without pausing until all of its Bugs have finished, for at most 10 seconds.
+	 * @param interpreter - not yet started
+	 */
+	static void runToEnd(Interpreter interpreter){
+		interpreter.updatePauseTime(0);
+		interpreter.setPermissionToGrant(true);
+		interpreter.start();
+		try {
+			interpreter.join(10000);
+		}
+		catch (InterruptedException e) {
+			interpreter.kill();
+			Thread.currentThread().interrupt();
+			fail("Interrupted while waiting for the program to finish");
+		}
+		assertFalse("Program did not finish", interpreter.isAlive());
+	}
+
+	/**
+	 * Describes the lines an Interpreter has drawn, in sorted order.
+	 * @param interpreter
+	 * @return descriptions of the lines
+	 */
+	static List<String> sortedLines(Interpreter interpreter){
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < interpreter.getLines().size(); i++){
+			Command command = interpreter.getLines().get(i);
+			lines.add(command.getX1() + ", " + command.getY1() + ", " + command.getX2() + ", "
+					+ command.getY2() + " " + command.getColor());
+		}
+		Collections.sort(lines);
+		return lines;
+	}
+}
@@ -0,0 +1,95 @@
+package bugs;
+
+import java.util.List;
+import java.util.concurrent.Phaser;
+
+/**
+ * Work permit barrier for Bugs that run on their own (platform or virtual) threads. Each tick is one
+ * phase of a <code>Phaser</code>: a Bug arrives when it asks for its next work permit, the Interpreter
+ * arrives when it is allowed to start the next tick, and the phase advances once everyone has arrived,
+ * which hands every Bug its next permit. Each arrival is a single atomic update and the Interpreter is
+ * only woken once per tick, so a tick costs O(n) for n Bugs. Nothing waits on a monitor, so Bugs on
+ * virtual threads never pin their carrier threads.
+ * <p>
+ * Bugs are spread over leaf Phasers of at most <code>LEAF_SIZE</code> parties under one root, so
+ * thousands of Bugs do not all contend on the same counter. A Bug can be registered at any time and
+ * joins at the next tick; a Bug that ends deregisters and no longer holds up the others.
+ * @author Ryan Smith
+ * @version March 2015
+ */
+class TickBarrier {
+	private static final int LEAF_SIZE = 64; //Bugs per leaf Phaser
+
+	private final Phaser root; //the Interpreter is a party of the root, leaf Phasers are its other parties
+	private Phaser leaf; //leaf Phaser that newly registered Bugs join
+	private int leafParties; //number of Bugs registered with leaf
+
+	/**
+	 * Constructor. The Interpreter's Thread is registered as a party straight away.
+	 */
+	TickBarrier(){
+		root = new Phaser(1);
+	}
+
+	/**
+	 * Registers a Bug, which will take part from the next tick on. Called from the Interpreter's Thread.
+	 * @param bug
+	 */
+	void register(Bug bug){
+		if (leaf == null || leafParties == LEAF_SIZE){
+			leaf = new Phaser(root, 0);
+			leafParties = 0;
+		}
+		leaf.register();
+		leafParties++;
+		bug.setTickPhaser(leaf);
+		bug.setBlocked(true);
+	}
+
+	/**
+	 * Makes a Bug wait until the next tick starts. This is also when the Bug's previous action
+	 * counts as completed. A Bug that was never registered (as in unit tests) is never held up.
+	 * @param bug
+	 */
+	void getWorkPermit(Bug bug){
+		Phaser phaser = bug.getTickPhaser();
+		if (phaser != null)
+			phaser.arriveAndAwaitAdvance();
+		bug.setBlocked(false);
+	}
+
+	/**
+	 * Called by a Bug after completing an action. It is set to blocked until its next work permit.
+	 * @param bug
+	 */
+	void completeCurrentTask(Bug bug){
+		bug.setBlocked(true);
+	}
+
+	/**
+	 * Called by a Bug that has finished its program. The Bug leaves, so later ticks no longer wait for it.
+	 * @param bug
+	 * @param bugs - Bugs of the program, which the Bug is removed from
+	 */
+	void terminateBug(Bug bug, List<Bug> bugs){
+		bugs.remove(bug);
+		Phaser phaser = bug.getTickPhaser();
+		if (phaser != null)
+			phaser.arriveAndDeregister();
+	}
+
+	/**
+	 * Called by the Interpreter when it is allowed to start the next tick. Returns once every Bug has
+	 * completed its action for the current tick, at which point they have all been given their next permit.
+	 */
+	void startTick(){
+		root.arriveAndAwaitAdvance();
+	}
+
+	/**
+	 * Lets every waiting Bug go, now and in the future, so Bugs that have been killed can see it and end.
+	 */
+	void release(){
+		root.forceTermination();
+	}
+}
@@ -0,0 +1,245 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for moving an Interpreter's program to another tick with <code>seek</code> and <code>stepBack</code>.
+ * Each position the program is moved to is compared with a program that was stepped there from the start.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class TimelineTest {
+	private static final String PROGRAM = "Allbugs {\n" +
+			"    var amount, delta\n" +
+			"    define wiggle using n {\n" +
+			"        switch {\n" +
+			"            case n > 0\n" +
+			"                move 1\n" +
+			"                turn 45\n" +
+			"                do wiggle(n - 1)\n" +
+			"        }\n" +
+			"        return n\n" +
+			"    }\n" +
+			"}\n" +
+			"Bug Sally {\n" +
+			"    initially {\n" +
+			"        color red\n" +
+			"        x = 50\n" +
+			"        y = 50\n" +
+			"        amount = 1\n" +
+			"    }\n" +
+			"    loop {\n" +
+			"        move amount\n" +
+			"        amount = amount + delta\n" +
+			"        do wiggle(2)\n" +
+			"        turn 90\n" +
+			"        exit if x < 0\n" +
+			"        exit if x > 100\n" +
+			"    }\n" +
+			"}\n" +
+			"Bug Fred {\n" +
+			"    var i, n\n" +
+			"    initially {\n" +
+			"        color blue\n" +
+			"        x = 50\n" +
+			"        y = 49\n" +
+			"        delta = 0.25\n" +
+			"        angle = 180\n" +
+			"    }\n" +
+			"    loop {\n" +
+			"        move 2\n" +
+			"        i = i + 1\n" +
+			"        n = n + 1\n" +
+			"        switch {\n" +
+			"            case i = 20\n" +
+			"                turn 90\n" +
+			"                color green\n" +
+			"                i = 0\n" +
+			"        }\n" +
+			"        exit if n = 150\n" +
+			"    }\n" +
+			"}\n" +
+			"Bug Brief {\n" +
+			"    line 0, 0, 10, 10\n" +
+			"    move 3\n" +
+			"}\n";
+
+	private Interpreter interpreter;
+	private Interpreter fresh;
+
+	@After
+	public void tearDown(){
+		if (interpreter != null)
+			interpreter.kill();
+		if (fresh != null)
+			fresh.kill();
+	}
+
+	@Test
+	public void testSeekMatchesProgramRunFromStart(){
+		//snapshots every tick are thinned out several times over the whole run
+		interpreter = start(1, false);
+		interpreter.runTurbo();
+		awaitEnd(interpreter);
+		int end = interpreter.getTick();
+		assertTrue(end > 300);
+		fresh = start(0, false);
+		int[] targets = {0, 7, 64, 65, 129, 200, end - 1};
+		for (int target : targets){
+			step(fresh, target - fresh.getTick());
+			interpreter.seek(target);
+			assertEquals(target, interpreter.getTick());
+			assertSameProgram(fresh, interpreter);
+		}
+		//moving forward from a rewound program
+		interpreter.seek(3);
+		interpreter.seek(end - 1);
+		assertSameProgram(fresh, interpreter);
+	}
+
+	@Test
+	public void testStepBackThenStepForward(){
+		interpreter = start(10, true);
+		step(interpreter, 43);
+		interpreter.stepBack();
+		assertEquals(42, interpreter.getTick());
+		fresh = start(0, true);
+		step(fresh, 42);
+		assertSameProgram(fresh, interpreter);
+		//the program carries on from where it was moved to
+		step(interpreter, 1);
+		step(fresh, 1);
+		assertEquals(43, interpreter.getTick());
+		assertSameProgram(fresh, interpreter);
+		assertEquals(Interpreter.RunState.PAUSED, interpreter.getRunState());
+	}
+
+	@Test
+	public void testSeekReplacesLineStore(){
+		interpreter = start(10, false);
+		step(interpreter, 30);
+		LineStore before = interpreter.getLines();
+		interpreter.seek(12);
+		assertNotSame(before, interpreter.getLines());
+		assertTrue(interpreter.getLines().size() < before.size());
+		//a View must now redraw everything
+		assertEquals(Integer.MAX_VALUE, interpreter.getDirtyRegion().take(1, 1, 0, 0).width);
+	}
+
+	@Test
+	public void testTurboAfterSeek(){
+		interpreter = start(10, false);
+		step(interpreter, 1);
+		interpreter.seek(0);
+		//the program carries on at full speed from where it was moved to
+		interpreter.runTurbo();
+		awaitEnd(interpreter);
+		assertTrue(interpreter.getTick() > 300);
+		assertTrue(interpreter.getLines().size() > 0);
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testOnlyCooperativeEngineTakesSnapshots(){
+		Parser parser = new Parser(PROGRAM);
+		assertTrue(parser.isProgram());
+		new Interpreter(parser.stack.pop(), Interpreter.Mode.COMPILED, Interpreter.Engine.THREADS).setSnapshotInterval(10);
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testSeekNeedsSnapshots(){
+		interpreter = start(0, false);
+		interpreter.seek(0);
+	}
+
+	//HELPER methods
+	/**
+	 * Starts the test program, paused.
+	 * @param interval - ticks between snapshots, 0 for none
+	 * @param coalesce - whether lines are merged
+	 * @return interpreter
+	 */
+	private Interpreter start(int interval, boolean coalesce){
+		Parser parser = new Parser(PROGRAM);
+		assertTrue(parser.isProgram());
+		Interpreter interpreter = new Interpreter(parser.stack.pop(), Interpreter.Mode.COMPILED);
+		interpreter.setLineCoalescing(coalesce);
+		interpreter.setSnapshotInterval(interval);
+		interpreter.start();
+		return interpreter;
+	}
+
+	/**
+	 * Runs ticks one at a time, as the Step button does.
+	 * @param interpreter
+	 * @param ticks
+	 */
+	private void step(Interpreter interpreter, int ticks){
+		for (int i = 0; i < ticks; i++){
+			int tick = interpreter.getTick();
+			interpreter.giveOneTimePermission();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (interpreter.getTick() == tick){
+				assertTrue("Tick " + tick + " did not end", System.currentTimeMillis() < deadline);
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Waits until every Bug of a program has ended.
+	 * @param interpreter
+	 */
+	private void awaitEnd(Interpreter interpreter){
+		long deadline = System.currentTimeMillis() + 10000;
+		while (interpreter.getBugs().size() > 0){
+			assertTrue("Program did not end", System.currentTimeMillis() < deadline);
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Checks that two programs have drawn the same lines and that their Bugs and Allbugs variables are the same.
+	 * @param expected
+	 * @param actual
+	 */
+	private void assertSameProgram(Interpreter expected, Interpreter actual){
+		assertEquals(expected.getTick(), actual.getTick());
+		LineStore a = expected.getLines(), b = actual.getLines();
+		assertEquals(a.size(), b.size());
+		for (int i = 0; i < a.size(); i++){
+			assertSameLine(a.get(i), b.get(i));
+		}
+		Command open = a.getOpenLine();
+		if (open == null)
+			assertNull(b.getOpenLine());
+		else
+			assertSameLine(open, b.getOpenLine());
+		assertEquals(expected.getBugs().size(), actual.getBugs().size());
+		for (int i = 0; i < expected.getBugs().size(); i++){
+			Bug e = expected.getBugs().get(i), o = actual.getBugs().get(i);
+			assertEquals(e.getBugName(), o.getBugName());
+			assertEquals(e.getX(), o.getX(), 0);
+			assertEquals(e.getY(), o.getY(), 0);
+			assertEquals(e.getAngle(), o.getAngle(), 0);
+			assertEquals(e.getColor(), o.getColor());
+		}
+		assertArrayEquals(expected.getAllbugsValues(), actual.getAllbugsValues(), 0);
+	}
+
+	/**
+	 * Checks that two lines have the same ends and color.
+	 * @param expected
+	 * @param actual
+	 */
+	private void assertSameLine(Command expected, Command actual){
+		assertEquals(expected.getX1(), actual.getX1(), 0);
+		assertEquals(expected.getY1(), actual.getY1(), 0);
+		assertEquals(expected.getX2(), actual.getX2(), 0);
+		assertEquals(expected.getY2(), actual.getY2(), 0);
+		assertEquals(expected.getColor(), actual.getColor());
+	}
+}
@@ -49,6 +49,8 @@ public class Token {
     final Type type;
     /** The characters that make up this token. */
     final String value;
+    /** The value of a NUMBER token, parsed once; NaN for any other type. */
+    final double number;
 
     /**
      * Constructor for Tokens.
@@ -59,6 +61,7 @@ public class Token {
     public Token(Type type, String value) {
         this.type = type;
         this.value = value;
+        this.number = type == Type.NUMBER ? parseNumber(value) : Double.NaN;
     }
 
     /**
@@ -68,8 +71,33 @@ public class Token {
      * determined from the token.
      */
     public Token(String value) {
-        this.type = typeOf(value);
-        this.value = value;
+        this(typeOf(value), value);
+    }
+
+    /**
+     * Constructor for NUMBER Tokens whose value has already been
+     * parsed, such as those read by a <code>StreamTokenizer</code>.
+     * 
+     * @param number The value of the token.
+     */
+    public Token(double number) {
+        this.type = Type.NUMBER;
+        this.value = number + "";
+        this.number = number;
+    }
+
+    /**
+     * Parses the characters of a NUMBER token.
+     * @param s The characters to parse.
+     * @return The value, or NaN if <code>s</code> is not a number.
+     */
+    private static double parseNumber(String s) {
+        try {
+            return Double.parseDouble(s);
+        }
+        catch (NumberFormatException e) {
+            return Double.NaN;
+        }
     }
 
     /**
@@ -62,6 +62,22 @@ public class TokenTest {
         t = new Token("5.0");
         assertEquals(Token.Type.NUMBER, t.type);
         assertEquals("5.0", t.value);
+        assertEquals(5.0, t.number, 0.0);
+        t = new Token(".25");
+        assertEquals(0.25, t.number, 0.0);
+        assertTrue(Double.isNaN(new Token("five").number));
+    }
+
+    /**
+     * Test method for {@link bugs.Token#Token(double)}.
+     */
+    @Test
+    public final void testToken_Double() {
+        Token t = new Token(12.5);
+        assertEquals(Token.Type.NUMBER, t.type);
+        assertEquals("12.5", t.value);
+        assertEquals(12.5, t.number, 0.0);
+        assertEquals(new Token(Token.Type.NUMBER, "12.5"), t);
     }
 
     /**
@@ -4,12 +4,9 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.awt.geom.Line2D;
-import java.util.ArrayList;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 
-import javax.swing.Timer;
 import javax.swing.JPanel;
 
 /**
@@ -19,9 +16,14 @@ import javax.swing.JPanel;
  * @author ryancsmith
  *
  */
-public class View extends JPanel implements ActionListener{
-	Interpreter interpreter;
-	Timer timer=new Timer(40, this);
+public class View extends JPanel{
+	private volatile Scene scene; //what is shown, null before a program is loaded
+	RenderScheduler scheduler; //decides when to paint the next frame
+	private BufferedImage canvas; //every line drawn so far, at the View's current size
+	private LineStore canvasLines; //lines the canvas shows
+	private int linesOnCanvas; //number of those lines already drawn on the canvas
+	private static final int LINE_MARGIN = 2; //pixels a line may touch outside its bounds
+	private static final int BUG_MARGIN = 14; //pixels a Bug's triangle (see paint()) may reach from its position
 	
 	/**
 	 * No argument constructor. The View will be created and added to the GUI before a Bugs
@@ -29,62 +31,140 @@ public class View extends JPanel implements ActionListener{
 	 * if an Interpreter is present in the paint() method.
 	 */
 	public View(){
-		timer.start();// Start the timer here.
+		scheduler = new RenderScheduler(new Runnable(){
+			@Override
+			public void run(){
+				paintFrame();
+			}
+		});
+		scheduler.start();
 	}
 	
 	/**
 	 * Adds an Interpreter to this View.
 	 * @param interpreter - Interpreter to be displayed.
 	 */
-	synchronized public void addInterpreter(Interpreter interpreter){
-		this.interpreter = interpreter;
-		timer.stop();
-		timer.start();
+	public void addInterpreter(Interpreter interpreter){
+		show(interpreter.getScene());
+	}
+	
+	/**
+	 * Shows a Replay of a recorded run in this View.
+	 * @param replay
+	 */
+	public void addReplay(Replay replay){
+		show(replay);
+	}
+	
+	/**
+	 * Shows a Scene instead of the one shown so far, starting from an empty canvas.
+	 * @param scene
+	 */
+	synchronized void show(Scene scene){
+		if (this.scene != null)
+			this.scene.setTickListener(null);
+		this.scene = scene;
+		canvas = null;
+		scene.setTickListener(new Runnable(){
+			@Override
+			public void run(){
+				scheduler.tickEnded();
+			}
+		});
+		repaint();
+	}
+	
+	/**
+	 * Sets the frame rate to aim for while a program is running fast.
+	 * @param fps - frames per second
+	 */
+	public void setTargetFps(int fps){
+		scheduler.setTargetFps(fps);
 	}
 	
 	/**
-	 * Method is listening for an ActionEvent from the Swing Timer. 
-	 * Calls repaint() each time such an event is observed.
+	 * Describes how frames have been paced: frames painted and dropped, ticks coalesced and the cost of painting.
+	 * @return description
 	 */
-	public void actionPerformed(ActionEvent ev){
-		if(ev.getSource()==timer){
-			repaint();
+	public String getFrameStatistics(){
+		return scheduler.toString();
+	}
+	
+	/**
+	 * Called by the RenderScheduler on the Event Dispatch Thread when it is time for a frame. Paints
+	 * the part of the View the Scene has changed since the last frame, if any, straight away
+	 * so the scheduler can tell how long painting takes.
+	 */
+	void paintFrame(){
+		Scene scene = this.scene;
+		if (scene != null){
+			Rectangle dirty = scene.getDirtyRegion().take(scaleX(1), scaleY(1), LINE_MARGIN, BUG_MARGIN);
+			if (dirty != null){
+				dirty = dirty.intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+				if (!dirty.isEmpty())
+					paintImmediately(dirty);
+			}
 		}
 	}
 	
 	/**
-	 * Draws the graphics in the View.
+	 * Draws the graphics in the View. Lines are drawn onto a canvas that is kept from frame to frame,
+	 * so each frame only draws the lines created since the previous one. The whole canvas is only
+	 * redrawn when the View changes size or a new program is loaded. The Bugs move, so they are
+	 * drawn on top of the canvas every frame.
 	 */
 	@Override
 	 public void paint(Graphics g){
 		 //draw all the Bugs and and lines
-		if (interpreter == null){
+		Scene scene = this.scene;
+		if (scene == null){
 			g.setColor(Color.BLUE);
 			g.drawString("Select a Bugs program to load from the File menu.", 140, 250);
 		}
 		else{
-			//draw all Bugs
-			for (int f = 0; f < interpreter.getBugs().size(); f++){
-				Bug bug = interpreter.getBugs().get(f);
-				if (bug.getColor() == null) 
+			//take one sample of the Scene per frame; a program in turbo mode keeps changing it while this draws
+			Bug.Pose[] bugs = scene.getPoses();
+			LineStore lines = scene.getLines();
+			int lineCount = lines.size();
+			Command open = lines.getOpenLine();
+			if (lines.size() != lineCount)
+				open = null; //it was stored meanwhile, and the next frame draws it
+			int width = Math.max(1, getWidth());
+			int height = Math.max(1, getHeight());
+			if (canvas == null || canvas.getWidth() != width || canvas.getHeight() != height || canvasLines != lines){
+				canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+				canvasLines = lines;
+				linesOnCanvas = 0;
+				Graphics2D background = canvas.createGraphics();
+				background.setColor(getBackground());
+				background.fillRect(0, 0, width, height);
+				background.dispose();
+			}
+			//draw the lines that have been created since the last frame
+			if (linesOnCanvas < lineCount){
+				Rasterizer.draw(canvas, lines, linesOnCanvas, lineCount, scaleX(1), scaleY(1));
+				linesOnCanvas = lineCount;
+			}
+			g.drawImage(canvas, 0, 0, null);
+			//a line that may still grow is kept off the canvas
+			if (open != null)
+				Rasterizer.draw((Graphics2D) g, open, scaleX(1), scaleY(1));
+			//draw all Bugs, as they were at the end of the last tick
+			for (int f = 0; f < bugs.length; f++){
+				Bug.Pose bug = bugs[f];
+				if (bug.color == null) 
 					continue;
-			    g.setColor(bug.getColor());
+			    g.setColor(bug.color);
 			    
-			    int x1 = (int) (scaleX(bug.getX()) + computeDeltaX(12, (int)bug.getAngle()));
-			    int x2 = (int) (scaleX(bug.getX() + computeDeltaX(6, (int)bug.getAngle() - 135)));
-			    int x3 = (int) (scaleX(bug.getX() + computeDeltaX(6, (int)bug.getAngle() + 135)));
+			    int x1 = (int) (scaleX(bug.x) + computeDeltaX(12, (int)bug.angle));
+			    int x2 = (int) (scaleX(bug.x) + computeDeltaX(6, (int)bug.angle - 135));
+			    int x3 = (int) (scaleX(bug.x) + computeDeltaX(6, (int)bug.angle + 135));
 			    
-			    int y1 = (int) (scaleY(bug.getY() + computeDeltaY(12, (int)bug.getAngle())));
-			    int y2 = (int) (scaleY(bug.getY()) + computeDeltaY(6, (int)bug.getAngle() - 135));
-			    int y3 = (int) (scaleY(bug.getY()) + computeDeltaY(6, (int)bug.getAngle() + 135));
+			    int y1 = (int) (scaleY(bug.y) + computeDeltaY(12, (int)bug.angle));
+			    int y2 = (int) (scaleY(bug.y) + computeDeltaY(6, (int)bug.angle - 135));
+			    int y3 = (int) (scaleY(bug.y) + computeDeltaY(6, (int)bug.angle + 135));
 			    g.fillPolygon(new int[] { x1, x2, x3 }, new int[] { y1, y2, y3 }, 3);
 			}
-			//draw all lines that have been created
-			for (int s = 0; s < interpreter.getLines().size(); s++){
-				g.setColor(interpreter.getLines().get(s).getColor());
-				Graphics2D g2 = (Graphics2D) g;
-				g2.draw(new Line2D.Double(scaleX(interpreter.getLines().get(s).getX1()), scaleY(interpreter.getLines().get(s).getY1()), scaleX(interpreter.getLines().get(s).getX2()), scaleY(interpreter.getLines().get(s).getY2())));
-			}
 		}
 	 }
 	
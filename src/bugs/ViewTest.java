@@ -0,0 +1,131 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+/**
+ * Tests for View class of Bugs language Interpreter. Frames are painted into images, so these
+ * tests also run without a display.
+ * @author Ryan Smith
+ * @version March 2015
+ *
+ */
+public class ViewTest {
+
+	@Test
+	public void testLinesAreDrawnIncrementally(){
+		View view = new View();
+		view.scheduler.stop();
+		view.setSize(200, 100);
+		Interpreter interpreter = new Interpreter();
+		view.addInterpreter(interpreter);
+		interpreter.getLines().add(0, 50, 100, 50, Color.RED);
+		BufferedImage frame = paint(view);
+		assertEquals(Color.RED.getRGB(), frame.getRGB(150, 50));
+		//the next frame adds the new line to those already drawn
+		interpreter.getLines().add(50, 0, 50, 100, Color.BLUE);
+		interpreter.getLines().add(0, 10, 100, 10, null);
+		frame = paint(view);
+		assertEquals(Color.RED.getRGB(), frame.getRGB(150, 50));
+		assertEquals(Color.BLUE.getRGB(), frame.getRGB(100, 20));
+		assertEquals(view.getBackground().getRGB(), frame.getRGB(150, 10));
+	}
+
+	@Test
+	public void testResizeRedrawsEveryLine(){
+		View view = new View();
+		view.scheduler.stop();
+		view.setSize(100, 100);
+		Interpreter interpreter = new Interpreter();
+		view.addInterpreter(interpreter);
+		interpreter.getLines().add(0, 50, 100, 50, Color.GREEN);
+		paint(view);
+		view.setSize(300, 200);
+		BufferedImage frame = paint(view);
+		assertEquals(Color.GREEN.getRGB(), frame.getRGB(250, 100));
+		assertEquals(view.getBackground().getRGB(), frame.getRGB(250, 50));
+	}
+
+	@Test
+	public void testNewProgramStartsWithEmptyCanvas(){
+		View view = new View();
+		view.scheduler.stop();
+		view.setSize(100, 100);
+		Interpreter interpreter = new Interpreter();
+		view.addInterpreter(interpreter);
+		interpreter.getLines().add(0, 50, 100, 50, Color.GREEN);
+		paint(view);
+		view.addInterpreter(new Interpreter());
+		assertEquals(view.getBackground().getRGB(), paint(view).getRGB(50, 50));
+	}
+
+	@Test
+	public void testGrowingLineIsDrawn(){
+		View view = new View();
+		view.scheduler.stop();
+		view.setSize(100, 100);
+		Interpreter interpreter = new Interpreter();
+		interpreter.setLineCoalescing(true);
+		view.addInterpreter(interpreter);
+		interpreter.getLines().add(0, 50, 30, 50, Color.RED);
+		assertEquals(Color.RED.getRGB(), paint(view).getRGB(20, 50));
+		//the line grows after it has been shown, then another line ends it
+		interpreter.getLines().add(30, 50, 60, 50, Color.RED);
+		interpreter.getLines().add(60, 50, 60, 0, Color.BLUE);
+		BufferedImage frame = paint(view);
+		assertEquals(1, interpreter.getLines().size());
+		assertEquals(Color.RED.getRGB(), frame.getRGB(20, 50));
+		assertEquals(Color.RED.getRGB(), frame.getRGB(50, 50));
+		assertEquals(Color.BLUE.getRGB(), frame.getRGB(60, 20));
+	}
+
+	@Test
+	public void testBugsAreDrawnOnTop(){
+		Parser parser = new Parser("Bug A {\n" +
+				"    x = 50\n" +
+				"    y = 50\n" +
+				"    color red\n" +
+				"    turn 0\n" +
+				"    x = 20\n" +
+				"    turn 0\n" +
+				"}\n");
+		assertTrue(parser.isProgram());
+		Interpreter interpreter = new Interpreter(parser.stack.pop(), Interpreter.Mode.COMPILED);
+		Bug bug = interpreter.getBugs().get(0);
+		View view = new View();
+		view.scheduler.stop();
+		view.setSize(100, 100);
+		view.addInterpreter(interpreter);
+		interpreter.getLines().add(0, 50, 100, 50, Color.BLUE);
+		bug.step();
+		//Bugs are drawn as they were at the end of the last tick
+		assertEquals(Color.BLUE.getRGB(), paint(view).getRGB(53, 50));
+		interpreter.endTick();
+		assertEquals(Color.RED.getRGB(), paint(view).getRGB(53, 50));
+		//the Bug is not left behind on the canvas when it moves
+		bug.step();
+		interpreter.endTick();
+		BufferedImage frame = paint(view);
+		assertEquals(Color.BLUE.getRGB(), frame.getRGB(53, 50));
+		assertEquals(Color.RED.getRGB(), frame.getRGB(23, 50));
+	}
+
+	//HELPER methods
+	/**
+	 * Paints a frame of a View.
+	 * @param view
+	 * @return the frame
+	 */
+	private BufferedImage paint(View view){
+		BufferedImage frame = new BufferedImage(view.getWidth(), view.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = frame.createGraphics();
+		view.paint(g);
+		g.dispose();
+		return frame;
+	}
+}
@@ -0,0 +1,273 @@
+package tree;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * A Tree that cannot be changed once it is built. Since it never changes, its hash code is computed
+ * once, from its value and the hash codes of its children, when it is constructed. Two trees with
+ * different hash codes are never compared node by node, and a tree is always equal to itself, so
+ * comparing trees that share subtrees costs little.
+ * <p>
+ * An <code>Interner</code> shares identical subtrees: every tree it builds with the same value and
+ * the same children is the same object. Trees built by one Interner are equal only if they are
+ * <code>==</code>, and many copies of one subexpression take the memory of one.
+ * <p>
+ * Unlike <code>Tree.equals</code>, <code>equals</code> compares the value of every node, not just
+ * those of the leaves.
+ *
+ * @author Ryan Smith
+ * @param <V> The type of value that can be held in each node.
+ */
+public final class ImmutableTree<V> implements Iterable<ImmutableTree<V>> {
+    private final V value;
+    private final ImmutableTree<V>[] children;
+    private final int hash; //structural hash code, computed when the tree is built
+
+    /**
+     * Constructs a tree that keeps the given array of children, which must not be changed afterwards.
+     *
+     * @param value The value to be put in the root.
+     * @param children The immediate children of the root.
+     */
+    private ImmutableTree(V value, ImmutableTree<V>[] children) {
+        this.value = value;
+        this.children = children;
+        int h = value == null ? 0 : value.hashCode();
+        for (ImmutableTree<V> child : children) {
+            h = 31 * h + child.hash;
+        }
+        hash = h;
+    }
+
+    /**
+     * Returns a tree with the given value in the root node, having the given children.
+     *
+     * @param value The value to be put in the root.
+     * @param children The immediate children of the root, which are copied.
+     * @return The tree.
+     */
+    @SafeVarargs
+    public static <V> ImmutableTree<V> of(V value, ImmutableTree<V>... children) {
+        //copied one by one, so the caller's array is never kept
+        ImmutableTree<V>[] copy = newArray(children.length);
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = children[i];
+        }
+        return new ImmutableTree<V>(value, copy);
+    }
+
+    /**
+     * Makes an immutable copy of a Tree.
+     *
+     * @param tree The Tree to be copied.
+     * @return The copy.
+     */
+    public static <V> ImmutableTree<V> copyOf(Tree<V> tree) {
+        ImmutableTree<V>[] children = newArray(tree.getNumberOfChildren());
+        for (int i = 0; i < children.length; i++) {
+            children[i] = copyOf(tree.getChild(i));
+        }
+        return new ImmutableTree<V>(tree.getValue(), children);
+    }
+
+    /**
+     * Creates an array for the children of a tree.
+     *
+     * @param length The number of children.
+     * @return An array of nulls.
+     */
+    private static <V> ImmutableTree<V>[] newArray(int length) {
+        //an array of ImmutableTree<?> only ever holds trees of one type of value
+        @SuppressWarnings("unchecked")
+        ImmutableTree<V>[] array = (ImmutableTree<V>[]) new ImmutableTree<?>[length];
+        return array;
+    }
+
+    /**
+     * Makes a Tree, which can be changed, with the same shape and values as this tree.
+     *
+     * @return A new Tree.
+     */
+    public Tree<V> toTree() {
+        @SuppressWarnings("unchecked")
+        Tree<V>[] noChildren = (Tree<V>[]) new Tree<?>[0];
+        Tree<V> tree = new Tree<V>(value, noChildren);
+        for (ImmutableTree<V> child : children) {
+            tree.addChild(child.toTree());
+        }
+        return tree;
+    }
+
+    /**
+     * Returns the value in this node.
+     *
+     * @return The value in this node.
+     */
+    public V getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the number of children that this node has.
+     *
+     * @return A count of this node's immediate children.
+     */
+    public int getNumberOfChildren() {
+        return children.length;
+    }
+
+    /**
+     * Returns the <code>index</code>'th child of this node.
+     *
+     * @param index The position of the child that is to be returned.
+     * @return The child at that position.
+     * @throws IndexOutOfBoundsException If <code>index</code> is negative or
+     *     is greater than or equal to the number of children of this node.
+     */
+    public ImmutableTree<V> getChild(int index) {
+        return children[index];
+    }
+
+    /**
+     * Returns an iterator for the children of this node, which cannot remove them.
+     *
+     * @return An iterator for this node's immediate children.
+     */
+    @Override
+    public Iterator<ImmutableTree<V>> iterator() {
+        return Collections.unmodifiableList(Arrays.asList(children)).iterator();
+    }
+
+    /**
+     * Returns a one-line string representing this tree, in the same form as <code>Tree.toString()</code>:<br>
+     * <code>value (child child ... child)</code>.
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        append(sb);
+        return sb.toString();
+    }
+
+    private void append(StringBuilder sb) {
+        sb.append(value);
+        if (children.length == 0)
+            return;
+        sb.append(" (");
+        for (int i = 0; i < children.length; i++) {
+            if (i > 0)
+                sb.append(" ");
+            children[i].append(sb);
+        }
+        sb.append(")");
+    }
+
+    /**
+     * Tests whether the input argument is an ImmutableTree having the same shape
+     * and containing the same values as this tree.
+     *
+     * @param obj The object to be compared to this tree.
+     * @return <code>true</code> if the object is equal to this tree,
+     *         <code>false</code> otherwise.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof ImmutableTree))
+            return false;
+        ImmutableTree<?> that = (ImmutableTree<?>) obj;
+        //equal trees have equal hash codes, which cost nothing to compare
+        if (hash != that.hash || children.length != that.children.length)
+            return false;
+        if (value == null ? that.value != null : !value.equals(that.value))
+            return false;
+        for (int i = 0; i < children.length; i++) {
+            if (!children[i].equals(that.children[i]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code computed when this tree was constructed.
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    //---------------------------------------------------------------------
+
+    /**
+     * Builds ImmutableTrees, returning the tree it built before instead of a new one whenever they
+     * would be equal. Trees are kept for as long as the Interner is, so the trees that should share
+     * memory (the programs being cached, say) should share an Interner, and others should not.
+     *
+     * @param <V> The type of value that can be held in each node.
+     */
+    public static final class Interner<V> {
+        private final HashMap<ImmutableTree<V>, ImmutableTree<V>> trees = new HashMap<ImmutableTree<V>, ImmutableTree<V>>();
+
+        /**
+         * Returns the tree with the given value and children.
+         *
+         * @param value The value to be put in the root.
+         * @param children The immediate children of the root, which should have been built by this Interner.
+         * @return A tree built by this Interner.
+         */
+        @SafeVarargs
+        public final ImmutableTree<V> intern(V value, ImmutableTree<V>... children) {
+            ImmutableTree<V>[] copy = newArray(children.length);
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = children[i];
+            }
+            return intern(new ImmutableTree<V>(value, copy));
+        }
+
+        /**
+         * Returns the tree this Interner built that is equal to the given tree, keeping the given
+         * tree if there is none. The tree's subtrees are not shared unless they were interned first.
+         *
+         * @param tree
+         * @return A tree built by this Interner.
+         */
+        public ImmutableTree<V> intern(ImmutableTree<V> tree) {
+            ImmutableTree<V> existing = trees.get(tree);
+            if (existing != null)
+                return existing;
+            trees.put(tree, tree);
+            return tree;
+        }
+
+        /**
+         * Makes an immutable copy of a Tree, sharing each subtree with any equal one this Interner built.
+         *
+         * @param tree The Tree to be copied.
+         * @return A tree built by this Interner.
+         */
+        public ImmutableTree<V> copyOf(Tree<V> tree) {
+            ImmutableTree<V>[] children = newArray(tree.getNumberOfChildren());
+            for (int i = 0; i < children.length; i++) {
+                children[i] = copyOf(tree.getChild(i));
+            }
+            return intern(new ImmutableTree<V>(tree.getValue(), children));
+        }
+
+        /**
+         * Returns the number of different trees this Interner has built.
+         *
+         * @return A count of trees.
+         */
+        public int size() {
+            return trees.size();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package tree;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for ImmutableTree.java.
+ * @author ryancsmith
+ *
+ */
+public class ImmutableTreeTest {
+	Tree<String> tree;
+
+	@Before
+	public void setUp() throws Exception {
+		tree = Tree.parse("program (Bug (a (+ (x 1))) Bug (b (+ (x 1))) + (x 1))");
+	}
+
+	@Test
+	public final void testCopies() {
+		ImmutableTree<String> copy = ImmutableTree.copyOf(tree);
+		assertEquals(tree.toString(), copy.toString());
+		assertEquals(3, copy.getNumberOfChildren());
+		assertEquals("b", copy.getChild(1).getChild(0).getValue());
+		assertEquals(tree.toString(), copy.toTree().toString());
+		//the copy does not change with the Tree
+		tree.getChild(0).setValue("Changed");
+		assertEquals("Bug", copy.getChild(0).getValue());
+	}
+
+	@Test
+	public final void testEqualsAndHashCode() {
+		ImmutableTree<String> a = ImmutableTree.copyOf(tree);
+		ImmutableTree<String> b = ImmutableTree.copyOf(tree);
+		assertNotSame(a, b);
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		//every value counts, not only those of the leaves
+		tree.getChild(0).setValue("Changed");
+		ImmutableTree<String> c = ImmutableTree.copyOf(tree);
+		assertFalse(a.equals(c));
+		assertFalse(a.equals(tree));
+		//the order of the children counts
+		ImmutableTree<String> one = ImmutableTree.of("1");
+		ImmutableTree<String> two = ImmutableTree.of("2");
+		assertFalse(ImmutableTree.of("-", one, two).equals(ImmutableTree.of("-", two, one)));
+		assertEquals(ImmutableTree.of(null, one), ImmutableTree.of(null, one));
+	}
+
+	@Test
+	public final void testInternerSharesSubtrees() {
+		ImmutableTree.Interner<String> interner = new ImmutableTree.Interner<String>();
+		ImmutableTree<String> program = interner.copyOf(tree);
+		//"+ (x 1)" appears three times but is built once
+		ImmutableTree<String> sum = program.getChild(0).getChild(0).getChild(0);
+		assertSame(sum, program.getChild(1).getChild(0).getChild(0));
+		assertSame(sum, program.getChild(2));
+		//program, Bug a, a, Bug b, b, +, x, 1
+		assertEquals(8, interner.size());
+		//building the same tree again gives the same object
+		assertSame(program, interner.copyOf(Tree.parse(tree.toString())));
+		assertSame(sum, interner.intern("+", interner.intern("x"), interner.intern("1")));
+		assertEquals(8, interner.size());
+	}
+
+	@Test
+	public final void testCannotBeChanged() {
+		ImmutableTree<String> leaf = ImmutableTree.of("leaf");
+		@SuppressWarnings("unchecked")
+		ImmutableTree<String>[] children = (ImmutableTree<String>[]) new ImmutableTree<?>[] { leaf };
+		ImmutableTree<String> parent = ImmutableTree.of("parent", children);
+		children[0] = ImmutableTree.of("other");
+		assertSame(leaf, parent.getChild(0));
+		Iterator<ImmutableTree<String>> iterator = parent.iterator();
+		assertSame(leaf, iterator.next());
+		try {
+			iterator.remove();
+			fail();
+		}
+		catch (UnsupportedOperationException e) {
+		}
+		assertEquals(1, parent.getNumberOfChildren());
+	}
+}
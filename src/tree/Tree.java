@@ -238,27 +238,23 @@ public class Tree<V> implements Iterable<Tree<V>> {
      */
     @Override
     public int hashCode() {
-    	//uses String representation of the Tree to produce a unique and consistent hashCode
-        int total = hashCodeHelper(this);
-        return total;
-        
-    }
-
-    private int hashCodeHelper(Tree<V> tree){
+    	//uses String representation of the Tree to produce a unique and consistent hashCode:
+    	//each leaf adds the characters of the whole Tree's String, so the String is only built once
     	int total = 0;
-    	if (tree.getNumberOfChildren() == 0){
-    		char[] stringRep = this.toString().toCharArray();
-            for (Character c : stringRep){
-            	total += c.hashCode();
-            }
-            return total;
+    	for (char c : toString().toCharArray()){
+    		total += c;
     	}
-    	else{	
-	        for (int i = 0; i < tree.getNumberOfChildren(); i++){
-	        	total += hashCodeHelper(tree.getChild(i));
-	        }
+        return total * countLeaves(this);
+    }
+
+    private int countLeaves(Tree<V> tree){
+    	if (tree.getNumberOfChildren() == 0)
+    		return 1;
+    	int leaves = 0;
+    	for (Tree<V> child : tree.children){
+    		leaves += countLeaves(child);
     	}
-        return total;
+    	return leaves;
     }
     
     /**